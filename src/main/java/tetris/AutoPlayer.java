@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import tetris.tetromino.Shape;
+import tetris.tetromino.Tetromino.Type;
+
+/**
+ * This class plays a game on its own thread, using only the same inputs
+ * as a human player.<br>
+ * Whenever a new tetromino appears, every position it can be dropped to is
+ * rated by the features of the resulting field, namely the aggregate
+ * height of the columns, the number of holes, the bumpiness between
+ * neighbouring columns and the number of removed rows. The tetrominoes
+ * of the preview are placed on top of every candidate as well, so that a
+ * candidate is rated by the best field that can be reached after placing
+ * all of them.<br>
+ * The candidates of the falling tetromino are searched in parallel on a
+ * fork join pool. Below them, only the most promising candidates of every
+ * level are searched any deeper and the search stops early once half of
+ * the period of the game is over. Every search works on its own boards,
+ * where each row is a bitmask of the occupied cells, so that the threads
+ * never share anything they write to.<br>
+ * The player only wakes up when the field of the game has changed, so it
+ * doesn't use any processor time while the tetromino is falling.
+ * @author Zavarov
+ */
+public class AutoPlayer{
+    /**
+     * The default number of tetrominoes that are placed in the search,
+     * including the falling one.
+     */
+    public static final int DEPTH = 3;
+    /**
+     * The number of candidates on every level below the falling tetromino
+     * that are searched any deeper.
+     */
+    protected static int BEAM = 6;
+    /**
+     * The game that is played.
+     */
+    protected final Game game;
+    /**
+     * The number of tetrominoes that are placed in the search.
+     */
+    protected final int depth;
+    /**
+     * The pool the search is done in.
+     */
+    protected final ForkJoinPool pool;
+    /**
+     * The time in nanoseconds a single search may take.
+     */
+    protected final long budget;
+    /**
+     * The weight of the sum of the heights of all columns.
+     */
+    protected final double heightWeight;
+    /**
+     * The weight of the number of removed rows.
+     */
+    protected final double linesWeight;
+    /**
+     * The weight of the number of empty cells below the top of their
+     * column.
+     */
+    protected final double holesWeight;
+    /**
+     * The weight of the sum of the height differences between neighbouring
+     * columns.
+     */
+    protected final double bumpinessWeight;
+    /**
+     * The tetrominoes of the preview.
+     */
+    private final Type[] preview;
+    /**
+     * The position of the randomizer when the last tetromino was planned.
+     */
+    private long planned = -1;
+    /**
+     * The thread playing the game.
+     */
+    private volatile Thread thread;
+    /**
+     * Set whenever the field of the game has changed since the thread last
+     * looked for a new tetromino. The thread may also be parked by the
+     * search or the game, which would swallow a mere wake up.
+     */
+    private final AtomicBoolean changed = new AtomicBoolean();
+    /**
+     * The listener that wakes up the thread whenever the field of the game
+     * changes.
+     */
+    private final ChangeListener listener = (column, row, width, height) -> {
+        changed.set(true);
+        LockSupport.unpark(thread);
+    };
+    /**
+     * Set while the thread should keep playing.
+     */
+    private volatile boolean running;
+    /**
+     * Creates a player that searches {@link #DEPTH} tetrominoes in the
+     * common pool.
+     * @param game the game that is played.
+     */
+    public AutoPlayer(Game game){
+        this(game, DEPTH, ForkJoinPool.commonPool());
+    }
+    /**
+     * Creates a player with weights that are known to work well.
+     * @param game the game that is played.
+     * @param depth the number of tetrominoes that are placed in the search,
+     * including the falling one.
+     * @param pool the pool the search is done in.
+     */
+    public AutoPlayer(Game game, int depth, ForkJoinPool pool){
+        this(game, depth, pool, -0.510066, 0.760666, -0.35663, -0.184483);
+    }
+    /**
+     * @param game the game that is played.
+     * @param depth the number of tetrominoes that are placed in the search,
+     * including the falling one.
+     * @param pool the pool the search is done in.
+     * @param heightWeight the weight of the aggregate height.
+     * @param linesWeight the weight of the removed rows.
+     * @param holesWeight the weight of the holes.
+     * @param bumpinessWeight the weight of the bumpiness.
+     * @throws IllegalArgumentException if the depth isn't positive or a row
+     * doesn't fit into a single mask.
+     */
+    public AutoPlayer(Game game, int depth, ForkJoinPool pool, double heightWeight, double linesWeight, double holesWeight, double bumpinessWeight){
+        if(depth < 1)
+            throw new IllegalArgumentException("At least the falling tetromino has to be placed.");
+        if(game.columns > Long.SIZE)
+            throw new IllegalArgumentException("At most "+Long.SIZE+" columns are supported.");
+
+        this.game = game;
+        this.depth = Math.min(depth, game.getRandomizer().getPreview() + 1);
+        this.pool = pool;
+        this.budget = game.unit.toNanos(game.period) / 2;
+        this.heightWeight = heightWeight;
+        this.linesWeight = linesWeight;
+        this.holesWeight = holesWeight;
+        this.bumpinessWeight = bumpinessWeight;
+        this.preview = new Type[this.depth - 1];
+    }
+    /**
+     * Starts the thread playing the game.
+     */
+    public synchronized void start(){
+        if(running)
+            return;
+
+        running = true;
+        changed.set(true);
+        thread = new Thread(this::loop, "autoplayer");
+        thread.setDaemon(true);
+        game.addListener(listener);
+        thread.start();
+    }
+    /**
+     * Stops the thread playing the game and waits for it to finish.
+     */
+    public synchronized void stop(){
+        if(!running)
+            return;
+
+        running = false;
+        game.removeListener(listener);
+        LockSupport.unpark(thread);
+        try{
+            thread.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+    /**
+     * Looks for a new tetromino whenever the field has changed, until the
+     * player is stopped.
+     */
+    private void loop(){
+        while(running){
+            if(changed.getAndSet(false))
+                move();
+            else
+                LockSupport.park(this);
+        }
+    }
+    /**
+     * Searches the best candidate for the falling tetromino, if it hasn't
+     * been done yet, and sends the inputs for moving it there. May only be
+     * called by one thread at a time.
+     * @return true if inputs have been sent.
+     */
+    public boolean move(){
+        Snapshot snapshot = game.getSnapshot();
+        Type type = snapshot.getCurrentType();
+        if(type == null || snapshot.getPosition() == planned)
+            return false;
+
+        Randomizer randomizer = game.getRandomizer();
+        int count = randomizer.getPreview(preview);
+        //The preview belongs to a later tetromino than the snapshot
+        if(randomizer.getPosition() != snapshot.getPosition())
+            return false;
+
+        int columns = snapshot.getColumns();
+        int rows = snapshot.getRows();
+        Shape shape = type.getShape();
+        int x = snapshot.getCurrentX();
+        int y = snapshot.getCurrentY();
+        int orientation = snapshot.getCurrentOrientation();
+        long[] board = new long[rows];
+        for(int row = 0 ; row < rows ; ++row)
+            for(int column = 0 ; column < columns ; ++column)
+                if(snapshot.getType(column, row) != null)
+                    board[row] |= 1L << column;
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i)
+            board[y + shape.getY(orientation, i)] &= ~(1L << x + shape.getX(orientation, i));
+
+        planned = snapshot.getPosition();
+        int[] plan = plan(board, columns, shape, x, y, orientation, preview, count, System.nanoTime() + budget);
+        if(plan == null)
+            return false;
+
+        for(int turns = plan[0] ; turns > 0 ; --turns)
+            game.rotateRight();
+        for(int turns = plan[0] ; turns < 0 ; ++turns)
+            game.rotateLeft();
+        for(int column = x ; column > plan[1] ; --column)
+            game.moveLeft();
+        for(int column = x ; column < plan[1] ; ++column)
+            game.moveRight();
+        game.fallDown();
+        return true;
+    }
+    /**
+     * Searches the best candidate for the tetromino. The tetromino is first
+     * rotated, then moved sideways and finally dropped.
+     * @param board the occupied cells of every row, without the tetromino.
+     * @param columns the number of columns.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center of the tetromino.
+     * @param y the y coordinate of the center of the tetromino.
+     * @param orientation the orientation of the tetromino.
+     * @param types the tetrominoes of the preview.
+     * @param count the number of tetrominoes of the preview that are
+     * placed in the search.
+     * @param deadline the value of {@link System#nanoTime()} the search
+     * should be done by.
+     * @return the number of clockwise rotations, where negative values
+     * mean counter clockwise rotations, and the column the center is moved
+     * to or null, if the tetromino can't be dropped anywhere.
+     */
+    protected int[] plan(long[] board, int columns, Shape shape, int x, int y, int orientation, Type[] types, int count, long deadline){
+        Scratch root = new Scratch(columns, board.length, 1);
+        int size = candidates(root, 0, board, shape, x, y, orientation);
+        if(size == 0)
+            return null;
+
+        Search[] searches = new Search[size];
+        for(int i = 0 ; i < size ; ++i)
+            searches[i] = new Search(board, columns, shape, root.xs[0][i], root.ys[0][i], root.orientations[0][i], types, Math.min(count, depth - 1), deadline);
+        pool.invoke(new RecursiveTask<Void>(){
+            @Override
+            protected Void compute(){
+                invokeAll(searches);
+                return null;
+            }
+        });
+
+        int best = 0;
+        for(int i = 1 ; i < size ; ++i)
+            if(searches[i].getRawResult() > searches[best].getRawResult())
+                best = i;
+        return new int[]{root.turns[0][best], root.xs[0][best]};
+    }
+    /**
+     * Searches all candidates below one candidate of the falling tetromino.
+     */
+    private class Search extends RecursiveTask<Double>{
+        private static final long serialVersionUID = 1L;
+        private final long[] board;
+        private final int columns;
+        private final Shape shape;
+        private final int x;
+        private final int y;
+        private final int orientation;
+        private final Type[] types;
+        private final int count;
+        private final long deadline;
+        /**
+         * @param board the field without the falling tetromino.
+         * @param columns the number of columns.
+         * @param shape the orientations of the falling tetromino.
+         * @param x the column the tetromino is dropped in.
+         * @param y the row the tetromino is dropped to.
+         * @param orientation the orientation of the tetromino.
+         * @param types the tetrominoes of the preview.
+         * @param count the number of tetrominoes of the preview that are
+         * placed.
+         * @param deadline the time the search should be done by.
+         */
+        Search(long[] board, int columns, Shape shape, int x, int y, int orientation, Type[] types, int count, long deadline){
+            this.board = board;
+            this.columns = columns;
+            this.shape = shape;
+            this.x = x;
+            this.y = y;
+            this.orientation = orientation;
+            this.types = types;
+            this.count = count;
+            this.deadline = deadline;
+        }
+        @Override
+        protected Double compute(){
+            Scratch local = new Scratch(columns, board.length, depth);
+            long[] next = local.boards[0];
+            System.arraycopy(board, 0, next, 0, board.length);
+            int lines = place(local, next, shape, x, y, orientation);
+            return linesWeight * lines + search(local, 0, types, count, deadline);
+        }
+    }
+    /**
+     * Places the tetrominoes of the preview on top of the board.
+     * @param local the scratch of the current search.
+     * @param level the index of the tetromino of the preview.
+     * @param types the tetrominoes of the preview.
+     * @param count the number of tetrominoes of the preview that are
+     * placed.
+     * @param deadline the time the search should be done by.
+     * @return the rating of the best field that can be reached.
+     */
+    private double search(Scratch local, int level, Type[] types, int count, long deadline){
+        long[] board = local.boards[level];
+        if(level == count || System.nanoTime() > deadline)
+            return evaluate(local, board);
+
+        Shape shape = types[level].getShape();
+        int x = local.columns / 2;
+        int y = board.length - 2;
+        if(!fits(local, board, shape, x, y, 0))
+            return Double.NEGATIVE_INFINITY;
+
+        int size = candidates(local, level, board, shape, x, y, 0);
+        long[] next = local.boards[level + 1];
+        double[] scores = local.scores[level];
+        for(int i = 0 ; i < size ; ++i){
+            System.arraycopy(board, 0, next, 0, board.length);
+            int lines = place(local, next, shape, local.xs[level][i], local.ys[level][i], local.orientations[level][i]);
+            scores[i] = linesWeight * lines + evaluate(local, next);
+        }
+
+        double best = Double.NEGATIVE_INFINITY;
+        if(level + 1 == count){
+            for(int i = 0 ; i < size ; ++i)
+                best = Math.max(best, scores[i]);
+            return best;
+        }
+
+        //Only the candidates with the best fields are searched any deeper
+        for(int beam = 0 ; beam < BEAM && beam < size ; ++beam){
+            int candidate = 0;
+            for(int i = 1 ; i < size ; ++i)
+                if(scores[i] > scores[candidate])
+                    candidate = i;
+            if(scores[candidate] == Double.NEGATIVE_INFINITY)
+                break;
+            scores[candidate] = Double.NEGATIVE_INFINITY;
+
+            System.arraycopy(board, 0, next, 0, board.length);
+            int lines = place(local, next, shape, local.xs[level][candidate], local.ys[level][candidate], local.orientations[level][candidate]);
+            best = Math.max(best, linesWeight * lines + search(local, level + 1, types, count, deadline));
+        }
+        return best;
+    }
+    /**
+     * Finds every position the tetromino can be dropped to after rotating
+     * it and moving it sideways.
+     * @param local the scratch the candidates are written to.
+     * @param level the level of the candidates.
+     * @param board the board.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return the number of candidates.
+     */
+    private static int candidates(Scratch local, int level, long[] board, Shape shape, int x, int y, int orientation){
+        int[] turns = local.rotations;
+        Arrays.fill(turns, 0, shape.size(), Integer.MAX_VALUE);
+        if(fits(local, board, shape, x, y, orientation))
+            turns[orientation] = 0;
+        for(int o = orientation, i = 1 ; turns[orientation] == 0 && i < shape.size() ; ++i){
+            o = shape.right(o);
+            if(!fits(local, board, shape, x, y, o))
+                break;
+            turns[o] = Math.min(turns[o], i);
+        }
+        for(int o = orientation, i = 1 ; turns[orientation] == 0 && i < shape.size() ; ++i){
+            o = shape.left(o);
+            if(!fits(local, board, shape, x, y, o))
+                break;
+            if(i < Math.abs(turns[o]))
+                turns[o] = -i;
+        }
+
+        int[] tops = local.tops;
+        long covered = 0L;
+        for(int row = board.length - 1 ; row >= 0 ; --row){
+            for(long top = board[row] & ~covered ; top != 0L ; top &= top - 1)
+                tops[Long.numberOfTrailingZeros(top)] = row + 1;
+            covered |= board[row];
+        }
+        for(long empty = ~covered & local.full ; empty != 0L ; empty &= empty - 1)
+            tops[Long.numberOfTrailingZeros(empty)] = 0;
+
+        int size = 0;
+        for(int o = 0 ; o < shape.size() ; ++o){
+            if(turns[o] == Integer.MAX_VALUE)
+                continue;
+
+            int left = x;
+            while(fits(local, board, shape, left - 1, y, o))
+                --left;
+            for(int column = left ; fits(local, board, shape, column, y, o) ; ++column){
+                //Every block lands on top of its column, unless the tetromino is below it
+                int row = Integer.MIN_VALUE;
+                for(int i = 0 ; i < shape.getBlocks(o) ; ++i)
+                    row = Math.max(row, tops[column + shape.getX(o, i)] - shape.getY(o, i));
+                if(row > y)
+                    for(row = y ; fits(local, board, shape, column, row - 1, o) ; --row);
+                local.xs[level][size] = column;
+                local.ys[level][size] = row;
+                local.orientations[level][size] = o;
+                local.turns[level][size] = turns[o];
+                ++size;
+            }
+        }
+        return size;
+    }
+    /**
+     * @param local the scratch of the current search.
+     * @param board the board.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return true if the tetromino lies within the board without
+     * overlapping any other block.
+     */
+    private static boolean fits(Scratch local, long[] board, Shape shape, int x, int y, int orientation){
+        return Boards.fits(board, 0, local.columns, board.length, shape, x, y, orientation);
+    }
+    /**
+     * Puts the tetromino on the board and removes all full rows.
+     * @param local the scratch of the current search.
+     * @param board the board.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return the number of removed rows.
+     */
+    private static int place(Scratch local, long[] board, Shape shape, int x, int y, int orientation){
+        return Boards.place(board, 0, board.length, local.full, shape, x, y, orientation);
+    }
+    /**
+     * @param local the scratch of the current search.
+     * @param board the board.
+     * @return the weighted sum of the features of the board, without the
+     * removed rows.
+     */
+    private double evaluate(Scratch local, long[] board){
+        int[] heights = local.heights;
+        long covered = 0L;
+        int holes = 0;
+        for(int row = board.length - 1 ; row >= 0 ; --row){
+            for(long top = board[row] & ~covered ; top != 0L ; top &= top - 1)
+                heights[Long.numberOfTrailingZeros(top)] = row + 1;
+            holes += Long.bitCount(covered & ~board[row]);
+            covered |= board[row];
+        }
+        for(long empty = ~covered & local.full ; empty != 0L ; empty &= empty - 1)
+            heights[Long.numberOfTrailingZeros(empty)] = 0;
+
+        int height = heights[0];
+        int bumpiness = 0;
+        for(int column = 1 ; column < local.columns ; ++column){
+            height += heights[column];
+            bumpiness += Math.abs(heights[column] - heights[column - 1]);
+        }
+        return heightWeight * height + holesWeight * holes + bumpinessWeight * bumpiness;
+    }
+    /**
+     * The boards and candidates that are reused within a single search.
+     */
+    private static class Scratch{
+        private final int columns;
+        private final long full;
+        private final long[][] boards;
+        private final int[][] xs;
+        private final int[][] ys;
+        private final int[][] orientations;
+        private final int[][] turns;
+        private final double[][] scores;
+        private final int[] heights;
+        private final int[] tops;
+        private final int[] rotations = new int[4];
+        /**
+         * @param columns the number of columns.
+         * @param rows the number of rows.
+         * @param levels the number of levels of candidates.
+         */
+        Scratch(int columns, int rows, int levels){
+            int capacity = 4 * columns;
+            this.columns = columns;
+            this.full = Boards.getFull(columns);
+            this.boards = new long[levels + 1][rows];
+            this.xs = new int[levels][capacity];
+            this.ys = new int[levels][capacity];
+            this.orientations = new int[levels][capacity];
+            this.turns = new int[levels][capacity];
+            this.scores = new double[levels][capacity];
+            this.heights = new int[columns];
+            this.tops = new int[columns];
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino.Type;
+
+import java.nio.ByteBuffer;
+
+import static tetris.Types.TYPES;
+
+/**
+ * This class puts one tetromino of every type into a bag and hands them
+ * out in a random order. Once the bag is empty, it is filled again.<br>
+ * This way, every type appears exactly once in every bag and no type can
+ * be missing for more than twelve tetrominoes in a row.
+ * @author Zavarov
+ */
+public class BagRandomizer extends Randomizer{
+    /**
+     * The ordinals of the types in the current bag.
+     */
+    protected final int[] bag;
+    /**
+     * The number of types that have already been taken from the bag.
+     */
+    protected int index;
+    /**
+     * @param seed the seed of the random number generator.
+     * @param preview the number of types that are known in advance.
+     */
+    public BagRandomizer(long seed, int preview){
+        super(seed, preview);
+        this.bag = new int[TYPES.length];
+        reset();
+    }
+    @Override
+    public Kind getKind(){
+        return Kind.BAG;
+    }
+    /**
+     * Empties the bag, so that it is shuffled before the next type is
+     * taken.
+     */
+    @Override
+    protected void restart(){
+        index = bag.length;
+    }
+    /**
+     * @return the number of bytes for the bag and the number of types that
+     * have been taken from it.
+     */
+    @Override
+    protected int getAdditionalStateSize(){
+        return bag.length + 1;
+    }
+    /**
+     * Writes the types in the bag and the number of types that have been
+     * taken from it.
+     * @param buffer the buffer the state is written to.
+     */
+    @Override
+    protected void saveAdditionalState(ByteBuffer buffer){
+        for(int type : bag)
+            buffer.put((byte)type);
+        buffer.put((byte)index);
+    }
+    /**
+     * Reads the types in the bag and the number of types that have been
+     * taken from it.
+     * @param buffer the buffer the state is read from.
+     */
+    @Override
+    protected void restoreAdditionalState(ByteBuffer buffer){
+        for(int i = 0 ; i < bag.length ; ++i)
+            bag[i] = buffer.get();
+        index = buffer.get();
+    }
+    /**
+     * Checks that the bag contains every type exactly once and that the
+     * number of types that have been taken fits into the bag.
+     * @param buffer the buffer the state is stored in.
+     * @param index the position of the state in the buffer.
+     * @throws IllegalArgumentException if the state is invalid.
+     */
+    @Override
+    protected void checkAdditionalState(ByteBuffer buffer, int index){
+        int seen = 0;
+        for(int i = 0 ; i < bag.length ; ++i){
+            int type = buffer.get(index + i);
+            checkType(type);
+            seen |= 1 << type;
+        }
+        if(seen != (1 << bag.length) - 1)
+            throw new IllegalArgumentException("The bag doesn't contain every type once.");
+        int taken = buffer.get(index + bag.length);
+        if(taken < 0 || taken > bag.length)
+            throw new IllegalArgumentException("The bag doesn't contain "+taken+" types.");
+    }
+    /**
+     * Takes the next type from the bag and shuffles all types once the bag
+     * is empty.
+     * @return the next type in the bag.
+     */
+    @Override
+    protected Type generate(){
+        if(index == bag.length){
+            for(int i = 0 ; i < bag.length ; ++i)
+                bag[i] = i;
+            //Fisher-Yates shuffle
+            for(int i = bag.length - 1 ; i > 0 ; --i){
+                int j = nextInt(i + 1);
+                int tmp = bag[i];
+                bag[i] = bag[j];
+                bag[j] = tmp;
+            }
+            index = 0;
+        }
+        return TYPES[bag[index++]];
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import tetris.tetromino.Shape;
+import tetris.tetromino.Tetromino.Type;
+
+import static tetris.Types.TYPES;
+
+/**
+ * This class steps many games at once, where every game receives one input
+ * per step, followed by one row of gravity.<br>
+ * Instead of fields of tetrominoes, every game is a board of row masks,
+ * where bit x of a row is set if the cell in column x is occupied. The
+ * boards are stored one after another in a single array and the state of
+ * the falling tetrominoes and the random number generators in one array
+ * per property. The observations, rewards and done flags are written to
+ * arrays that are allocated once and reused for every step.<br>
+ * The boards are split into ranges of neighbouring boards that are
+ * stepped in parallel on a fork join pool. A game that is over is started
+ * again right away, so every board always belongs to a running game.<br>
+ * A step behaves like a command of a {@link Simulation} followed by a
+ * tick. In particular, a tetromino that falls down is placed in the same
+ * step, just like a simulation places it on the tick after falling down.
+ * There are two differences though. A tetromino isn't rotated if the
+ * rotated tetromino would overlap with the board, whereas a simulation
+ * only checks that it stays within the field. And the types are taken
+ * from a bag or uniformly at random like the {@link Randomizer} does,
+ * but with a different sequence for the same seed.
+ * @author Zavarov
+ */
+public class BatchEnvironment{
+    /**
+     * The input for moving the falling tetromino to the left.
+     */
+    public static final int MOVE_LEFT = Game.MOVE_LEFT;
+    /**
+     * The input for moving the falling tetromino to the right.
+     */
+    public static final int MOVE_RIGHT = Game.MOVE_RIGHT;
+    /**
+     * The input for rotating the falling tetromino counter clockwise.
+     */
+    public static final int ROTATE_LEFT = Game.ROTATE_LEFT;
+    /**
+     * The input for rotating the falling tetromino clockwise.
+     */
+    public static final int ROTATE_RIGHT = Game.ROTATE_RIGHT;
+    /**
+     * The input for moving the falling tetromino to the bottom.
+     */
+    public static final int FALL_DOWN = Game.FALL_DOWN;
+    /**
+     * No input, the falling tetromino is only moved by gravity.
+     */
+    public static final int NONE = Game.TICK;
+    /**
+     * The smallest number of boards that is stepped by a single task.
+     */
+    protected static int GRAIN = 64;
+    /**
+     * The orientations of all types, indexed by their ordinal.
+     */
+    private static final Shape[] SHAPES = Arrays.stream(TYPES).map(Type::getShape).toArray(Shape[]::new);
+    /**
+     * The bag containing every type.
+     */
+    private static final int BAG = (1 << TYPES.length) - 1;
+    /**
+     * The number of boards.
+     */
+    protected final int size;
+    /**
+     * The number of columns of every board.
+     */
+    protected final int columns;
+    /**
+     * The number of rows of every board.
+     */
+    protected final int rows;
+    /**
+     * The mask of a row where every cell is occupied.
+     */
+    protected final long full;
+    /**
+     * The kind of randomizer every board uses.
+     */
+    protected final Randomizer.Kind kind;
+    /**
+     * The pool the boards are stepped in.
+     */
+    protected final ForkJoinPool pool;
+    /**
+     * The rows of all boards without the falling tetromino, board by board
+     * starting with the lowest row.
+     */
+    private final long[] boards;
+    /**
+     * The ordinal of the type of the falling tetromino of every board.
+     */
+    private final int[] types;
+    /**
+     * The x coordinate of the center of the falling tetromino of every board.
+     */
+    private final int[] xs;
+    /**
+     * The y coordinate of the center of the falling tetromino of every board.
+     */
+    private final int[] ys;
+    /**
+     * The orientation of the falling tetromino of every board.
+     */
+    private final int[] orientations;
+    /**
+     * The state of the random number generator of every board.
+     */
+    private final long[] states;
+    /**
+     * The types that are left in the bag of every board, one bit per
+     * ordinal.
+     */
+    private final int[] bags;
+    /**
+     * The rows of all boards including the falling tetromino after the last
+     * step, in the same layout as the boards.
+     */
+    private final long[] observations;
+    /**
+     * The number of rows that have been removed from every board in the
+     * last step.
+     */
+    private final float[] rewards;
+    /**
+     * Set for every board whose game has ended in the last step.
+     */
+    private final boolean[] done;
+    /**
+     * Creates the boards and starts their games, using the common pool.
+     * @param size the number of boards.
+     * @param columns the number of columns of every board.
+     * @param rows the number of rows of every board.
+     * @param kind the kind of randomizer every board uses.
+     * @param seed the seed the random number generators are derived from.
+     */
+    public BatchEnvironment(int size, int columns, int rows, Randomizer.Kind kind, long seed){
+        this(size, columns, rows, kind, seed, ForkJoinPool.commonPool());
+    }
+    /**
+     * Creates the boards and starts their games.
+     * @param size the number of boards.
+     * @param columns the number of columns of every board.
+     * @param rows the number of rows of every board.
+     * @param kind the kind of randomizer every board uses.
+     * @param seed the seed the random number generators are derived from.
+     * @param pool the pool the boards are stepped in.
+     * @throws IllegalArgumentException if there are no boards, a row
+     * doesn't fit into a single mask, the boards don't fit into a single
+     * array or a new tetromino doesn't fit into an empty board.
+     */
+    public BatchEnvironment(int size, int columns, int rows, Randomizer.Kind kind, long seed, ForkJoinPool pool){
+        if(size <= 0)
+            throw new IllegalArgumentException("At least one board is needed.");
+        if(columns > Long.SIZE)
+            throw new IllegalArgumentException("At most "+Long.SIZE+" columns are supported.");
+        if((long)size * rows > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many boards.");
+        //Otherwise a new tetromino would be written outside of its board
+        for(Shape shape : SHAPES)
+            if(!Boards.inBounds(shape, columns / 2, rows - 2, 0, columns, rows))
+                throw new IllegalArgumentException("A board with "+columns+"x"+rows+" cells is too small.");
+
+        this.size = size;
+        this.columns = columns;
+        this.rows = rows;
+        this.full = Boards.getFull(columns);
+        this.kind = kind;
+        this.pool = pool;
+        this.boards = new long[size * rows];
+        this.types = new int[size];
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.orientations = new int[size];
+        this.states = new long[size];
+        this.bags = new int[size];
+        this.observations = new long[size * rows];
+        this.rewards = new float[size];
+        this.done = new boolean[size];
+
+        for(int i = 0 ; i < size ; ++i)
+            states[i] = Field.scramble(seed + i * 0x9E3779B97F4A7C15L);
+        reset();
+    }
+    /**
+     * Starts a new game on every board.
+     */
+    public void reset(){
+        pool.invoke(new Task(null, 0, size));
+    }
+    /**
+     * Applies one input to every board and lets the falling tetrominoes
+     * fall by one row afterwards. Afterwards, the observations contain the
+     * new boards, the rewards the number of removed rows and the done flags
+     * mark the boards whose game has ended and that have been started
+     * again.
+     * @param actions the input for every board.
+     * @throws IllegalArgumentException if there isn't an input for every
+     * board.
+     */
+    public void step(int[] actions){
+        if(actions.length < size)
+            throw new IllegalArgumentException("Expected "+size+" actions but got "+actions.length+".");
+        pool.invoke(new Task(actions, 0, size));
+    }
+    /**
+     * The rows of board i are stored from index i * rows onwards, starting
+     * with the lowest row.
+     * @return the rows of every board including the falling tetromino.
+     */
+    public long[] getObservations(){
+        return observations;
+    }
+    /**
+     * @return the number of rows every board has removed in the last step.
+     */
+    public float[] getRewards(){
+        return rewards;
+    }
+    /**
+     * @return whether the game of every board has ended in the last step.
+     */
+    public boolean[] getDone(){
+        return done;
+    }
+    /**
+     * @return the ordinal of the type of the falling tetromino of every
+     * board.
+     */
+    public int[] getTypes(){
+        return types;
+    }
+    /**
+     * @return the number of boards.
+     */
+    public int size(){
+        return size;
+    }
+    /**
+     * @return the number of columns of every board.
+     */
+    public int getColumns(){
+        return columns;
+    }
+    /**
+     * @return the number of rows of every board.
+     */
+    public int getRows(){
+        return rows;
+    }
+    /**
+     * Steps a range of neighbouring boards, splitting it in halves as long
+     * as it is larger than {@link #GRAIN}.
+     */
+    private class Task extends RecursiveAction{
+        /**
+         * The version of the serialized form.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * The inputs or null, if the boards are reset.
+         */
+        private final int[] actions;
+        private final int from;
+        private final int to;
+        /**
+         * @param actions the inputs or null, if the boards are reset.
+         * @param from the first board.
+         * @param to the board after the last one.
+         */
+        Task(int[] actions, int from, int to){
+            this.actions = actions;
+            this.from = from;
+            this.to = to;
+        }
+        @Override
+        protected void compute(){
+            if(to - from > GRAIN){
+                int middle = (from + to) >>> 1;
+                invokeAll(new Task(actions, from, middle), new Task(actions, middle, to));
+                return;
+            }
+            for(int board = from ; board < to ; ++board){
+                if(actions == null){
+                    start(board);
+                    rewards[board] = 0;
+                    done[board] = false;
+                }else{
+                    step(board, actions[board]);
+                }
+                observe(board);
+            }
+        }
+    }
+    /**
+     * Applies the input to the board and lets the tetromino fall by one row.
+     * @param board the index of the board.
+     * @param action the input.
+     */
+    private void step(int board, int action){
+        Shape shape = SHAPES[types[board]];
+        int x = xs[board];
+        int y = ys[board];
+        int orientation = orientations[board];
+        switch(action){
+            case MOVE_LEFT:
+                if(fits(board, shape, x - 1, y, orientation))
+                    --x;
+                break;
+            case MOVE_RIGHT:
+                if(fits(board, shape, x + 1, y, orientation))
+                    ++x;
+                break;
+            case ROTATE_LEFT:
+                if(fits(board, shape, x, y, shape.left(orientation)))
+                    orientation = shape.left(orientation);
+                break;
+            case ROTATE_RIGHT:
+                if(fits(board, shape, x, y, shape.right(orientation)))
+                    orientation = shape.right(orientation);
+                break;
+            case FALL_DOWN:
+                while(fits(board, shape, x, y - 1, orientation))
+                    --y;
+                break;
+        }
+
+        rewards[board] = 0;
+        done[board] = false;
+        if(fits(board, shape, x, y - 1, orientation)){
+            xs[board] = x;
+            ys[board] = y - 1;
+            orientations[board] = orientation;
+            return;
+        }
+
+        rewards[board] = place(board, shape, x, y, orientation);
+        if(!spawn(board)){
+            done[board] = true;
+            start(board);
+        }
+    }
+    /**
+     * Empties the board and creates the first tetromino. The random number
+     * generator keeps going, so every game is different.
+     * @param board the index of the board.
+     */
+    private void start(int board){
+        Arrays.fill(boards, board * rows, (board + 1) * rows, 0L);
+        bags[board] = 0;
+        spawn(board);
+    }
+    /**
+     * Creates the next tetromino at the top of the board.
+     * @param board the index of the board.
+     * @return false if the tetromino overlaps with the board.
+     */
+    private boolean spawn(int board){
+        types[board] = next(board);
+        xs[board] = columns / 2;
+        ys[board] = rows - 2;
+        orientations[board] = 0;
+        return fits(board, SHAPES[types[board]], xs[board], ys[board], 0);
+    }
+    /**
+     * @param board the index of the board.
+     * @return the ordinal of the next type.
+     */
+    private int next(int board){
+        if(kind == Randomizer.Kind.UNIFORM)
+            return nextInt(board, TYPES.length);
+
+        if(bags[board] == 0)
+            bags[board] = BAG;
+        //Takes a random type that is still in the bag
+        int bag = bags[board];
+        for(int skip = nextInt(board, Integer.bitCount(bag)) ; skip > 0 ; --skip)
+            bag &= bag - 1;
+        int type = Integer.numberOfTrailingZeros(bag);
+        bags[board] &= ~(1 << type);
+        return type;
+    }
+    /**
+     * Computes the next number with the SplitMix64 generator of the board.
+     * @param board the index of the board.
+     * @param bound the exclusive upper bound.
+     * @return a random number between 0 and the bound.
+     */
+    private int nextInt(int board, int bound){
+        long z = Field.scramble(states[board] += 0x9E3779B97F4A7C15L);
+        return (int)(((z >>> 32) * bound) >>> 32);
+    }
+    /**
+     * @param board the index of the board.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return true if the tetromino lies within the board without
+     * overlapping any other block.
+     */
+    private boolean fits(int board, Shape shape, int x, int y, int orientation){
+        return Boards.fits(boards, board * rows, columns, rows, shape, x, y, orientation);
+    }
+    /**
+     * Puts the tetromino on the board and removes all full rows.
+     * @param board the index of the board.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return the number of removed rows.
+     */
+    private int place(int board, Shape shape, int x, int y, int orientation){
+        return Boards.place(boards, board * rows, rows, full, shape, x, y, orientation);
+    }
+    /**
+     * Copies the board with the falling tetromino into the observations.
+     * @param board the index of the board.
+     */
+    private void observe(int board){
+        int offset = board * rows;
+        System.arraycopy(boards, offset, observations, offset, rows);
+
+        Shape shape = SHAPES[types[board]];
+        int orientation = orientations[board];
+        int shift = xs[board] + shape.getMinX(orientation);
+        for(int yOff = shape.getMinY(orientation) ; yOff <= shape.getMaxY(orientation) ; ++yOff)
+            observations[offset + ys[board] + yOff] |= shape.getMask(orientation, yOff) << shift;
+    }
+}
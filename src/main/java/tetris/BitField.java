@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import java.util.Arrays;
+
+import static tetris.Types.TYPES;
+
+/**
+ * This class implements a playing field that additionally stores the type
+ * of every occupied cell as a single byte, so that the field can be
+ * inspected without touching the tetrominoes themselves. Together with the
+ * masks of the rows, which are maintained by every field, this allows
+ * checking the cells of a tetromino without looking at the cells.<br>
+ * The types are only maintained by the methods of this class, which means
+ * that the underlying array must not be modified directly.
+ * @author Zavarov
+ */
+public class BitField extends Field{
+    /**
+     * The value of a cell that is not occupied.
+     */
+    public static final byte EMPTY = 0;
+    /**
+     * The type of every cell, stored row by row. A cell either contains
+     * {@link #EMPTY} or the ordinal of its type plus one.
+     */
+    protected final byte[] types;
+    /**
+     * Creates a new field of the given size.
+     * @param columns the number of columns.
+     * @param rows the number of rows.
+     * @throws IllegalArgumentException if a row doesn't fit into a single mask.
+     */
+    public BitField(int columns, int rows){
+        super(columns, rows);
+        this.types = new byte[rows * columns];
+    }
+    /**
+     * Replaces the element at the specified position and updates its type.
+     * @param column the x coordinate.
+     * @param row the y coorindate.
+     * @param tetromino the new element.
+     * @return the input if the coordinates are inside the field, otherwise null.
+     */
+    @Override
+    public Tetromino put(int column, int row, Tetromino tetromino){
+        tetromino = super.put(column, row, tetromino);
+        if(isValid(column, row))
+            types[row * columns + column] = encode(tetromino == null ? null : tetromino.getType());
+        return tetromino;
+    }
+    /**
+     * Removes one element from the field and its type.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the element at (x,y) that was removed.
+     */
+    @Override
+    public Tetromino remove(int column, int row){
+        Tetromino removed = super.remove(column, row);
+        if(isValid(column, row))
+            types[row * columns + column] = EMPTY;
+        return removed;
+    }
+    /**
+     * Removes the row pushes all rows above it down by one.
+     * @param row the row.
+     * @return true if the field was changed as a result of this function.
+     */
+    @Override
+    public boolean remove(int row){
+        if(!super.remove(row))
+            return false;
+
+        System.arraycopy(types, (row + 1) * columns, types, row * columns, (rows - 1 - row) * columns);
+        Arrays.fill(types, (rows - 1) * columns, rows * columns, EMPTY);
+        return true;
+    }
+    /**
+     * Removes all elements in the row.
+     * @param row the row.
+     */
+    @Override
+    public void clear(int row){
+        if(isValid(row))
+            erase(row);
+    }
+    /**
+     * Removes all elements on the field.
+     */
+    @Override
+    public void clear(){
+        for(int y = 0 ; y < rows ; ++y)
+            erase(y);
+    }
+    /**
+     * Empties the row and its types.
+     * @param row the row.
+     */
+    @Override
+    protected void erase(int row){
+        super.erase(row);
+        Arrays.fill(types, row * columns, (row + 1) * columns, EMPTY);
+    }
+    /**
+     * Exchanges the content and types of two rows.
+     * @param row the first row.
+     * @param other the second row.
+     */
+    @Override
+    protected void swap(int row, int other){
+        super.swap(row, other);
+
+        for(int i = row * columns, j = other * columns ; i < (row + 1) * columns ; ++i, ++j){
+            byte type = types[i];
+            types[i] = types[j];
+            types[j] = type;
+        }
+    }
+    /**
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the type of the element at position (x,y) or null, if the cell
+     * is empty or invalid.
+     */
+    public Type getType(int column, int row){
+        return isValid(column, row) ? decode(types[row * columns + column]) : null;
+    }
+    /**
+     * Checks whether the given cells overlap with the field.<br>
+     * Cells outside of the columns of the field count as an overlap.
+     * @param row the row.
+     * @param mask the cells in this row.
+     * @return true if any of the cells is occupied or outside of the field.
+     */
+    public boolean intersects(int row, long mask){
+        if(mask == 0L)
+            return false;
+        if(!isValid(row))
+            return true;
+        return (mask & ~full) != 0L || (mask & masks[row]) != 0L;
+    }
+    /**
+     * @param type the type of a tetromino.
+     * @return the value that is stored for this type.
+     */
+    protected static byte encode(Type type){
+        return type == null ? EMPTY : (byte)(type.ordinal() + 1);
+    }
+    /**
+     * @param value the value of a single cell.
+     * @return the type that corresponds to the stored value.
+     */
+    protected static Type decode(byte value){
+        return value == EMPTY ? null : TYPES[value - 1];
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Arrays;
+import tetris.tetromino.Shape;
+
+/**
+ * This class contains the operations on boards of row masks, which are
+ * shared by the placements, the automatic player and the batch
+ * environment.<br>
+ * A board is a range of rows in an array, starting with the lowest row,
+ * where bit x of a row is set if and only if the cell in column x is
+ * occupied. Several boards may share a single array.
+ * @author Zavarov
+ */
+final class Boards{
+    /**
+     * There are no instances of this class.
+     */
+    private Boards(){}
+    /**
+     * @param columns the number of columns.
+     * @return the mask of a row where every cell is occupied.
+     */
+    static long getFull(int columns){
+        return columns == Long.SIZE ? -1L : (1L << columns) - 1;
+    }
+    /**
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @return true if the tetromino lies within the board.
+     */
+    static boolean inBounds(Shape shape, int x, int y, int orientation, int columns, int rows){
+        return x + shape.getMinX(orientation) >= 0 && x + shape.getMaxX(orientation) < columns && y + shape.getMinY(orientation) >= 0 && y + shape.getMaxY(orientation) < rows;
+    }
+    /**
+     * @param board the rows of the board.
+     * @param offset the index of the lowest row of the board.
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return true if the tetromino lies within the board without
+     * overlapping any other block.
+     */
+    static boolean fits(long[] board, int offset, int columns, int rows, Shape shape, int x, int y, int orientation){
+        if(!inBounds(shape, x, y, orientation, columns, rows))
+            return false;
+
+        int shift = x + shape.getMinX(orientation);
+        for(int yOff = shape.getMinY(orientation) ; yOff <= shape.getMaxY(orientation) ; ++yOff)
+            if((board[offset + y + yOff] & shape.getMask(orientation, yOff) << shift) != 0L)
+                return false;
+        return true;
+    }
+    /**
+     * @param board the rows of the board.
+     * @param offset the index of the lowest row of the board.
+     * @param rows the number of rows of the board.
+     * @param shape the orientations of the tetromino.
+     * @param y the row of the center.
+     * @param orientation the orientation.
+     * @param full the mask of a row where every cell is occupied.
+     * @return the columns where the center can be put without leaving the
+     * board or overlapping with another block.
+     */
+    static long fits(long[] board, int offset, int rows, Shape shape, int y, int orientation, long full){
+        long fits = full;
+        for(int i = 0 ; i < shape.getBlocks(orientation) && fits != 0L ; ++i){
+            int xOff = shape.getX(orientation, i);
+            int row = y + shape.getY(orientation, i);
+            long empty = row >= 0 && row < rows ? ~board[offset + row] & full : 0L;
+            fits &= xOff >= 0 ? empty >>> xOff : empty << -xOff;
+        }
+        return fits & full;
+    }
+    /**
+     * Puts the tetromino on the board and removes all full rows.
+     * @param board the rows of the board.
+     * @param offset the index of the lowest row of the board.
+     * @param rows the number of rows of the board.
+     * @param full the mask of a row where every cell is occupied.
+     * @param shape the orientations of the tetromino.
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param orientation the orientation.
+     * @return the number of removed rows.
+     */
+    static int place(long[] board, int offset, int rows, long full, Shape shape, int x, int y, int orientation){
+        int shift = x + shape.getMinX(orientation);
+        for(int yOff = shape.getMinY(orientation) ; yOff <= shape.getMaxY(orientation) ; ++yOff)
+            board[offset + y + yOff] |= shape.getMask(orientation, yOff) << shift;
+
+        int removed = 0;
+        for(int row = offset ; row < offset + rows ; ++row){
+            if(board[row] == full)
+                ++removed;
+            else if(removed > 0)
+                board[row - removed] = board[row];
+        }
+        Arrays.fill(board, offset + rows - removed, offset + rows, 0L);
+        return removed;
+    }
+}
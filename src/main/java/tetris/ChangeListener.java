@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.function.BiConsumer;
+
+/**
+ * This interface is notified whenever the field of a game changes.<br>
+ * Instead of being called for every single cell, it is called once per
+ * modification of the game, such as a movement of the current block or
+ * the removal of rows, with the smallest rectangle that contains all
+ * cells that have changed.
+ * @author Zavarov
+ */
+@FunctionalInterface
+public interface ChangeListener{
+    /**
+     * Called after the cells in the rectangle have changed.
+     * @param column the leftmost column of the rectangle.
+     * @param row the lowest row of the rectangle.
+     * @param width the number of columns in the rectangle.
+     * @param height the number of rows in the rectangle.
+     */
+    void changed(int column, int row, int width, int height);
+    /**
+     * Creates a listener that passes every cell of the rectangle on to the
+     * consumer, starting with the top row.
+     * @param update the consumer that is called for every changed cell.
+     * @return the listener wrapping the consumer.
+     */
+    static ChangeListener of(BiConsumer<Integer,Integer> update){
+        return (column, row, width, height) -> {
+            for(int y = row + height - 1 ; y >= row ; --y)
+                for(int x = column ; x < column + width ; ++x)
+                    update.accept(x, y);
+        };
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a bounded queue of commands that may be filled by
+ * any number of threads, but is only emptied by a single thread at a
+ * time.<br>
+ * Every slot of the ring carries a sequence number that tells producers
+ * and the consumer whether it is free or filled, so neither side ever
+ * blocks. If the queue is full, the command is dropped instead.
+ * @author Zavarov
+ */
+public class CommandQueue{
+    /**
+     * The value returned by {@link #poll()} if the queue is empty.
+     */
+    public static final int EMPTY = -1;
+    /**
+     * The commands in the ring.
+     */
+    protected final int[] commands;
+    /**
+     * The sequence number of every slot in the ring.
+     */
+    protected final AtomicLongArray sequences;
+    /**
+     * The mask to map a position to its slot.
+     */
+    protected final int mask;
+    /**
+     * The position the next command is written to.
+     */
+    protected final AtomicLong head;
+    /**
+     * The position the next command is read from.
+     */
+    protected volatile long tail;
+    /**
+     * The number of commands that were rejected because the queue was
+     * full.
+     */
+    protected final AtomicLong drops;
+    /**
+     * The number of times a producer had to retry because another producer
+     * claimed the same slot first.
+     */
+    protected final AtomicLong contention;
+    /**
+     * Creates an empty queue.
+     * @param capacity the minimum number of commands the queue can hold.
+     * It is rounded up to the next power of two.
+     */
+    public CommandQueue(int capacity){
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        this.commands = new int[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.drops = new AtomicLong();
+        this.contention = new AtomicLong();
+
+        for(int i = 0 ; i < size ; ++i)
+            sequences.set(i, i);
+    }
+    /**
+     * Adds a command to the end of the queue. May be called by any thread.
+     * @param command the non-negative command.
+     * @return true if the command was added, false if the queue was full.
+     */
+    public boolean offer(int command){
+        long position;
+        while(true){
+            position = head.get();
+            long difference = sequences.get((int)position & mask) - position;
+            if(difference == 0){
+                if(head.compareAndSet(position, position + 1))
+                    break;
+                contention.incrementAndGet();
+            }else if(difference < 0){
+                drops.incrementAndGet();
+                return false;
+            }
+        }
+
+        int index = (int)position & mask;
+        commands[index] = command;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+    /**
+     * Removes the first command of the queue. May only be called by one
+     * thread at a time.
+     * @return the first command or {@link #EMPTY} if there is none.
+     */
+    public int poll(){
+        long position = tail;
+        int index = (int)position & mask;
+        if(sequences.get(index) != position + 1)
+            return EMPTY;
+
+        int command = commands[index];
+        sequences.lazySet(index, position + commands.length);
+        tail = position + 1;
+        return command;
+    }
+    /**
+     * @return true if no command has been added that hasn't been removed
+     * yet.
+     */
+    public boolean isEmpty(){
+        return head.get() == tail;
+    }
+    /**
+     * @return the number of commands that are currently in the queue.
+     */
+    public int size(){
+        return (int)Math.max(0, head.get() - tail);
+    }
+    /**
+     * @return the maximum number of commands the queue can hold.
+     */
+    public int capacity(){
+        return commands.length;
+    }
+    /**
+     * @return the number of commands that were rejected because the queue
+     * was full.
+     */
+    public long getDrops(){
+        return drops.get();
+    }
+    /**
+     * @return the number of times a producer had to retry because another
+     * producer was faster.
+     */
+    public long getContention(){
+        return contention.get();
+    }
+}
@@ -17,12 +17,27 @@
 package tetris;
 
 import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
 
 import java.util.Arrays;
-import java.util.Objects;
 
 /**
- * This class implements the playing field of the tetris game.
+ * This class implements the playing field of the tetris game.<br>
+ * Next to the cells, the field maintains a 64-bit Zobrist hash of its
+ * content. Every row has its own hash, which is the XOR of a random key
+ * for the column and type of each occupied cell. The hash of the field
+ * combines the hashes of all rows, each mixed with a random key for its
+ * row. This way, changing a cell only updates the hash of its row and
+ * moving a row only exchanges the contribution of that row, without
+ * looking at its cells. The keys only depend on the position and type, so
+ * fields with the same content have the same hash.<br>
+ * Additionally, the occupied cells are tracked with one bitmask per row,
+ * where bit x of the mask of row y is set if and only if the cell (x,y) is
+ * occupied, and with one bitset per column, where bit y is set if the cell
+ * is occupied. This way, full rows, the number of cells in a row and the
+ * height of a column are found without scanning the cells.<br>
+ * The hash and the masks are only maintained by the methods of this class,
+ * which means that the underlying array must not be modified directly.
  * @author Zavarov
  */
 public class Field{
@@ -39,15 +54,66 @@ public class Field{
      * The number of rows.
      */
     protected final int rows;
+    /**
+     * The XOR of the keys of all occupied cells in every row.
+     */
+    protected final long[] rowHashes;
+    /**
+     * The hash of the whole field.
+     */
+    protected long hash;
+    /**
+     * The occupied cells of every row.
+     */
+    protected final long[] masks;
+    /**
+     * The mask of a row where every cell is occupied.
+     */
+    protected final long full;
+    /**
+     * The number of words needed to store a single column.
+     */
+    protected final int words;
+    /**
+     * The occupied cells of every column, stored column by column. Bit y
+     * of the column x is in the word x * {@link #words} + y / 64.
+     */
+    protected final long[] columnMasks;
     /**
      * Creates a new field of the given size.
      * @param columns the number of columns.
      * @param rows the number of rows.
+     * @throws IllegalArgumentException if a row doesn't fit into a single mask.
      */
     public Field(int columns, int rows){
-        this.field = new Tetromino[rows][columns];
+        this(columns, rows, new Tetromino[rows][columns], new long[rows]);
+    }
+    /**
+     * Creates a field that uses the given arrays. Subclasses that store
+     * the cells somewhere else may pass null for both arrays, as long as
+     * they override every method that accesses them. In this case, the
+     * masks aren't created either and the subclass has to compute the
+     * hash itself.
+     * @param columns the number of columns.
+     * @param rows the number of rows.
+     * @param field the cells, row by row.
+     * @param rowHashes the hashes of the rows.
+     * @throws IllegalArgumentException if a row doesn't fit into a single mask.
+     */
+    protected Field(int columns, int rows, Tetromino[][] field, long[] rowHashes){
+        if(columns > Long.SIZE)
+            throw new IllegalArgumentException("At most "+Long.SIZE+" columns are supported.");
+
+        this.field = field;
         this.columns = columns;
         this.rows = rows;
+        this.rowHashes = rowHashes;
+        this.full = columns == Long.SIZE ? -1L : (1L << columns) - 1;
+        this.words = (rows + Long.SIZE - 1) / Long.SIZE;
+        this.masks = field == null ? null : new long[rows];
+        this.columnMasks = field == null ? null : new long[columns * words];
+        if(rowHashes != null)
+            updateHash();
     }
     /**
      * Replaces the element at the specified position.
@@ -57,9 +123,15 @@ public class Field{
      * @return the input if the coordinates are inside the field, otherwise null.
      */
     public Tetromino put(int column, int row, Tetromino tetromino){
-        if(isValid(column,row))
-            return field[row][column] = tetromino;
-        return null;
+        if(!isValid(column,row))
+            return null;
+        
+        rehash(column, row, field[row][column], tetromino);
+        if(tetromino == null)
+            unset(column, row);
+        else
+            set(column, row);
+        return field[row][column] = tetromino;
     }
     /**
      * Removes one element from the field.
@@ -72,9 +144,29 @@ public class Field{
             return null;
         
         Tetromino removed = field[row][column];
+        rehash(column, row, removed, null);
+        unset(column, row);
         field[row][column] = null;
         return removed;
     }
+    /**
+     * Marks the cell as occupied in the row and column masks.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     */
+    private void set(int column, int row){
+        masks[row] |= 1L << column;
+        columnMasks[column * words + row / Long.SIZE] |= 1L << row;
+    }
+    /**
+     * Clears the cell in the row and column masks.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     */
+    private void unset(int column, int row){
+        masks[row] &= ~(1L << column);
+        columnMasks[column * words + row / Long.SIZE] &= ~(1L << row);
+    }
     /**
      * Removes the row pushes all rows above it down by one.
      * @param row the row.
@@ -87,11 +179,72 @@ public class Field{
         clear(row);
         Tetromino[] removed = field[row];
 
-        if (rows - 1 - row >= 0)
+        if (rows - 1 - row >= 0){
             System.arraycopy(field, row + 1, field, row, rows - 1 - row);
+            System.arraycopy(rowHashes, row + 1, rowHashes, row, rows - 1 - row);
+            System.arraycopy(masks, row + 1, masks, row, rows - 1 - row);
+        }
         field[rows - 1] = removed;
+        rowHashes[rows - 1] = 0L;
+        masks[rows - 1] = 0L;
+        updateHash();
+        updateColumns();
         return true;
     }
+    /**
+     * Removes all full rows and pushes the remaining rows down.<br>
+     * In contrast to removing every full row individually, each row is
+     * moved at most once, regardless of how many rows are removed.
+     * @return the number of removed rows.
+     */
+    public int removeRows(){
+        int bottom = 0;
+        for(int y = 0 ; y < rows ; ++y){
+            if(isFull(y)){
+                erase(y);
+            }else{
+                if(bottom != y)
+                    swap(bottom, y);
+                ++bottom;
+            }
+        }
+        return rows - bottom;
+    }
+    /**
+     * Empties the row without removing the individual elements.
+     * @param row the row.
+     */
+    protected void erase(int row){
+        Arrays.fill(field[row], null);
+        eraseHash(row);
+        
+        for(long mask = masks[row] ; mask != 0L ; mask &= mask - 1)
+            columnMasks[Long.numberOfTrailingZeros(mask) * words + row / Long.SIZE] &= ~(1L << row);
+        masks[row] = 0L;
+    }
+    /**
+     * Exchanges the content of two rows.
+     * @param row the first row.
+     * @param other the second row.
+     */
+    protected void swap(int row, int other){
+        Tetromino[] tmp = field[row];
+        field[row] = field[other];
+        field[other] = tmp;
+        
+        swapHashes(row, other);
+        
+        //Only columns where the rows differ have to be changed
+        for(long diff = masks[row] ^ masks[other] ; diff != 0L ; diff &= diff - 1){
+            int offset = Long.numberOfTrailingZeros(diff) * words;
+            columnMasks[offset + row / Long.SIZE] ^= 1L << row;
+            columnMasks[offset + other / Long.SIZE] ^= 1L << other;
+        }
+
+        long mask = masks[row];
+        masks[row] = masks[other];
+        masks[other] = mask;
+    }
     /**
      * Removes all elements in the row.
      * @param row the row.
@@ -109,13 +262,62 @@ public class Field{
             clear(y);
     }
     /**
+     * Checks whether the row is full by comparing its mask.
      * @param row the row.
      * @return true if all entries in this row are filled.
      */
     public boolean isFull(int row){
-        if(isValid(row))
-            return Arrays.stream(field[row]).allMatch(Objects::nonNull);
-        return false;
+        return isValid(row) && getMask(row) == full;
+    }
+    /**
+     * Recomputes the column masks from the masks of the rows.
+     */
+    protected void updateColumns(){
+        Arrays.fill(columnMasks, 0L);
+        for(int y = 0 ; y < rows ; ++y)
+            for(long mask = masks[y] ; mask != 0L ; mask &= mask - 1)
+                columnMasks[Long.numberOfTrailingZeros(mask) * words + y / Long.SIZE] |= 1L << y;
+    }
+    /**
+     * @param row the row.
+     * @return the number of occupied cells in this row.
+     */
+    public int getCount(int row){
+        return Long.bitCount(getMask(row));
+    }
+    /**
+     * @param row the row.
+     * @return the occupied cells of the row or 0, if the row doesn't exist.
+     */
+    public long getMask(int row){
+        return isValid(row) ? masks[row] : 0L;
+    }
+    /**
+     * The height of a column is the row above its highest occupied cell.
+     * @param column the x coordinate.
+     * @return the height of the column or 0, if it is empty or invalid.
+     */
+    public int getHeight(int column){
+        return getHeight(column, rows);
+    }
+    /**
+     * Finds the highest occupied cell below the row by looking at the
+     * leading zeros of the column mask.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the height of the column when only the cells below the row
+     * are considered.
+     */
+    public int getHeight(int column, int row){
+        if(!isValid(column, 0) || row <= 0)
+            return 0;
+        
+        int y = Math.min(row, rows) - 1;
+        int word = y / Long.SIZE;
+        long mask = columnMasks[column * words + word] & (-1L >>> (Long.SIZE - 1 - y % Long.SIZE));
+        while(mask == 0L && word > 0)
+            mask = columnMasks[column * words + --word];
+        return mask == 0L ? 0 : word * Long.SIZE + Long.SIZE - Long.numberOfLeadingZeros(mask);
     }
     /**
      * @param column the x coordinate.
@@ -142,6 +344,128 @@ public class Field{
     public boolean isValid(int column, int row){
         return isValid(row) && column >= 0 && column < columns;
     }
+    /**
+     * @return the Zobrist hash of the content of the field.
+     */
+    public long getHash(){
+        return hash;
+    }
+    /**
+     * @param other another field.
+     * @return true if both fields have the same size and every cell
+     * contains the same type.
+     */
+    public boolean contentEquals(Field other){
+        if(other.columns != columns || other.rows != rows || other.getHash() != getHash())
+            return false;
+        
+        for(int y = 0 ; y < rows ; ++y){
+            for(int x = 0 ; x < columns ; ++x){
+                Tetromino tetromino = get(x, y);
+                Tetromino otherTetromino = other.get(x, y);
+                if(tetromino == null ? otherTetromino != null : otherTetromino == null || tetromino.getType() != otherTetromino.getType())
+                    return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Updates the hashes after a cell has changed.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @param before the previous content of the cell.
+     * @param after the new content of the cell.
+     */
+    private void rehash(int column, int row, Tetromino before, Tetromino after){
+        rehash(row, getRowHash(row) ^ key(column, before) ^ key(column, after));
+    }
+    /**
+     * Replaces the hash of a row and updates the hash of the field.
+     * @param row the row.
+     * @param rowHash the new hash of the row.
+     */
+    protected void rehash(int row, long rowHash){
+        hash ^= mix(row, getRowHash(row)) ^ mix(row, rowHash);
+        setRowHash(row, rowHash);
+    }
+    /**
+     * Updates the hashes after a row has been emptied.
+     * @param row the row.
+     */
+    protected void eraseHash(int row){
+        rehash(row, 0L);
+    }
+    /**
+     * Updates the hashes after the content of two rows has been exchanged.
+     * @param row the first row.
+     * @param other the second row.
+     */
+    protected void swapHashes(int row, int other){
+        long rowHash = getRowHash(row);
+        long otherHash = getRowHash(other);
+        hash ^= mix(row, rowHash) ^ mix(other, otherHash) ^ mix(row, otherHash) ^ mix(other, rowHash);
+        setRowHash(row, otherHash);
+        setRowHash(other, rowHash);
+    }
+    /**
+     * Recomputes the hash of the field from the hashes of the rows.
+     */
+    protected void updateHash(){
+        hash = 0L;
+        for(int y = 0 ; y < rows ; ++y)
+            hash ^= mix(y, getRowHash(y));
+    }
+    /**
+     * @param row the row.
+     * @return the XOR of the keys of all occupied cells in the row.
+     */
+    protected long getRowHash(int row){
+        return rowHashes[row];
+    }
+    /**
+     * Replaces the hash of the row without updating the hash of the field.
+     * @param row the row.
+     * @param rowHash the new hash of the row.
+     */
+    protected void setRowHash(int row, long rowHash){
+        rowHashes[row] = rowHash;
+    }
+    /**
+     * @param column the x coordinate.
+     * @param tetromino the content of the cell.
+     * @return the random key of the content in the column or 0, if the cell
+     * is empty.
+     */
+    private static long key(int column, Tetromino tetromino){
+        return tetromino == null ? 0L : key(column, tetromino.getType());
+    }
+    /**
+     * @param column the x coordinate.
+     * @param type the type of the content of the cell.
+     * @return the random key of the type in the column.
+     */
+    protected static long key(int column, Type type){
+        return scramble(0x632BE59BD9B4E019L + column * 8L + type.ordinal());
+    }
+    /**
+     * @param row the y coordinate.
+     * @param rowHash the hash of the row.
+     * @return the contribution of the row to the hash of the field.
+     */
+    protected static long mix(int row, long rowHash){
+        return scramble(rowHash ^ (0x9E3779B97F4A7C15L * (row + 1)));
+    }
+    /**
+     * The finalizer of the SplitMix64 generator, which turns every number
+     * into a different random-looking number.
+     * @param value the number.
+     * @return the scrambled number.
+     */
+    static long scramble(long value){
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
     /**
      * Computes a simplied version of the current state of the field.<br>
      * Occupied spaces will be indicated by an X, while empty spaces are
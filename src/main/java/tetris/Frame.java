@@ -29,13 +29,22 @@ public class Frame extends JFrame{
     private static final int HEIGHT = ROWS * 40;
     
     public Frame(){
+        this(0);
+    }
+    
+    /**
+     * @param fps the frame rate of the active renderer or 0 if the field is
+     * only repainted whenever it changes.
+     */
+    public Frame(int fps){
         super.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        super.add(new Panel(COLUMNS, ROWS, WIDTH, HEIGHT));
+        super.add(new Panel(COLUMNS, ROWS, WIDTH, HEIGHT, fps));
         super.setSize(WIDTH, HEIGHT);
         super.setVisible(true);
     }
     
     public static void main(String[] args){
-        Frame frame = new Frame();
+        int fps = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        Frame frame = new Frame(fps);
     }
 }
@@ -17,48 +17,130 @@
 package tetris;
 
 import tetris.tetromino.Tetromino;
-import tetris.tetromino.Tetromino.Type;
 
-import java.util.concurrent.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 /**
- * This class implements the drawn playing field.
+ * This class implements the drawn playing field.<br>
+ * The rules of the game are implemented by the underlying simulation,
+ * while this class advances it in real time and updates the visual
+ * interface.<br>
+ * Inputs never block the calling thread. Every input and every gravity
+ * tick is put into a queue of commands, which is emptied by whichever
+ * thread currently owns the game. This way, only one thread modifies the
+ * game at a time and all commands are executed in the order they arrived.
  * @author Zavarov
  */
-public class Game extends Field{
+public class Game extends Simulation{
     /**
-     * The block that is currently selected.
+     * The command for moving the current tetromino to the left.
      */
-    protected Tetromino currentBlock;
+    protected static final int MOVE_LEFT = 0;
     /**
-     * The x coordinate of every new block.
+     * The command for moving the current tetromino to the right.
      */
-    protected int xStart;
+    protected static final int MOVE_RIGHT = 1;
     /**
-     * The y coordinate of every new block.
+     * The command for rotating the current tetromino counter clockwise.
      */
-    protected int yStart;
+    protected static final int ROTATE_LEFT = 2;
     /**
-     * The mutex so that only one thread may modify the game.
+     * The command for rotating the current tetromino clockwise.
      */
-    protected Semaphore mutex;
+    protected static final int ROTATE_RIGHT = 3;
     /**
-     * The executor that is responsible for the falling blocks.
+     * The command for moving the current tetromino to the bottom.
      */
-    protected ScheduledExecutorService executor;
+    protected static final int FALL_DOWN = 4;
     /**
-     * The time in seconds it takes for a block to fall.
+     * The command for letting the current tetromino fall by one row.
+     */
+    protected static final int TICK = 5;
+    /**
+     * The default number of commands that may be queued at once.
+     */
+    protected static int CAPACITY = 64;
+    /**
+     * The commands that haven't been executed yet.
+     */
+    protected final CommandQueue commands;
+    /**
+     * Held while a thread owns the game and executes the queued commands.
+     */
+    protected final ReentrantLock owner;
+    /**
+     * The executor that empties the queue after an input or null, if the
+     * thread of the input empties it itself.
+     */
+    protected volatile Executor executor;
+    /**
+     * The scheduler that is responsible for the falling blocks.
+     */
+    protected final Scheduler scheduler;
+    /**
+     * The default time in seconds it takes for a block to fall.
      */
     protected static long PERIOD = 1;
     /**
-     * The function that updates the visual interface.
+     * The time it takes for a block to fall.
+     */
+    protected final long period;
+    /**
+     * The unit of the period.
+     */
+    protected final TimeUnit unit;
+    /**
+     * The listener that updates the visual interface.
+     */
+    protected ChangeListener listener;
+    /**
+     * The listeners that are notified after the listener of the visual
+     * interface, such as players.
+     */
+    protected final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * The latest snapshot of the field. Snapshots are only replaced, never
+     * modified, so readers on other threads always see a consistent field
+     * without having to wait for the game.
+     */
+    protected volatile Snapshot snapshot;
+    /**
+     * The number of modifications that are currently in progress. The
+     * listener is only notified once the outermost one is done.
      */
-    protected BiConsumer<Integer,Integer> update;
+    private int depth;
+    /**
+     * The leftmost column that has changed in the current modification.
+     */
+    private int minColumn = Integer.MAX_VALUE;
+    /**
+     * The lowest row that has changed in the current modification.
+     */
+    private int minRow = Integer.MAX_VALUE;
+    /**
+     * The rightmost column that has changed in the current modification.
+     */
+    private int maxColumn = -1;
+    /**
+     * The highest row that has changed in the current modification.
+     */
+    private int maxRow = -1;
+    /**
+     * The recorder every executed command is written to or null, if the
+     * game isn't recorded.
+     */
+    protected ReplayRecorder recorder;
     /**
      * A reference to the currently active session.
      */
-    protected ScheduledFuture<?> session;
+    protected Scheduler.Timeout session;
     /**
      * Initializes an empty field.<br>
      * The width and height will be rounded down to a multiple of the columns and
@@ -68,31 +150,170 @@ public class Game extends Field{
      * @param update the consumer that updates the underlying visual interface.
      */
     public Game(int columns, int rows, BiConsumer<Integer,Integer> update){
-        super(columns, rows);
-        
-        this.xStart = columns / 2;
-        this.yStart = rows - 2;
-        this.mutex = new Semaphore(1);
-        this.update = update;
-        executor = Executors.newSingleThreadScheduledExecutor();
+        this(columns, rows, ChangeListener.of(update));
+    }
+    /**
+     * Initializes an empty field.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     * @param listener the listener that updates the underlying visual
+     * interface.
+     */
+    public Game(int columns, int rows, ChangeListener listener){
+        this(columns, rows, listener, PERIOD, TimeUnit.SECONDS, Scheduler.getDefault());
+    }
+    /**
+     * Initializes an empty field.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     * @param update the consumer that updates the underlying visual interface.
+     * @param period the time it takes for a block to fall.
+     * @param unit the unit of the period.
+     */
+    public Game(int columns, int rows, BiConsumer<Integer,Integer> update, long period, TimeUnit unit){
+        this(columns, rows, ChangeListener.of(update), period, unit, Scheduler.getDefault());
     }
     /**
-     * @return a random new tetromino.
+     * Initializes an empty field.<br>
+     * The falling blocks of all games that share the same scheduler are
+     * handled by the threads of that scheduler.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     * @param update the consumer that updates the underlying visual interface.
+     * @param period the time it takes for a block to fall.
+     * @param unit the unit of the period.
+     * @param scheduler the scheduler executing the falling blocks.
+     */
+    public Game(int columns, int rows, BiConsumer<Integer,Integer> update, long period, TimeUnit unit, Scheduler scheduler){
+        this(columns, rows, ChangeListener.of(update), period, unit, scheduler);
+    }
+    /**
+     * Initializes an empty field.<br>
+     * The falling blocks of all games that share the same scheduler are
+     * handled by the threads of that scheduler.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     * @param listener the listener that updates the underlying visual
+     * interface.
+     * @param period the time it takes for a block to fall.
+     * @param unit the unit of the period.
+     * @param scheduler the scheduler executing the falling blocks.
+     */
+    public Game(int columns, int rows, ChangeListener listener, long period, TimeUnit unit, Scheduler scheduler){
+        this(columns, rows, listener, period, unit, scheduler, Randomizer.uniform(ThreadLocalRandom.current().nextLong()));
+    }
+    /**
+     * Initializes an empty field.<br>
+     * The falling blocks of all games that share the same scheduler are
+     * handled by the threads of that scheduler.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     * @param listener the listener that updates the underlying visual
+     * interface.
+     * @param period the time it takes for a block to fall.
+     * @param unit the unit of the period.
+     * @param scheduler the scheduler executing the falling blocks.
+     * @param randomizer the randomizer deciding the order of the
+     * tetrominoes.
      */
-    private Tetromino newTetromino(){
-        Type[] types = Tetromino.Type.values();
-        int number = ThreadLocalRandom.current().nextInt(types.length);
-        return types[number].create(this, xStart, yStart);
+    public Game(int columns, int rows, ChangeListener listener, long period, TimeUnit unit, Scheduler scheduler, Randomizer randomizer){
+        super(columns, rows, randomizer);
+        
+        this.commands = new CommandQueue(CAPACITY);
+        this.owner = new ReentrantLock();
+        this.listener = listener;
+        this.period = period;
+        this.unit = unit;
+        this.scheduler = scheduler;
+        this.snapshot = new Snapshot(this, 0);
     }
     /**
      * Starts a new game.
      */
+    @Override
     public void start(){
-        clear();
-        
-        currentBlock = newTetromino();
-        currentBlock.put();
-        session = executor.scheduleAtFixedRate(new GameLogic(), PERIOD, PERIOD, TimeUnit.SECONDS);
+        lock();
+        try{
+            if(recorder != null)
+                recorder.start(this);
+            begin();
+            try{
+                super.start();
+            }finally{
+                commit();
+            }
+            session = scheduler.schedule(new GameLogic(), period, unit);
+        }finally{
+            unlock();
+        }
+    }
+    /**
+     * Stops the blocks from falling until the game is resumed.
+     */
+    public void pause(){
+        if(session != null)
+            session.pause();
+    }
+    /**
+     * Lets the blocks fall again after the game has been paused.
+     */
+    public void resume(){
+        if(session != null)
+            session.resume();
+    }
+    /**
+     * @return true if the current game has been paused.
+     */
+    public boolean isPaused(){
+        return session != null && session.isPaused();
+    }
+    /**
+     * Ends the current game and releases it from the scheduler.<br>
+     * The game may still be started again afterwards.
+     */
+    public void dispose(){
+        lock();
+        try{
+            if(session != null)
+                session.cancel();
+            session = null;
+            currentBlock = null;
+        }finally{
+            unlock();
+        }
+    }
+    /**
+     * Records all games that are started afterwards. Should be set before
+     * the game is started. The game never writes to the stream of the
+     * recorder while it is running, unless the buffer of the recorder is
+     * full, so the recorder has to be closed once the game is disposed.
+     * @param recorder the recorder every executed command is written to or
+     * null, if the game shouldn't be recorded.
+     */
+    public void setRecorder(ReplayRecorder recorder){
+        this.recorder = recorder;
+    }
+    /**
+     * Notifies the listener about every change of the field, in addition
+     * to the listener of the visual interface. The listener is called by
+     * the thread that owns the game.
+     * @param listener the listener.
+     */
+    public void addListener(ChangeListener listener){
+        listeners.add(listener);
+    }
+    /**
+     * Stops notifying a listener that has been added before.
+     * @param listener the listener.
+     */
+    public void removeListener(ChangeListener listener){
+        listeners.remove(listener);
+    }
+    /**
+     * @return the queue of commands that haven't been executed yet.
+     */
+    public CommandQueue getCommands(){
+        return commands;
     }
     /**
      * Replaces the element at the specified position and paints the new block.
@@ -103,8 +324,13 @@ public class Game extends Field{
      */
     @Override
     public Tetromino put(int column, int row, Tetromino tetromino){
-        tetromino = super.put(column, row, tetromino);
-        update.accept(column, row);
+        begin();
+        try{
+            tetromino = super.put(column, row, tetromino);
+            mark(column, row, column, row);
+        }finally{
+            commit();
+        }
         return tetromino;
     }
     /**
@@ -116,9 +342,14 @@ public class Game extends Field{
      */
     @Override
     public Tetromino remove(int column, int row){
-        Tetromino tetromino = super.remove(column, row);
-        update.accept(column, row);
-        return tetromino;
+        begin();
+        try{
+            Tetromino tetromino = super.remove(column, row);
+            mark(column, row, column, row);
+            return tetromino;
+        }finally{
+            commit();
+        }
     }
     /**
      * Removes the row pushes all rows above it down by one and updates
@@ -128,101 +359,338 @@ public class Game extends Field{
      */
     @Override
     public boolean remove(int row){
-        if(super.remove(row)){
+        begin();
+        try{
+            boolean removed = super.remove(row);
             //All blocks above this row also need to be repainted
-            for(int y = rows - 1 ; y >= row ; --y)
-                for(int x = 0 ; x < columns; ++x)
-                    update.accept(x, y);
-            return true;
-        }else{
-            return false;
+            if(removed)
+                mark(0, row, columns - 1, rows - 1);
+            return removed;
+        }finally{
+            commit();
+        }
+    }
+    /**
+     * Removes all full rows and updates the image.<br>
+     * The listener is notified once about all rows from the lowest removed
+     * row upwards, no matter how many rows were removed.
+     * @return the number of removed rows.
+     */
+    @Override
+    public int removeRows(){
+        int lowest = 0;
+        while(lowest < rows && !isFull(lowest))
+            ++lowest;
+
+        begin();
+        try{
+            int removed = super.removeRows();
+            //All blocks above the lowest removed row have been moved
+            if(removed > 0)
+                mark(0, lowest, columns - 1, rows - 1);
+            return removed;
+        }finally{
+            commit();
         }
     }
     /**
      * Moves the current tetromino to the left.
      */
+    @Override
     public void moveLeft(){
-        mutex.acquireUninterruptibly();
-        if(currentBlock != null)
-            currentBlock.moveLeft();
-        mutex.release();
+        submit(MOVE_LEFT);
     }
     /**
      * Moves the current tetromino to the right.
      */
+    @Override
     public void moveRight(){
-        mutex.acquireUninterruptibly();
-        if(currentBlock != null)
-            currentBlock.moveRight();
-        mutex.release();
+        submit(MOVE_RIGHT);
     }
     /**
      * Rotates the current tetromino counter clockwise.
      */
+    @Override
     public void rotateLeft(){
-        mutex.acquireUninterruptibly();
-        if(currentBlock != null)
-            currentBlock.rotateLeft();
-        mutex.release();
+        submit(ROTATE_LEFT);
     }
     /**
      * Rotates the current tetromino clockwise.
      */
+    @Override
     public void rotateRight(){
-        mutex.acquireUninterruptibly();
-        if(currentBlock != null)
-            currentBlock.rotateRight();
-        mutex.release();
+        submit(ROTATE_RIGHT);
     }
     /**
      * Moves the current tetromino to the bottom.
      */
+    @Override
     public void fallDown(){
-        mutex.acquireUninterruptibly();
-        if(currentBlock != null)
-            currentBlock.fallDown();
-        mutex.release();
+        submit(FALL_DOWN);
     }
     /**
-     * Ends the current game.
+     * Goes back to the state right after an earlier tetromino has been
+     * placed and repaints the whole field. If the game was over, the blocks
+     * start falling again.
+     * @param placements the number of placements to go back.
+     * @return false if not enough placements are stored.
      */
-    private void end(){
-        currentBlock.put();
-        currentBlock = null;
-        if(session != null)
-            session.cancel(true);
+    @Override
+    public boolean rewind(int placements){
+        return travel(-placements);
+    }
+    /**
+     * Goes forth again after going back and repaints the whole field.
+     * @param placements the number of placements to go forth.
+     * @return false if not enough placements are stored.
+     */
+    @Override
+    public boolean forward(int placements){
+        return travel(placements);
     }
     /**
-     * Removes all rows that have been filled by the most recent block.
+     * Stores the state after each of the given number of placements and
+     * records the change, so that a replay stores the same placements.
+     * @param placements the maximum number of stored placements or 0, if
+     * no states should be stored.
      */
-    private void deleteFullRows(){
-        int y = 0;
-        while(y < rows){
-            if(this.isFull(y))
-                remove(y);
-            else
-                ++y;
+    @Override
+    public void setHistory(int placements){
+        lock();
+        try{
+            super.setHistory(placements);
+            if(recorder != null)
+                recorder.history(placements);
+        }finally{
+            unlock();
+        }
+    }
+    /**
+     * Restores a stored state while owning the game.
+     * @param placements the number of placements, where negative numbers
+     * go back.
+     * @return false if not enough placements are stored.
+     */
+    private boolean travel(int placements){
+        lock();
+        try{
+            boolean moved;
+            begin();
+            try{
+                moved = placements < 0 ? super.rewind(-placements) : super.forward(placements);
+                if(moved)
+                    mark(0, 0, columns - 1, rows - 1);
+            }finally{
+                commit();
+            }
+            if(moved && recorder != null)
+                recorder.travel(placements);
+            if(moved && isRunning() && (session == null || session.isCancelled()))
+                session = scheduler.schedule(new GameLogic(), period, unit);
+            return moved;
+        }finally{
+            unlock();
         }
     }
+    /**
+     * Executes the commands of all inputs on the executor instead of the
+     * thread that submitted them, so that for example the event dispatch
+     * thread never has to advance the game or notify the listener.
+     * @param executor the executor or null, if inputs are executed by the
+     * thread that submitted them.
+     */
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+    /**
+     * Queues the command and executes it right away, unless another thread
+     * currently owns the game or an executor has been set. In the first
+     * case, the owner executes it before giving up the game. If the queue
+     * is full, an input is dropped, while a tick waits until it owns the
+     * game, so that the blocks never stop falling.
+     * @param command the command.
+     * @return false if the command has been dropped.
+     */
+    protected boolean submit(int command){
+        if(!commands.offer(command)){
+            //The owner can't wait for itself
+            if(command != TICK || owner.isHeldByCurrentThread())
+                return false;
+            lock();
+            try{
+                execute(command);
+            }finally{
+                unlock();
+            }
+            return true;
+        }
+        
+        Executor executor = this.executor;
+        //Ticks are already executed by the workers of the scheduler
+        if(executor == null || command == TICK){
+            drain();
+        }else{
+            try{
+                executor.execute(this::drain);
+            }catch(RejectedExecutionException | IllegalStateException e){
+                drain();
+            }
+        }
+        return true;
+    }
+    /**
+     * Executes all queued commands if no thread owns the game. If the
+     * calling thread already owns it, the commands are left to the
+     * outermost owner, so that they aren't executed in the middle of
+     * another command.
+     */
+    protected void drain(){
+        if(owner.isHeldByCurrentThread())
+            return;
+        //Commands that arrive while giving up the game are picked up again
+        while(!commands.isEmpty() && owner.tryLock()){
+            try{
+                for(int command = commands.poll() ; command != CommandQueue.EMPTY ; command = commands.poll())
+                    execute(command);
+            }finally{
+                owner.unlock();
+            }
+        }
+    }
+    /**
+     * Executes a single command. May only be called by the owner of the
+     * game.
+     * @param command the command.
+     */
+    protected void execute(int command){
+        if(recorder != null)
+            recorder.record(command);
+        begin();
+        try{
+            switch(command){
+                case MOVE_LEFT:
+                    super.moveLeft();
+                    break;
+                case MOVE_RIGHT:
+                    super.moveRight();
+                    break;
+                case ROTATE_LEFT:
+                    super.rotateLeft();
+                    break;
+                case ROTATE_RIGHT:
+                    super.rotateRight();
+                    break;
+                case FALL_DOWN:
+                    super.fallDown();
+                    break;
+                case TICK:
+                    step();
+                    break;
+            }
+        }finally{
+            commit();
+        }
+    }
+    /**
+     * Starts a modification of the field. Changes are collected until the
+     * outermost modification is committed.
+     */
+    protected void begin(){
+        ++depth;
+    }
+    /**
+     * Ends a modification of the field. Once the outermost modification
+     * ends, the listener is notified about all cells that have changed in
+     * the meantime and a new snapshot is published, which only reads the
+     * cells that have changed from the field.
+     */
+    protected void commit(){
+        if(--depth > 0 || maxColumn < minColumn)
+            return;
+
+        int column = minColumn;
+        int row = minRow;
+        int width = maxColumn - minColumn + 1;
+        int height = maxRow - minRow + 1;
+
+        minColumn = minRow = Integer.MAX_VALUE;
+        maxColumn = maxRow = -1;
+        snapshot = new Snapshot(snapshot, this, column, row, width, height);
+        listener.changed(column, row, width, height);
+        for(ChangeListener other : listeners)
+            other.changed(column, row, width, height);
+    }
+    /**
+     * The snapshot may be read by any thread while the game keeps running.
+     * @return the state of the field after the last modification.
+     */
+    public Snapshot getSnapshot(){
+        return snapshot;
+    }
+    /**
+     * Adds the cells inside the field in the rectangle to the changed
+     * cells of the current modification.
+     * @param fromColumn the leftmost column.
+     * @param fromRow the lowest row.
+     * @param toColumn the rightmost column.
+     * @param toRow the highest row.
+     */
+    private void mark(int fromColumn, int fromRow, int toColumn, int toRow){
+        fromColumn = Math.max(fromColumn, 0);
+        fromRow = Math.max(fromRow, 0);
+        toColumn = Math.min(toColumn, columns - 1);
+        toRow = Math.min(toRow, rows - 1);
+        if(fromColumn > toColumn || fromRow > toRow)
+            return;
+
+        minColumn = Math.min(minColumn, fromColumn);
+        minRow = Math.min(minRow, fromRow);
+        maxColumn = Math.max(maxColumn, toColumn);
+        maxRow = Math.max(maxRow, toRow);
+    }
+    /**
+     * Waits until this thread owns the game and executes all commands that
+     * are still queued. The owner may lock the game again, for example
+     * from within the listener, in which case nothing is executed.
+     */
+    private void lock(){
+        owner.lock();
+        if(owner.getHoldCount() > 1)
+            return;
+
+        try{
+            for(int command = commands.poll() ; command != CommandQueue.EMPTY ; command = commands.poll())
+                execute(command);
+        }catch(RuntimeException | Error e){
+            //Nobody could own the game anymore
+            owner.unlock();
+            throw e;
+        }
+    }
+    /**
+     * Gives up the game and executes the commands that have been queued in
+     * the meantime, once the outermost lock has been released.
+     */
+    private void unlock(){
+        owner.unlock();
+        drain();
+    }
+    /**
+     * Ends the current game.
+     */
+    @Override
+    protected void end(){
+        super.end();
+        if(session != null)
+            session.cancel();
+    }
     /**
      * This class deals with the automated movement of the blocks.
      */
     private class GameLogic implements Runnable{
         @Override
         public void run(){
-            mutex.acquireUninterruptibly();
-            
-            if(!currentBlock.moveDown()){
-                deleteFullRows();
-                currentBlock = newTetromino();
-                
-                if(currentBlock.hasCollision())
-                    end();
-                else
-                    currentBlock.put();
-            }
-            
-            mutex.release();
+            submit(TICK);
         }
     }
     /**
@@ -230,8 +698,13 @@ public class Game extends Field{
      */
     @Override
     public void clear(){
-        super.clear();
+        begin();
+        try{
+            super.clear();
+        }finally{
+            commit();
+        }
         if(session != null)
-            session.cancel(true);
+            session.cancel();
     }
 }
\ No newline at end of file
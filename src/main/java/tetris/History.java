@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class keeps the state of a game after each of the last placed
+ * tetrominoes, so that the game can go back and forth between them.<br>
+ * The states are written by the {@link StateCodec} into a ring of slots of
+ * a single buffer, which is allocated once. Once the ring is full, the
+ * oldest state is overwritten. Going back or forth by any number of
+ * placements restores a single state, regardless of the number of
+ * placements in between. If a new tetromino is placed after going back,
+ * all later states are dropped.
+ * @author Zavarov
+ */
+public class History{
+    /**
+     * The states of the game, one slot per placement.
+     */
+    protected final ByteBuffer states;
+    /**
+     * The number of slots.
+     */
+    protected final int capacity;
+    /**
+     * The number of bytes of a single slot.
+     */
+    protected final int size;
+    /**
+     * The number of the oldest placement that is still stored.
+     */
+    protected long first;
+    /**
+     * The number of the newest placement that is stored.
+     */
+    protected long last = -1;
+    /**
+     * The number of the placement the game is currently at.
+     */
+    protected long current = -1;
+    /**
+     * @param simulation the game whose states are stored.
+     * @param capacity the maximum number of stored placements.
+     * @throws IllegalArgumentException if the states don't fit into a
+     * single buffer.
+     */
+    public History(Simulation simulation, int capacity){
+        this.capacity = Math.max(1, capacity);
+        this.size = StateCodec.getSize(simulation);
+        try{
+            this.states = ByteBuffer.allocate(Math.multiplyExact(this.capacity, size));
+        }catch(ArithmeticException e){
+            throw new IllegalArgumentException("The states of "+capacity+" placements don't fit into a single buffer.", e);
+        }
+    }
+    /**
+     * Stores the current state of the game as the newest placement. All
+     * placements after the current one are dropped.
+     * @param simulation the game.
+     */
+    public void record(Simulation simulation){
+        last = ++current;
+        first = Math.max(first, last - capacity + 1);
+        StateCodec.write(simulation, slot(current));
+    }
+    /**
+     * Goes back by the given number of placements.
+     * @param simulation the game.
+     * @param placements the number of placements.
+     * @return false if not enough placements are stored.
+     */
+    public boolean rewind(Simulation simulation, int placements){
+        return moveTo(simulation, current - placements);
+    }
+    /**
+     * Goes forth by the given number of placements after going back.
+     * @param simulation the game.
+     * @param placements the number of placements.
+     * @return false if not enough placements are stored.
+     */
+    public boolean forward(Simulation simulation, int placements){
+        return moveTo(simulation, current + placements);
+    }
+    /**
+     * Drops all stored placements.
+     */
+    public void clear(){
+        first = 0;
+        last = current = -1;
+    }
+    /**
+     * @return the number of placements the game can go back.
+     */
+    public int getRewindable(){
+        return (int)Math.max(0, current - first);
+    }
+    /**
+     * @return the number of placements the game can go forth.
+     */
+    public int getForwardable(){
+        return (int)(last - current);
+    }
+    /**
+     * @return the maximum number of stored placements.
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+    /**
+     * Restores the state of the given placement.
+     * @param simulation the game.
+     * @param placement the number of the placement.
+     * @return false if the placement isn't stored.
+     */
+    protected boolean moveTo(Simulation simulation, long placement){
+        if(placement < first || placement > last)
+            return false;
+
+        current = placement;
+        StateCodec.read(slot(placement), simulation);
+        return true;
+    }
+    /**
+     * @param placement the number of the placement.
+     * @return the buffer, limited to the slot of the placement.
+     */
+    private ByteBuffer slot(long placement){
+        int offset = (int)(placement % capacity) * size;
+        states.clear();
+        states.position(offset);
+        states.limit(offset + size);
+        return states;
+    }
+}
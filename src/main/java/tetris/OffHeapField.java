@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.nio.ByteBuffer;
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import static tetris.Types.FILLERS;
+import static tetris.Types.TYPES;
+
+/**
+ * This class implements a field whose cells are stored in a slot of a
+ * {@link Slab} instead of the heap.<br>
+ * Every cell takes four bits, containing either 0 for empty cells or the
+ * ordinal of the type plus one, where the even columns use the lower bits
+ * of a byte. Only the type of a tetromino is kept, so the elements that are
+ * returned by {@link #get(int, int)} are tetrominoes shared by all fields,
+ * one for every type. This means that a field can't be used for the
+ * falling tetromino of a game, which has to find its own blocks on the
+ * field, but for everything that only depends on the occupied cells.<br>
+ * Behind the cells, the slot contains the mask and the hash of every row,
+ * which are updated with every change like those of a regular field, so
+ * neither the masks nor the hashes require to look at the cells. Only the
+ * hash of the whole field is kept on the heap.<br>
+ * Once the field is closed, its slot may be handed out again and any
+ * further use of the field fails.
+ * @author Zavarov
+ */
+public class OffHeapField extends Field implements AutoCloseable{
+    /**
+     * The slab the cells are stored in.
+     */
+    protected final Slab slab;
+    /**
+     * The slot of the field in the slab.
+     */
+    protected final int slot;
+    /**
+     * The index of the first byte of the field in the slab.
+     */
+    protected final int offset;
+    /**
+     * The number of bytes of every row.
+     */
+    protected final int width;
+    /**
+     * The index of the mask of the first row in the slab.
+     */
+    protected final int maskOffset;
+    /**
+     * The index of the hash of the first row in the slab.
+     */
+    protected final int hashOffset;
+    /**
+     * Set once the field has been closed.
+     */
+    private boolean closed;
+    /**
+     * Creates an empty field. Only called by the slab.
+     * @param slab the slab the cells are stored in.
+     * @param slot the slot of the field in the slab.
+     */
+    OffHeapField(Slab slab, int slot){
+        super(slab.columns, slab.rows, null, null);
+        this.slab = slab;
+        this.slot = slot;
+        this.offset = slot * slab.stride;
+        this.width = (slab.columns + 1) / 2;
+        this.maskOffset = offset + Slab.getCellBytes(slab.columns, slab.rows);
+        this.hashOffset = maskOffset + slab.rows * Long.BYTES;
+        updateHash();
+    }
+    /**
+     * Only the type of the tetromino is stored.
+     * @param column the x coordinate.
+     * @param row the y coorindate.
+     * @param tetromino the new element.
+     * @return the input if the coordinates are inside the field, otherwise null.
+     */
+    @Override
+    public Tetromino put(int column, int row, Tetromino tetromino){
+        if(!isValid(column, row))
+            return null;
+
+        set(buffer(), column, row, tetromino == null ? 0 : tetromino.getType().ordinal() + 1);
+        return tetromino;
+    }
+    /**
+     * Removes one element from the field.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the shared tetromino of the type that was removed.
+     */
+    @Override
+    public Tetromino remove(int column, int row){
+        Tetromino removed = get(column, row);
+        if(removed != null)
+            set(buffer(), column, row, 0);
+        return removed;
+    }
+    /**
+     * Removes the row pushes all rows above it down by one.
+     * @param row the row.
+     * @return true if the field was changed as a result of this function.
+     */
+    @Override
+    public boolean remove(int row){
+        if(!isValid(row))
+            return false;
+
+        ByteBuffer buffer = buffer();
+        for(int i = offset + row * width ; i < offset + (rows - 1) * width ; ++i)
+            buffer.put(i, buffer.get(i + width));
+        for(int y = row ; y < rows - 1 ; ++y){
+            buffer.putLong(maskOffset + y * Long.BYTES, buffer.getLong(maskOffset + (y + 1) * Long.BYTES));
+            buffer.putLong(hashOffset + y * Long.BYTES, buffer.getLong(hashOffset + (y + 1) * Long.BYTES));
+        }
+        erase(rows - 1);
+        updateHash();
+        return true;
+    }
+    /**
+     * Empties the row.
+     * @param row the row.
+     */
+    @Override
+    protected void erase(int row){
+        ByteBuffer buffer = buffer();
+        for(int i = offset + row * width ; i < offset + (row + 1) * width ; ++i)
+            buffer.put(i, (byte)0);
+        buffer.putLong(maskOffset + row * Long.BYTES, 0L);
+        eraseHash(row);
+    }
+    /**
+     * Exchanges the content of two rows.
+     * @param row the first row.
+     * @param other the second row.
+     */
+    @Override
+    protected void swap(int row, int other){
+        ByteBuffer buffer = buffer();
+        for(int i = offset + row * width, j = offset + other * width ; i < offset + (row + 1) * width ; ++i, ++j){
+            byte value = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, value);
+        }
+        long mask = getMask(row);
+        buffer.putLong(maskOffset + row * Long.BYTES, getMask(other));
+        buffer.putLong(maskOffset + other * Long.BYTES, mask);
+        swapHashes(row, other);
+    }
+    /**
+     * Removes all elements in the row.
+     * @param row the row.
+     */
+    @Override
+    public void clear(int row){
+        if(isValid(row))
+            erase(row);
+    }
+    /**
+     * Removes all elements on the field.
+     */
+    @Override
+    public void clear(){
+        ByteBuffer buffer = buffer();
+        for(int i = offset ; i < offset + slab.stride ; ++i)
+            buffer.put(i, (byte)0);
+        updateHash();
+    }
+    /**
+     * @param row the row.
+     * @return true if all entries in this row are filled.
+     */
+    @Override
+    public boolean isFull(int row){
+        return getCount(row) == columns;
+    }
+    /**
+     * @param row the row.
+     * @return the number of occupied cells in this row.
+     */
+    @Override
+    public int getCount(int row){
+        return Long.bitCount(getMask(row));
+    }
+    /**
+     * @param row the row.
+     * @return the occupied cells of the row or 0, if the row doesn't exist.
+     */
+    @Override
+    public long getMask(int row){
+        return isValid(row) ? buffer().getLong(maskOffset + row * Long.BYTES) : 0L;
+    }
+    /**
+     * There are no column masks, so the masks of the rows are searched
+     * from the top.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the height of the column when only the cells below the row
+     * are considered.
+     */
+    @Override
+    public int getHeight(int column, int row){
+        if(!isValid(column, 0))
+            return 0;
+
+        ByteBuffer buffer = buffer();
+        for(int y = Math.min(row, rows) - 1 ; y >= 0 ; --y)
+            if((buffer.getLong(maskOffset + y * Long.BYTES) >>> column & 1L) != 0L)
+                return y + 1;
+        return 0;
+    }
+    /**
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the shared tetromino of the type at position (x,y) or null,
+     * if the cell is empty or invalid.
+     */
+    @Override
+    public Tetromino get(int column, int row){
+        Type type = getType(column, row);
+        return type == null ? null : FILLERS[type.ordinal()];
+    }
+    /**
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the type of the element at position (x,y) or null, if the cell
+     * is empty or invalid.
+     */
+    public Type getType(int column, int row){
+        if(!isValid(column, row))
+            return null;
+
+        int value = get(buffer(), column, row);
+        return value == 0 ? null : TYPES[value - 1];
+    }
+    /**
+     * Empties the field and gives its slot back to the slab.
+     */
+    @Override
+    public void close(){
+        if(closed)
+            return;
+
+        closed = true;
+        slab.release(slot);
+    }
+    /**
+     * @return true if the field has been closed.
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+    /**
+     * @return the memory of the slab.
+     * @throws IllegalStateException if either the field or the slab has
+     * been closed.
+     */
+    private ByteBuffer buffer(){
+        if(closed)
+            throw new IllegalStateException("The field has been closed.");
+        return slab.buffer();
+    }
+    /**
+     * @param buffer the memory of the slab.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the value of the cell.
+     */
+    private int get(ByteBuffer buffer, int column, int row){
+        int value = buffer.get(offset + row * width + column / 2);
+        return (column & 1) == 0 ? value & 0x0F : value >>> 4 & 0x0F;
+    }
+    /**
+     * @param buffer the memory of the slab.
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @param value the new value of the cell.
+     */
+    private void set(ByteBuffer buffer, int column, int row, int value){
+        int before = get(buffer, column, row);
+        int index = offset + row * width + column / 2;
+        int old = buffer.get(index);
+        if((column & 1) == 0)
+            buffer.put(index, (byte)(old & 0xF0 | value));
+        else
+            buffer.put(index, (byte)(old & 0x0F | value << 4));
+        
+        int mask = maskOffset + row * Long.BYTES;
+        if(value == 0)
+            buffer.putLong(mask, buffer.getLong(mask) & ~(1L << column));
+        else
+            buffer.putLong(mask, buffer.getLong(mask) | 1L << column);
+        rehash(row, getRowHash(row) ^ key(column, before) ^ key(column, value));
+    }
+    /**
+     * @param row the row.
+     * @return the XOR of the keys of all occupied cells in the row.
+     */
+    @Override
+    protected long getRowHash(int row){
+        return buffer().getLong(hashOffset + row * Long.BYTES);
+    }
+    /**
+     * Replaces the hash of the row without updating the hash of the field.
+     * @param row the row.
+     * @param rowHash the new hash of the row.
+     */
+    @Override
+    protected void setRowHash(int row, long rowHash){
+        buffer().putLong(hashOffset + row * Long.BYTES, rowHash);
+    }
+    /**
+     * @param column the x coordinate.
+     * @param value the value of the cell.
+     * @return the random key of the value in the column or 0, if the cell
+     * is empty.
+     */
+    private static long key(int column, int value){
+        return value == 0 ? 0L : key(column, TYPES[value - 1]);
+    }
+}
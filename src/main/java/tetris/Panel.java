@@ -16,17 +16,29 @@
  */
 package tetris;
 
-import tetris.tetromino.Tetromino;
-
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.function.Consumer;
 
 /**
- *
+ * This class draws the field of a game.<br>
+ * Every block is copied from a sprite that is only drawn once per color.
+ * The game only records which blocks have changed. Once per frame, the
+ * event dispatch thread redraws those blocks and repaints just the area
+ * that has changed since the last frame, so the image is never touched by
+ * any other thread.<br>
+ * The image of the field has the same format as the screen and its scaled
+ * copy is kept in video memory, so that painting the panel only copies
+ * the scaled image. The scaled image is only rebuilt when the size of the
+ * panel changes or its content is lost, otherwise just the area that has
+ * changed is scaled again.<br>
+ * Alternatively, the field can be drawn by a {@link Renderer}, which
+ * paints the latest snapshot of the game at a fixed frame rate on its own
+ * thread, independent of how often the game changes.
  * @author Zavarov
  */
 public class Panel extends JPanel{
@@ -37,13 +49,25 @@ public class Panel extends JPanel{
     public static final String FALL_DOWN = "fallDown";
     public static final String START = "start";
     /**
-     * The pixel between the inner and outer rectangle in the image.
+     * The time between two frames in milliseconds.
      */
-    private static final int INNER_RECTANGLE_OFFSET = 4;
+    private static final int FRAME = 1000 / 60;
     /**
-     * The visual representation of the field.
+     * The visual representation of the field. May only be accessed by the
+     * event dispatch thread.
      */
     protected BufferedImage image;
+    /**
+     * The image of the field, scaled to the size of the panel. May only be
+     * accessed by the event dispatch thread.
+     */
+    private VolatileImage scaled;
+    /**
+     * The area of the image that has changed since it was last scaled or
+     * null, if nothing has changed. May only be accessed by the event
+     * dispatch thread.
+     */
+    private Rectangle stale;
     /**
      * The width of the field.
      */
@@ -64,6 +88,40 @@ public class Panel extends JPanel{
      * A reference to the game.
      */
     private final Game game;
+    /**
+     * The images of all blocks.
+     */
+    private final Sprites sprites;
+    /**
+     * The renderer that draws the field in active mode or null, if the
+     * field is drawn whenever it changes.
+     */
+    private final Renderer renderer;
+    /**
+     * The timer that draws the changed blocks once per frame while the
+     * panel is displayable or null, if the field is drawn by the renderer.
+     */
+    private final Timer timer;
+    /**
+     * The lock for the area that has changed since the last frame.
+     */
+    private final Object lock = new Object();
+    /**
+     * The leftmost column that has changed since the last frame.
+     */
+    private int dirtyMinColumn = Integer.MAX_VALUE;
+    /**
+     * The lowest row that has changed since the last frame.
+     */
+    private int dirtyMinRow = Integer.MAX_VALUE;
+    /**
+     * The rightmost column that has changed since the last frame.
+     */
+    private int dirtyMaxColumn = -1;
+    /**
+     * The highest row that has changed since the last frame.
+     */
+    private int dirtyMaxRow = -1;
     /**
      * Initializes the interface for the frame.<br>
      * The width and height of the underlying image will be rounded down to
@@ -74,7 +132,28 @@ public class Panel extends JPanel{
      * @param height the height of the panel.
      */
     public Panel(int columns, int rows, int width, int height){
-        game = new Game(columns, rows, this::repaint);
+        this(columns, rows, width, height, 0);
+    }
+    /**
+     * Initializes the interface for the frame.<br>
+     * The width and height of the underlying image will be rounded down to
+     * a multiple of the columns and rows respectively. If a frame rate is
+     * given, the field is drawn by a {@link Renderer} at that rate instead
+     * of whenever the game changes.
+     * @param columns the number of columns in the game.
+     * @param rows the number of rows in the game.
+     * @param width the width of the panel.
+     * @param height the height of the panel.
+     * @param fps the frame rate of the renderer or 0 if the field is drawn
+     * whenever it changes.
+     */
+    public Panel(int columns, int rows, int width, int height, int fps){
+        if(fps > 0)
+            game = new Game(columns, rows, (x, y, w, h) -> {});
+        else
+            game = new Game(columns, rows, this::redraw);
+        //Inputs are executed by the scheduler, not the event dispatch thread
+        game.setExecutor(game.scheduler);
         
         this.blockWidth = width / columns;
         this.blockHeight = height / rows;
@@ -82,7 +161,10 @@ public class Panel extends JPanel{
         this.width = blockWidth * columns;
         this.height = blockHeight * rows;
         
-        this.image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        this.image = createCompatibleImage(this.width, this.height);
+        this.sprites = new Sprites(blockWidth, blockHeight, image.getType());
+        this.renderer = fps > 0 ? new Renderer(game, fps) : null;
+        this.timer = fps > 0 ? null : new Timer(FRAME, e -> flush());
         
         getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_LEFT , 0), MOVE_LEFT);
         getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, 0), MOVE_RIGHT);
@@ -96,68 +178,161 @@ public class Panel extends JPanel{
         getActionMap().put(ROTATE_LEFT , new LambdaAction(e -> game.rotateLeft()));
         getActionMap().put(ROTATE_RIGHT , new LambdaAction(e -> game.rotateRight()));
         getActionMap().put(FALL_DOWN, new LambdaAction(e -> game.fallDown()));
-        getActionMap().put(START, new LambdaAction(e -> game.start()));
+        getActionMap().put(START, new LambdaAction(e -> game.scheduler.execute(game::start)));
         
         game.clear();
+        
+        if(renderer != null){
+            //The panel keeps the focus for the key bindings
+            renderer.setFocusable(false);
+            setLayout(new BorderLayout());
+            add(renderer, BorderLayout.CENTER);
+        }
+    }
+    /**
+     * Starts drawing the changed blocks once the panel has become
+     * displayable.
+     */
+    @Override
+    public void addNotify(){
+        super.addNotify();
+        if(timer != null)
+            timer.start();
+    }
+    /**
+     * Stops drawing before the panel stops being displayable.
+     */
+    @Override
+    public void removeNotify(){
+        if(timer != null)
+            timer.stop();
+        super.removeNotify();
     }
     @Override
     public void paintComponent(Graphics g){
+        if(renderer != null)
+            return;
+
         super.paintComponent(g);
-        g.drawImage(image, 0, 0, this.getWidth(), this.getHeight(), null);
+        do{
+            int status = validateScaled();
+            if(status != VolatileImage.IMAGE_OK){
+                stale = null;
+                scale(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+            }else if(stale != null){
+                scale(stale);
+                stale = null;
+            }
+            g.drawImage(scaled, 0, 0, null);
+        }while(scaled.contentsLost());
     }
     /**
-     * Redraws the block at the given position.
-     * @param column the column.
-     * @param row the row.
+     * Makes sure that the scaled image matches the size of the panel and
+     * its current graphics configuration.
+     * @return {@link VolatileImage#IMAGE_OK} if the content of the scaled
+     * image is still intact, otherwise it has to be drawn again.
      */
-    private void repaint(int column, int row){
-        Tetromino tetromino = game.get(column,row);
-        if(tetromino == null)
-            drawBlank(column, row);
-        else
-            drawBlock(column, row, tetromino);
-        repaint();
+    private int validateScaled(){
+        int width = Math.max(1, getWidth());
+        int height = Math.max(1, getHeight());
+        if(scaled != null && scaled.getWidth() == width && scaled.getHeight() == height){
+            int status = scaled.validate(getGraphicsConfiguration());
+            if(status != VolatileImage.IMAGE_INCOMPATIBLE)
+                return status;
+        }
+        
+        if(scaled != null)
+            scaled.flush();
+        scaled = createVolatileImage(width, height);
+        return VolatileImage.IMAGE_INCOMPATIBLE;
     }
     /**
-     * Draws the block at the specified position.
-     * @param x the x coordinate.
-     * @param y the y coordinate.
-     * @param tetromino the block that is drawn.
+     * Scales the area of the image onto the scaled image.<br>
+     * The whole image is drawn with the area as clip, so that the pixels are
+     * exactly the same as if the whole image had been scaled.
+     * @param area the area of the image.
      */
-    private void drawBlock(int x, int y, Tetromino tetromino){
-        Graphics g = image.getGraphics();
-        g.setColor(tetromino.getColor());
-        g.fillRect(getXPosition(x), getYPosition(y), blockWidth, blockHeight);
-        
-        g.setColor(Color.BLACK);
-        //-1 so that we don't have overlaps between the entries
-        g.drawRect(getXPosition(x), getYPosition(y), blockWidth-1, blockHeight-1);
+    private void scale(Rectangle area){
+        Graphics2D g = scaled.createGraphics();
+        g.scale(scaled.getWidth() / (double)image.getWidth(), scaled.getHeight() / (double)image.getHeight());
+        g.clip(area);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+    }
+    /**
+     * The image has the same format as the screen, if there is one, so that
+     * it doesn't have to be converted whenever it is drawn.
+     * @param width the width of the image.
+     * @param height the height of the image.
+     * @return an empty image.
+     */
+    private static BufferedImage createCompatibleImage(int width, int height){
+        if(GraphicsEnvironment.isHeadless())
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         
-        //A a inner black rectangle to add a little detail.
-        if(width > INNER_RECTANGLE_OFFSET * 2 && height > INNER_RECTANGLE_OFFSET * 2){
-            g.setColor(Color.BLACK);
-            g.drawRect(getXPosition(x) + INNER_RECTANGLE_OFFSET,
-                       getYPosition(y) + INNER_RECTANGLE_OFFSET, 
-                       blockWidth  - 2*INNER_RECTANGLE_OFFSET-1, 
-                       blockHeight - 2*INNER_RECTANGLE_OFFSET-1);
+        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration();
+        return configuration.createCompatibleImage(width, height);
+    }
+    /**
+     * Adds the blocks in the given rectangle to the area that is redrawn
+     * in the next frame. May be called by any thread.
+     * @param column the leftmost column.
+     * @param row the lowest row.
+     * @param width the number of columns.
+     * @param height the number of rows.
+     */
+    private void redraw(int column, int row, int width, int height){
+        synchronized(lock){
+            dirtyMinColumn = Math.min(dirtyMinColumn, column);
+            dirtyMinRow = Math.min(dirtyMinRow, row);
+            dirtyMaxColumn = Math.max(dirtyMaxColumn, column + width - 1);
+            dirtyMaxRow = Math.max(dirtyMaxRow, row + height - 1);
         }
-        g.dispose();
     }
     /**
-     * Draws a blank block at the specified position.
-     * If both x and y are both either odd or even, the block will be gray,
-     * otherwise white.
-     * @param x the x coordinate.
-     * @param y the y coordinate.
+     * Redraws all blocks that have changed since the last frame and
+     * repaints their area.<br>
+     * The blocks are taken from the latest snapshot of the game, so that
+     * the image never shows a field that is only partially modified. The
+     * area is scaled the same way as the image in
+     * {@link #paintComponent(Graphics)} and remembered, so that only this
+     * part of the scaled image is rebuilt.
      */
-    private void drawBlank(int x, int y){
+    private void flush(){
+        int minColumn, minRow, maxColumn, maxRow;
+        synchronized(lock){
+            if(dirtyMaxColumn < dirtyMinColumn)
+                return;
+            minColumn = dirtyMinColumn;
+            minRow = dirtyMinRow;
+            maxColumn = dirtyMaxColumn;
+            maxRow = dirtyMaxRow;
+            dirtyMinColumn = dirtyMinRow = Integer.MAX_VALUE;
+            dirtyMaxColumn = dirtyMaxRow = -1;
+        }
+        
+        Snapshot snapshot = game.getSnapshot();
         Graphics g = image.getGraphics();
-        Color c = x % 2 == y % 2 ? Color.LIGHT_GRAY : Color.WHITE;
+        for(int y = minRow ; y <= maxRow ; ++y)
+            for(int x = minColumn ; x <= maxColumn ; ++x)
+                g.drawImage(sprites.get(snapshot.getType(x, y), x, y), getXPosition(x), getYPosition(y), null);
+        g.dispose();
         
-        g.setColor(c);
-        g.fillRect(x * blockWidth, height - (y+1) * blockHeight, blockWidth, blockHeight);
+        int minX = getXPosition(minColumn);
+        int minY = getYPosition(maxRow);
+        int maxX = getXPosition(maxColumn + 1);
+        int maxY = getYPosition(minRow - 1);
         
-        g.dispose();
+        Rectangle area = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+        stale = stale == null ? area : stale.union(area);
+        
+        double scaleX = getWidth() / (double)image.getWidth();
+        double scaleY = getHeight() / (double)image.getHeight();
+        int x = (int)Math.floor(minX * scaleX);
+        int y = (int)Math.floor(minY * scaleY);
+        repaint(x, y, (int)Math.ceil(maxX * scaleX) - x, (int)Math.ceil(maxY * scaleY) - y);
     }
     /**
      * @return the width of a single block of the field. 
@@ -197,7 +372,6 @@ public class Panel extends JPanel{
         @Override
         public void actionPerformed(ActionEvent e) {
             consumer.accept(e);
-            repaint();
         }
     }
 }
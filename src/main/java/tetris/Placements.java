@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Arrays;
+import tetris.tetromino.Shape;
+import tetris.tetromino.Tetromino;
+
+/**
+ * This class finds every position where a tetromino can come to rest,
+ * when it is only moved by the regular inputs and gravity.<br>
+ * A position is reachable if the tetromino can get there from its current
+ * position by moving left, right or down and by rotating, where every
+ * intermediate position must lie within the field without overlapping any
+ * other block. A reachable position is a placement, if the tetromino
+ * can't move down any further.<br>
+ * Instead of visiting every position one after another, the positions
+ * are handled as bitmasks over the columns. For every row and orientation,
+ * one mask contains the columns where the center of the tetromino fits
+ * and another one the columns that are reachable. Since a tetromino can
+ * never move up, the rows are processed from top to bottom, where the
+ * reachable columns of a row are extended by moving sideways and rotating
+ * until nothing changes anymore. The placements are written into primitive
+ * arrays that are reused for every search.
+ * @author Zavarov
+ */
+public class Placements{
+    /**
+     * The occupied cells of every row, without the tetromino itself.
+     */
+    private long[] masks = new long[0];
+    /**
+     * The columns where the center fits, indexed by orientation and row.
+     */
+    private long[][] free = new long[0][];
+    /**
+     * The reachable columns, indexed by orientation and row.
+     */
+    private long[][] reachable = new long[0][];
+    /**
+     * The x coordinate of the center of every placement.
+     */
+    private int[] xs = new int[0];
+    /**
+     * The y coordinate of the center of every placement.
+     */
+    private int[] ys = new int[0];
+    /**
+     * The orientation of every placement.
+     */
+    private int[] orientations = new int[0];
+    /**
+     * The number of placements that have been found.
+     */
+    private int size;
+    /**
+     * The number of columns of the last field.
+     */
+    private int columns;
+    /**
+     * Finds all placements of the current tetromino of the game.
+     * @param simulation the game.
+     * @return the number of placements.
+     */
+    public int generate(Simulation simulation){
+        Tetromino current = simulation.getCurrentBlock();
+        if(current == null)
+            return size = 0;
+        return generate(simulation, current);
+    }
+    /**
+     * Finds all placements of the tetromino, starting at its current
+     * position. The cells of the tetromino itself are ignored, if it is
+     * on the field.
+     * @param field the field.
+     * @param tetromino the tetromino.
+     * @return the number of placements.
+     * @throws IllegalArgumentException if a row doesn't fit into a single mask.
+     */
+    public int generate(Field field, Tetromino tetromino){
+        if(field.columns > Long.SIZE)
+            throw new IllegalArgumentException("At most "+Long.SIZE+" columns are supported.");
+
+        Shape shape = tetromino.getShape();
+        int rows = field.rows;
+        columns = field.columns;
+        long full = Boards.getFull(columns);
+        prepare(shape.size(), rows, columns);
+        size = 0;
+
+        int top = tetromino.getY();
+        if(!field.isValid(tetromino.getX(), top))
+            return 0;
+        readMasks(field, tetromino);
+
+        for(int o = 0 ; o < shape.size() ; ++o)
+            free[o][top] = Boards.fits(masks, 0, rows, shape, top, o, full);
+        reachable[tetromino.getOrientation()][top] = 1L << tetromino.getX() & free[tetromino.getOrientation()][top];
+        spread(shape, top);
+
+        int bottom = 0;
+        for(int y = top - 1 ; y >= 0 ; --y){
+            long any = 0L;
+            boolean same = true;
+            for(int o = 0 ; o < shape.size() ; ++o){
+                free[o][y] = Boards.fits(masks, 0, rows, shape, y, o, full);
+                any |= reachable[o][y] = reachable[o][y + 1] & free[o][y];
+                same &= free[o][y] == free[o][y + 1];
+            }
+            if(any == 0L){
+                //Nothing below can be reached anymore
+                bottom = y + 1;
+                break;
+            }
+            //The row above is already complete, if the same columns are free
+            if(!same)
+                spread(shape, y);
+        }
+
+        for(int o = 0 ; o < shape.size() ; ++o){
+            for(int y = bottom ; y <= top ; ++y){
+                //Resting where the tetromino doesn't fit one row below
+                long resting = reachable[o][y] & ~(y > 0 ? free[o][y - 1] : 0L);
+                for(; resting != 0L ; resting &= resting - 1){
+                    xs[size] = Long.numberOfTrailingZeros(resting);
+                    ys[size] = y;
+                    orientations[size] = o;
+                    ++size;
+                }
+            }
+        }
+        return size;
+    }
+    /**
+     * @return the number of placements that have been found by the last
+     * search.
+     */
+    public int size(){
+        return size;
+    }
+    /**
+     * @param index the index of the placement.
+     * @return the x coordinate of the center of the placement.
+     */
+    public int getX(int index){
+        return xs[index];
+    }
+    /**
+     * @param index the index of the placement.
+     * @return the y coordinate of the center of the placement.
+     */
+    public int getY(int index){
+        return ys[index];
+    }
+    /**
+     * @param index the index of the placement.
+     * @return the orientation of the placement.
+     */
+    public int getOrientation(int index){
+        return orientations[index];
+    }
+    /**
+     * Extends the reachable columns of the row by moving sideways and
+     * rotating, until no new columns are found.
+     * @param shape the orientations of the tetromino.
+     * @param y the row.
+     */
+    private void spread(Shape shape, int y){
+        boolean changed = true;
+        while(changed){
+            changed = false;
+            for(int o = 0 ; o < shape.size() ; ++o){
+                long reach = reachable[o][y];
+                if(reach == 0L)
+                    continue;
+
+                reach = slide(reach, free[o][y]);
+                reachable[o][y] = reach;
+
+                int left = shape.left(o);
+                int right = shape.right(o);
+                long rotated = reachable[left][y] | reach & free[left][y];
+                if(rotated != reachable[left][y]){
+                    reachable[left][y] = rotated;
+                    changed = true;
+                }
+                rotated = reachable[right][y] | reach & free[right][y];
+                if(rotated != reachable[right][y]){
+                    reachable[right][y] = rotated;
+                    changed = true;
+                }
+            }
+        }
+    }
+    /**
+     * Extends every reachable column to the whole run of free columns it
+     * is in. The runs are filled in both directions with doubling shifts,
+     * so the number of steps only depends on the logarithm of the width.
+     * @param reach the reachable columns.
+     * @param fits the columns where the center fits.
+     * @return the columns that are reachable by moving sideways.
+     */
+    private long slide(long reach, long fits){
+        long up = reach;
+        long down = reach;
+        long upFits = fits;
+        long downFits = fits;
+        for(int shift = 1 ; shift < columns ; shift <<= 1){
+            up |= upFits & up << shift;
+            upFits &= upFits << shift;
+            down |= downFits & down >>> shift;
+            downFits &= downFits >>> shift;
+        }
+        return up | down;
+    }
+    /**
+     * Copies the occupied cells of the field, without the cells of the
+     * tetromino itself.
+     * @param field the field.
+     * @param tetromino the tetromino.
+     */
+    private void readMasks(Field field, Tetromino tetromino){
+        for(int y = 0 ; y < field.rows ; ++y)
+            masks[y] = field.getMask(y);
+
+        Shape shape = tetromino.getShape();
+        int o = tetromino.getOrientation();
+        for(int i = 0 ; i < shape.getBlocks(o) ; ++i){
+            int x = tetromino.getX() + shape.getX(o, i);
+            int y = tetromino.getY() + shape.getY(o, i);
+            if(field.get(x, y) == tetromino)
+                masks[y] &= ~(1L << x);
+        }
+    }
+    /**
+     * Makes sure that the arrays are large enough and empty.
+     * @param count the number of orientations.
+     * @param rows the number of rows.
+     * @param columns the number of columns.
+     */
+    private void prepare(int count, int rows, int columns){
+        if(masks.length != rows || free.length < count){
+            masks = new long[rows];
+            free = new long[Math.max(count, free.length)][rows];
+            reachable = new long[free.length][rows];
+        }
+        for(int o = 0 ; o < count ; ++o)
+            Arrays.fill(reachable[o], 0L);
+
+        int capacity = count * rows * columns;
+        if(xs.length < capacity){
+            xs = new int[capacity];
+            ys = new int[capacity];
+            orientations = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino.Type;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiFunction;
+
+import static tetris.Types.TYPES;
+
+/**
+ * This class decides the order in which the tetrominoes appear.<br>
+ * The order only depends on the seed, so two randomizers with the same
+ * seed always produce the same tetrominoes. The next few types are
+ * generated in advance and kept in a ring, which may be read by any thread
+ * without waiting for the game. Readers check the number of types that
+ * have been taken before and after reading the ring and simply try again,
+ * if the game has taken a type in the meantime.
+ * @author Zavarov
+ */
+public abstract class Randomizer{
+    /**
+     * The default number of types that are known in advance.
+     */
+    public static final int PREVIEW = 5;
+    /**
+     * The seed the randomizer was created with.
+     */
+    protected final long seed;
+    /**
+     * The number of types that are known in advance.
+     */
+    protected final int preview;
+    /**
+     * The ordinals of the upcoming types. The type at position p is stored
+     * in the slot p modulo the length of the ring.
+     */
+    protected final AtomicIntegerArray queue;
+    /**
+     * The number of types that have been taken from the ring.
+     */
+    protected volatile long position;
+    /**
+     * The state of the random number generator.
+     */
+    protected long state;
+    /**
+     * @param seed the seed of the random number generator.
+     * @param preview the number of types that are known in advance.
+     */
+    protected Randomizer(long seed, int preview){
+        if(preview < 1)
+            throw new IllegalArgumentException("At least one type has to be known in advance.");
+
+        this.seed = seed;
+        this.preview = preview;
+        //One additional slot, so that the game never overwrites a type that may still be read
+        this.queue = new AtomicIntegerArray(preview + 1);
+    }
+    /**
+     * Creates a randomizer where every type is equally likely at any time.
+     * @param seed the seed of the random number generator.
+     * @return a new randomizer.
+     */
+    public static Randomizer uniform(long seed){
+        return new UniformRandomizer(seed, PREVIEW);
+    }
+    /**
+     * Creates a randomizer where all seven types are shuffled and handed
+     * out one after another, before the next shuffle.
+     * @param seed the seed of the random number generator.
+     * @return a new randomizer.
+     */
+    public static Randomizer bag(long seed){
+        return new BagRandomizer(seed, PREVIEW);
+    }
+    /**
+     * @return the kind of this randomizer.
+     */
+    public abstract Kind getKind();
+    /**
+     * Goes back to the first type, so that the same types are generated
+     * again.
+     */
+    public void reset(){
+        state = seed;
+        restart();
+        for(int i = 0 ; i < preview ; ++i)
+            queue.set(i, generate().ordinal());
+        position = 0;
+    }
+    /**
+     * Goes back to the first type and takes types until the given number of
+     * types have been taken.
+     * @param position the number of types that have been taken afterwards.
+     */
+    public void seek(long position){
+        reset();
+        while(this.position < position)
+            next();
+    }
+    /**
+     * Takes the next type and generates the one that becomes visible at the
+     * end of the preview. May only be called by one thread at a time.
+     * @return the next type.
+     */
+    public Type next(){
+        long current = position;
+        Type next = TYPES[queue.get(slot(current))];
+        position = current + 1;
+        queue.set(slot(current + preview), generate().ordinal());
+        return next;
+    }
+    /**
+     * May be called by any thread.
+     * @param index the number of types before the requested one.
+     * @return the type that is returned by {@link #next()} after index other
+     * types.
+     * @throws IndexOutOfBoundsException if the type isn't known yet.
+     */
+    public Type peek(int index){
+        if(index < 0 || index >= preview)
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+
+        while(true){
+            long current = position;
+            int ordinal = queue.get(slot(current + index));
+            if(current == position)
+                return TYPES[ordinal];
+        }
+    }
+    /**
+     * Copies all types that are known in advance. May be called by any
+     * thread, the copied types always belong to the same point in time.
+     * @param types the array the types are written to.
+     * @return the number of copied types.
+     */
+    public int getPreview(Type[] types){
+        int length = Math.min(types.length, preview);
+        while(true){
+            long current = position;
+            for(int i = 0 ; i < length ; ++i)
+                types[i] = TYPES[queue.get(slot(current + i))];
+            if(current == position)
+                return length;
+        }
+    }
+    /**
+     * @return the number of bytes that are written by
+     * {@link #save(ByteBuffer)}.
+     */
+    public int getStateSize(){
+        return 2 * Long.BYTES + preview + getAdditionalStateSize();
+    }
+    /**
+     * Writes the position, the state of the random number generator and
+     * the upcoming types, so that the randomizer can continue from this
+     * point without generating all previous types again.
+     * @param buffer the buffer the state is written to.
+     */
+    public void save(ByteBuffer buffer){
+        long current = position;
+        buffer.putLong(current);
+        buffer.putLong(state);
+        for(int i = 0 ; i < preview ; ++i)
+            buffer.put((byte)queue.get(slot(current + i)));
+        saveAdditionalState(buffer);
+    }
+    /**
+     * Checks a state that has been written by {@link #save(ByteBuffer)}
+     * without changing the randomizer or the position of the buffer.
+     * @param buffer the buffer the state is stored in.
+     * @param index the position of the state in the buffer.
+     * @throws IllegalArgumentException if the state is invalid.
+     * @throws BufferUnderflowException if the buffer is too small.
+     */
+    public void check(ByteBuffer buffer, int index){
+        if(buffer.limit() - index < getStateSize())
+            throw new BufferUnderflowException();
+        if(buffer.getLong(index) < 0L)
+            throw new IllegalArgumentException("The position must not be negative.");
+        for(int i = 0 ; i < preview ; ++i)
+            checkType(buffer.get(index + 2 * Long.BYTES + i));
+        checkAdditionalState(buffer, index + 2 * Long.BYTES + preview);
+    }
+    /**
+     * Reads a state that has been written by {@link #save(ByteBuffer)} of a
+     * randomizer of the same kind, seed and preview. The state is checked
+     * before anything is changed.
+     * @param buffer the buffer the state is read from.
+     * @throws IllegalArgumentException if the state is invalid.
+     */
+    public void restore(ByteBuffer buffer){
+        check(buffer, buffer.position());
+        long current = buffer.getLong();
+        state = buffer.getLong();
+        for(int i = 0 ; i < preview ; ++i)
+            queue.set(slot(current + i), buffer.get());
+        restoreAdditionalState(buffer);
+        position = current;
+    }
+    /**
+     * @return the number of types that are known in advance.
+     */
+    public int getPreview(){
+        return preview;
+    }
+    /**
+     * @return the seed the randomizer was created with.
+     */
+    public long getSeed(){
+        return seed;
+    }
+    /**
+     * @return the number of types that have been taken since the last reset.
+     */
+    public long getPosition(){
+        return position;
+    }
+    /**
+     * Resets the additional state of the randomizer, after the random
+     * number generator has been reset.
+     */
+    protected abstract void restart();
+    /**
+     * @return the number of bytes needed for the additional state.
+     */
+    protected abstract int getAdditionalStateSize();
+    /**
+     * Writes the state of the randomizer that isn't part of the random
+     * number generator.
+     * @param buffer the buffer the state is written to.
+     */
+    protected abstract void saveAdditionalState(ByteBuffer buffer);
+    /**
+     * Reads the state written by {@link #saveAdditionalState(ByteBuffer)}.
+     * @param buffer the buffer the state is read from.
+     */
+    protected abstract void restoreAdditionalState(ByteBuffer buffer);
+    /**
+     * Checks the state written by {@link #saveAdditionalState(ByteBuffer)}
+     * without changing the randomizer or the position of the buffer.
+     * @param buffer the buffer the state is stored in.
+     * @param index the position of the state in the buffer.
+     * @throws IllegalArgumentException if the state is invalid.
+     */
+    protected abstract void checkAdditionalState(ByteBuffer buffer, int index);
+    /**
+     * @param ordinal the stored ordinal of a type.
+     * @throws IllegalArgumentException if there is no such type.
+     */
+    protected static void checkType(int ordinal){
+        if(ordinal < 0 || ordinal >= TYPES.length)
+            throw new IllegalArgumentException("Unknown type "+ordinal+".");
+    }
+    /**
+     * @return a new type that is appended to the ring.
+     */
+    protected abstract Type generate();
+    /**
+     * Computes the next number with the SplitMix64 generator.
+     * @return a random number.
+     */
+    protected long nextLong(){
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    /**
+     * @param bound the exclusive upper bound.
+     * @return a random number between 0 and the bound.
+     */
+    protected int nextInt(int bound){
+        return (int)(((nextLong() >>> 32) * bound) >>> 32);
+    }
+    /**
+     * @param position the position of a type.
+     * @return the slot of the ring the type is stored in.
+     */
+    private int slot(long position){
+        return (int)(position % queue.length());
+    }
+    /**
+     * This enum contains all kinds of randomizers.
+     */
+    public enum Kind{
+        UNIFORM(UniformRandomizer::new),
+        BAG(BagRandomizer::new);
+        
+        /**
+         * @param seed the seed of the random number generator.
+         * @param preview the number of types that are known in advance.
+         * @return a new randomizer of this kind.
+         */
+        public Randomizer create(long seed, int preview){
+            return generator.apply(seed, preview);
+        }
+        /**
+         * The constructor of the randomizers of this kind.
+         */
+        private final BiFunction<Long, Integer, Randomizer> generator;
+        /**
+         * @param generator the constructor of the randomizers.
+         */
+        Kind(BiFunction<Long, Integer, Randomizer> generator){
+            this.generator = generator;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class draws the field of a game actively on its own thread.<br>
+ * At a fixed frame rate, the renderer takes the latest snapshot of the
+ * game and draws it into a back buffer, which is then shown on the screen.
+ * The game never waits for the renderer and frames are only drawn if
+ * either the game or the size of the canvas has changed.
+ * @author Zavarov
+ */
+public class Renderer extends Canvas{
+    /**
+     * The version of the serialized form.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The game that is drawn.
+     */
+    protected final Game game;
+    /**
+     * The time between two frames in nanoseconds.
+     */
+    protected final long frame;
+    /**
+     * The thread drawing the frames.
+     */
+    private Thread thread;
+    /**
+     * Set while the thread should keep drawing frames.
+     */
+    private volatile boolean running;
+    /**
+     * The images of all blocks for the current size of the canvas.
+     */
+    private Sprites sprites;
+    /**
+     * Creates a renderer. The thread is started once the canvas is shown.
+     * @param game the game that is drawn.
+     * @param fps the number of frames per second.
+     */
+    public Renderer(Game game, int fps){
+        this.game = game;
+        this.frame = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+
+        setIgnoreRepaint(true);
+    }
+    /**
+     * Starts drawing once the canvas has become displayable.
+     */
+    @Override
+    public void addNotify(){
+        super.addNotify();
+        start();
+    }
+    /**
+     * Stops drawing before the canvas stops being displayable.
+     */
+    @Override
+    public void removeNotify(){
+        stop();
+        super.removeNotify();
+    }
+    /**
+     * Starts the thread drawing the frames.
+     */
+    public synchronized void start(){
+        if(running)
+            return;
+
+        running = true;
+        thread = new Thread(this::loop, "renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    /**
+     * Stops the thread drawing the frames and waits for it to finish.
+     */
+    public synchronized void stop(){
+        if(!running)
+            return;
+
+        running = false;
+        LockSupport.unpark(thread);
+        try{
+            thread.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+    /**
+     * Draws a frame whenever it is due, until the renderer is stopped.
+     */
+    private void loop(){
+        createBufferStrategy(2);
+        BufferStrategy strategy = getBufferStrategy();
+
+        long version = -1;
+        int width = -1;
+        int height = -1;
+        long deadline = System.nanoTime();
+        while(running){
+            Snapshot snapshot = game.getSnapshot();
+            if(snapshot.getVersion() != version || getWidth() != width || getHeight() != height || strategy.contentsLost()){
+                version = snapshot.getVersion();
+                width = getWidth();
+                height = getHeight();
+                render(strategy, snapshot);
+            }
+
+            deadline += frame;
+            long now = System.nanoTime();
+            //Don't try to catch up on frames that have been missed
+            if(deadline < now)
+                deadline = now;
+            for(long delay = deadline - now ; delay > 0 && running ; delay = deadline - System.nanoTime())
+                LockSupport.parkNanos(this, delay);
+        }
+
+        strategy.dispose();
+    }
+    /**
+     * Draws the snapshot into the back buffer and shows it.
+     * @param strategy the buffers of the canvas.
+     * @param snapshot the snapshot of the game.
+     */
+    private void render(BufferStrategy strategy, Snapshot snapshot){
+        do{
+            do{
+                Graphics g = strategy.getDrawGraphics();
+                draw(g, snapshot);
+                g.dispose();
+            }while(strategy.contentsRestored());
+            strategy.show();
+        }while(strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+    /**
+     * Draws every block of the snapshot, scaled to the size of the canvas.
+     * @param g the graphics of the back buffer.
+     * @param snapshot the snapshot of the game.
+     */
+    private void draw(Graphics g, Snapshot snapshot){
+        int columns = snapshot.getColumns();
+        int rows = snapshot.getRows();
+        int blockWidth = Math.max(1, getWidth() / columns);
+        int blockHeight = Math.max(1, getHeight() / rows);
+
+        if(sprites == null || sprites.getWidth() != blockWidth || sprites.getHeight() != blockHeight)
+            sprites = new Sprites(blockWidth, blockHeight, BufferedImage.TYPE_INT_RGB);
+
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        for(int y = 0 ; y < rows ; ++y)
+            for(int x = 0 ; x < columns ; ++x)
+                g.drawImage(sprites.get(snapshot.getType(x, y), x, y), x * blockWidth, (rows - y - 1) * blockHeight, null);
+    }
+}
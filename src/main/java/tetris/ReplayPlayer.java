@@ -0,0 +1,624 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * This class reads a replay written by a {@link ReplayRecorder} and
+ * executes its commands on a simulation of the game.<br>
+ * The simulation doesn't wait between the commands, so a replay is
+ * simulated as fast as possible. The stream is read in small chunks, so
+ * the memory doesn't depend on the length of the replay.<br>
+ * If the replay is read from a channel, the player can also jump to any
+ * tick. It then restores the closest keyframe before that tick and only
+ * simulates the commands between the keyframe and the tick, so the time it
+ * takes doesn't depend on the length of the replay.<br>
+ * Going back to an earlier placement is simulated with the placements the
+ * player has stored itself. After jumping to a keyframe, only the
+ * placements after it are stored, so if more are needed, the player
+ * simulates the commands again from an earlier keyframe.
+ * @author Zavarov
+ */
+public class ReplayPlayer implements Closeable{
+    /**
+     * The default size of the buffer in bytes.
+     */
+    protected static int CAPACITY = 8192;
+    /**
+     * The maximum number of bytes the placements a replay stores may take.
+     */
+    protected static final long MAX_HISTORY = 1L << 24;
+    /**
+     * The minimum number of columns of a replay.
+     */
+    protected static final int MIN_COLUMNS = 4;
+    /**
+     * The maximum number of columns of a replay, so that every row fits
+     * into a single mask.
+     */
+    protected static final int MAX_COLUMNS = Long.SIZE;
+    /**
+     * The minimum number of rows of a replay.
+     */
+    protected static final int MIN_ROWS = 4;
+    /**
+     * The maximum number of rows of a replay.
+     */
+    protected static final int MAX_ROWS = 1024;
+    /**
+     * The maximum number of types a randomizer of a replay knows in advance.
+     */
+    protected static final int MAX_PREVIEW = 64;
+    /**
+     * The maximum number of types that may have been taken from the
+     * randomizer before the replay was started.
+     */
+    protected static final long MAX_SKIPPED = 1L << 24;
+    /**
+     * The stream the replay is read from.
+     */
+    protected final InputStream in;
+    /**
+     * The channel the replay is read from or null, if the replay can only
+     * be read once from start to end.
+     */
+    protected final SeekableByteChannel channel;
+    /**
+     * The bytes that have been read from the stream.
+     */
+    protected final byte[] buffer;
+    /**
+     * The position of the next byte in the buffer.
+     */
+    protected int position;
+    /**
+     * The number of bytes in the buffer.
+     */
+    protected int limit;
+    /**
+     * The position of the first byte of the buffer in the stream.
+     */
+    protected long offset;
+    /**
+     * The game the commands are executed on.
+     */
+    protected final Simulation simulation;
+    /**
+     * The position of the first command in the stream.
+     */
+    protected final long start;
+    /**
+     * The state of the randomizer before the first command.
+     */
+    private final byte[] initial;
+    /**
+     * The bytes of the state of a single keyframe.
+     */
+    private final byte[] keyframe;
+    /**
+     * The number of recorded ticks at every keyframe or null, if the index
+     * hasn't been read yet.
+     */
+    private long[] keyframeTicks;
+    /**
+     * The position of every keyframe in the stream.
+     */
+    private long[] keyframeOffsets;
+    /**
+     * The index of the keyframe the stored placements start at or -1, if
+     * they have been stored since the start of the replay.
+     */
+    private int origin = -1;
+    /**
+     * Set if the index at the end of the replay has been reached.
+     */
+    private boolean finished;
+    /**
+     * The time since the start of the recording in milliseconds.
+     */
+    protected long time;
+    /**
+     * The number of commands that have been executed.
+     */
+    protected long commands;
+    /**
+     * The number of ticks that have been executed.
+     */
+    protected long ticks;
+    /**
+     * Reads the header of the replay and creates the simulation.
+     * @param in the stream the replay is read from.
+     * @throws IOException if the stream doesn't contain a replay.
+     */
+    public ReplayPlayer(InputStream in) throws IOException{
+        this(in, null);
+    }
+    /**
+     * Reads the header of the replay and creates the simulation. In
+     * contrast to a stream, the player may jump to any tick of the replay.
+     * @param channel the channel the replay is read from.
+     * @throws IOException if the channel doesn't contain a replay.
+     */
+    public ReplayPlayer(SeekableByteChannel channel) throws IOException{
+        this(Channels.newInputStream(channel), channel);
+    }
+    /**
+     * @param in the stream the replay is read from.
+     * @param channel the channel underlying the stream or null.
+     * @throws IOException if the stream doesn't contain a replay.
+     */
+    private ReplayPlayer(InputStream in, SeekableByteChannel channel) throws IOException{
+        this.in = in;
+        this.channel = channel;
+        this.buffer = new byte[CAPACITY];
+
+        if(readInt() != ReplayRecorder.MAGIC)
+            throw new IOException("The stream doesn't contain a replay.");
+        long version = readVarint();
+        if(version != ReplayRecorder.VERSION)
+            throw new IOException("Version "+version+" isn't supported.");
+
+        long columns = readVarint();
+        long rows = readVarint();
+        long kind = readVarint();
+        long preview = readVarint();
+        long seed = readLong();
+        long skipped = readVarint();
+        if(kind < 0 || kind >= Randomizer.Kind.values().length)
+            throw new IOException("Unknown randomizer "+kind+".");
+        //The header isn't trusted, so it must not create huge games
+        if(columns < MIN_COLUMNS || columns > MAX_COLUMNS || rows < MIN_ROWS || rows > MAX_ROWS)
+            throw new IOException("A field with "+columns+"x"+rows+" cells isn't supported.");
+        if(preview < 1 || preview > MAX_PREVIEW || skipped < 0 || skipped > MAX_SKIPPED)
+            throw new IOException("The randomizer is invalid.");
+
+        Randomizer randomizer = Randomizer.Kind.values()[(int)kind].create(seed, (int)preview);
+        randomizer.seek(skipped);
+        this.simulation = new Simulation((int)columns, (int)rows, randomizer);
+        this.start = offset + position;
+        this.initial = new byte[randomizer.getStateSize()];
+        this.keyframe = new byte[StateCodec.getSize(simulation)];
+        randomizer.save(ByteBuffer.wrap(initial));
+    }
+    /**
+     * Executes the next command of the replay. Keyframes are skipped.
+     * @return false if the end of the replay has been reached.
+     * @throws IOException if the replay couldn't be read.
+     */
+    public boolean step() throws IOException{
+        while(!finished){
+            if(position == limit && !fill())
+                return false;
+
+            long at = offset + position;
+            long entry = readVarint();
+            int command = (int)(entry & ((1 << ReplayRecorder.COMMAND_BITS) - 1));
+            if(command == ReplayRecorder.EXTENSION){
+                if(!extension(at))
+                    return false;
+                continue;
+            }
+
+            time += entry >>> ReplayRecorder.COMMAND_BITS;
+            execute(command);
+            ++commands;
+            if(command == Game.TICK)
+                ++ticks;
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Handles an entry that isn't a command.
+     * @param at the position of the entry in the stream.
+     * @return false if the entry is the index at the end of the replay.
+     * @throws IOException if the entry is unknown or couldn't be read.
+     */
+    protected boolean extension(long at) throws IOException{
+        long kind = readVarint();
+        if(kind == ReplayRecorder.KEYFRAME)
+            skipKeyframe();
+        else if(kind == ReplayRecorder.HISTORY)
+            setHistory(readVarint());
+        else if(kind == ReplayRecorder.TRAVEL)
+            travel(decode(readVarint()), at);
+        else if(kind == ReplayRecorder.INDEX)
+            finished = true;
+        else
+            throw new IOException("Unknown entry "+kind+".");
+        return !finished;
+    }
+    /**
+     * Executes all remaining commands of the replay.
+     * @return the number of executed commands.
+     * @throws IOException if the replay couldn't be read.
+     */
+    public long run() throws IOException{
+        long start = commands;
+        while(step());
+        return commands - start;
+    }
+    /**
+     * Moves to the first command after which the given number of ticks have
+     * been executed.<br>
+     * If the tick is ahead and no keyframe is closer than the current
+     * position, the commands are simply executed from here. Otherwise, the
+     * closest keyframe before the tick is restored first.
+     * @param tick the number of ticks since the start of the replay.
+     * @return false if the replay ends before the tick.
+     * @throws IOException if the replay couldn't be read.
+     * @throws IllegalStateException if the replay isn't read from a channel.
+     */
+    public boolean seek(long tick) throws IOException{
+        if(channel == null)
+            throw new IllegalStateException("The replay can only be read from start to end.");
+        if(keyframeTicks == null)
+            readIndex();
+
+        //The last keyframe before the tick
+        int low = 0;
+        int high = keyframeTicks.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(keyframeTicks[middle] < tick)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        int index = low - 1;
+
+        if(index >= 0 && (ticks >= tick || keyframeTicks[index] > ticks))
+            restart(index);
+        else if(index < 0 && ticks >= tick)
+            restart(-1);
+
+        while(ticks < tick)
+            if(!step())
+                return false;
+        return true;
+    }
+    /**
+     * Continues at a keyframe or at the first command.
+     * @param index the index of the keyframe or -1, for the first command.
+     * @throws IOException if the keyframe couldn't be read.
+     */
+    protected void restart(int index) throws IOException{
+        if(index >= 0){
+            moveTo(keyframeOffsets[index]);
+            readVarint();
+            readVarint();
+            restoreKeyframe();
+        }else{
+            moveTo(start);
+            restoreInitial();
+        }
+        origin = index;
+        finished = false;
+    }
+    /**
+     * Changes the number of placements that are stored.
+     * @param capacity the maximum number of stored placements.
+     * @throws IOException if the placements would take more than
+     * {@link #MAX_HISTORY} bytes.
+     */
+    protected void setHistory(long capacity) throws IOException{
+        if(capacity > getMaxHistory())
+            throw new IOException("At most "+getMaxHistory()+" placements may be stored.");
+
+        History history = simulation.getHistory();
+        if(history != null && history.getCapacity() == capacity)
+            history.clear();
+        else
+            simulation.setHistory((int)capacity);
+    }
+    /**
+     * Goes back or forth between the stored placements. If they don't
+     * reach far enough because the player has jumped to a keyframe, the
+     * commands are simulated again from an earlier keyframe.
+     * @param placements the number of placements, where negative numbers
+     * go back.
+     * @param at the position of the entry in the stream.
+     * @throws IOException if the placement isn't stored, even after
+     * simulating all commands since the start of the replay.
+     */
+    protected void travel(long placements, long at) throws IOException{
+        if(Math.abs(placements) > getMaxHistory())
+            throw new IOException("The replay goes to a placement that isn't stored.");
+
+        while(placements < 0 ? !simulation.rewind((int)-placements) : !simulation.forward((int)placements)){
+            if(origin < 0)
+                throw new IOException("The replay goes to a placement that isn't stored.");
+
+            //Simulates everything up to this entry again
+            long target = commands;
+            long end = offset + position;
+            restart(origin - 1);
+            while(commands < target)
+                if(!step())
+                    throw new EOFException();
+            while(offset + position < at){
+                long entry = offset + position;
+                if((readVarint() & ((1 << ReplayRecorder.COMMAND_BITS) - 1)) != ReplayRecorder.EXTENSION || !extension(entry))
+                    throw new IOException("The replay is inconsistent.");
+            }
+            moveTo(end);
+        }
+    }
+    /**
+     * @return the maximum number of placements the replay may store, so
+     * that their states don't take more than {@link #MAX_HISTORY} bytes.
+     */
+    protected long getMaxHistory(){
+        return MAX_HISTORY / keyframe.length;
+    }
+    /**
+     * @param command the command that is executed on the simulation.
+     * @throws IOException if the command is unknown.
+     */
+    protected void execute(int command) throws IOException{
+        switch(command){
+            case Game.MOVE_LEFT:
+                simulation.moveLeft();
+                break;
+            case Game.MOVE_RIGHT:
+                simulation.moveRight();
+                break;
+            case Game.ROTATE_LEFT:
+                simulation.rotateLeft();
+                break;
+            case Game.ROTATE_RIGHT:
+                simulation.rotateRight();
+                break;
+            case Game.FALL_DOWN:
+                simulation.fallDown();
+                break;
+            case Game.TICK:
+                simulation.step();
+                break;
+            case ReplayRecorder.START:
+                simulation.start();
+                break;
+            default:
+                throw new IOException("Unknown command "+command+".");
+        }
+    }
+    /**
+     * Restores the state of the game that has been written by
+     * {@link ReplayRecorder#writeKeyframe()}.
+     * @throws IOException if the keyframe couldn't be read.
+     */
+    protected void restoreKeyframe() throws IOException{
+        ticks = readVarint();
+        commands = readVarint();
+        time = readVarint();
+        //The placements before the keyframe are missing
+        setHistory(readVarint());
+        for(int i = 0 ; i < keyframe.length ; ++i)
+            keyframe[i] = (byte)readByte();
+        try{
+            StateCodec.read(ByteBuffer.wrap(keyframe), simulation);
+        }catch(IllegalArgumentException e){
+            throw new IOException("The state is invalid.", e);
+        }
+    }
+    /**
+     * Skips a keyframe without changing the game.
+     * @throws IOException if the keyframe couldn't be read.
+     */
+    protected void skipKeyframe() throws IOException{
+        for(int i = 0 ; i < 4 ; ++i)
+            readVarint();
+        skip(keyframe.length);
+    }
+    /**
+     * Goes back to the state of the game before the first command.
+     */
+    protected void restoreInitial(){
+        ticks = commands = time = 0L;
+        simulation.clear();
+        simulation.ticks = 0L;
+        simulation.lines = 0L;
+        simulation.currentBlock = null;
+        simulation.setHistory(0);
+        simulation.getRandomizer().restore(ByteBuffer.wrap(initial));
+    }
+    /**
+     * Reads the position of every keyframe from the index at the end of
+     * the replay. If the replay doesn't have an index, for example because
+     * the recorder hasn't been closed, or if the index is malformed,
+     * seeking always starts at the first command.
+     * @throws IOException if the replay couldn't be read.
+     */
+    protected void readIndex() throws IOException{
+        keyframeTicks = new long[0];
+        keyframeOffsets = new long[0];
+
+        long size = channel.size();
+        if(size < start + Long.BYTES)
+            return;
+
+        long current = offset + position;
+        try{
+            moveTo(size - Long.BYTES);
+            long index = readLong();
+            if(index >= start && index < size - Long.BYTES){
+                moveTo(index);
+                if(readVarint() == ReplayRecorder.EXTENSION && readVarint() == ReplayRecorder.INDEX)
+                    readKeyframes(index, size - Long.BYTES);
+            }
+        }catch(IOException e){
+            //The index is only used to seek faster
+            keyframeTicks = new long[0];
+            keyframeOffsets = new long[0];
+        }finally{
+            moveTo(current);
+        }
+    }
+    /**
+     * Reads the entries of the index. They are only used, if every
+     * keyframe lies between the header and the index in ascending order.
+     * @param index the position of the index.
+     * @param end the position behind the last entry of the index.
+     * @throws IOException if the index couldn't be read.
+     */
+    protected void readKeyframes(long index, long end) throws IOException{
+        //Every keyframe takes at least two bytes
+        long keyframes = readVarint();
+        if(keyframes < 0 || keyframes > (end - (offset + position)) / 2)
+            return;
+
+        long[] ticks = new long[(int)keyframes];
+        long[] offsets = new long[(int)keyframes];
+        for(int i = 0 ; i < keyframes ; ++i){
+            long tick = readVarint();
+            long distance = readVarint();
+            ticks[i] = (i == 0 ? 0L : ticks[i - 1]) + tick;
+            offsets[i] = (i == 0 ? 0L : offsets[i - 1]) + distance;
+            if(tick < 0 || ticks[i] < 0 || distance < 0 || offsets[i] < start || offsets[i] >= index)
+                return;
+        }
+        keyframeTicks = ticks;
+        keyframeOffsets = offsets;
+    }
+    /**
+     * @return the game the commands are executed on.
+     */
+    public Simulation getSimulation(){
+        return simulation;
+    }
+    /**
+     * @return the time of the last executed command in milliseconds since
+     * the start of the recording.
+     */
+    public long getTime(){
+        return time;
+    }
+    /**
+     * @return the number of commands that have been executed.
+     */
+    public long getCommands(){
+        return commands;
+    }
+    /**
+     * @return the number of ticks that have been executed since the start
+     * of the replay.
+     */
+    public long getTicks(){
+        return ticks;
+    }
+    /**
+     * Closes the underlying stream.
+     * @throws IOException if the stream couldn't be closed.
+     */
+    @Override
+    public void close() throws IOException{
+        in.close();
+    }
+    /**
+     * Continues reading at the given position of the channel.
+     * @param target the position in the channel.
+     * @throws IOException if the position couldn't be changed.
+     */
+    protected void moveTo(long target) throws IOException{
+        if(target >= offset && target <= offset + limit){
+            position = (int)(target - offset);
+            return;
+        }
+        channel.position(target);
+        offset = target;
+        position = limit = 0;
+    }
+    /**
+     * Reads the next chunk of the stream into the buffer.
+     * @return false if the end of the stream has been reached.
+     * @throws IOException if the stream couldn't be read.
+     */
+    protected boolean fill() throws IOException{
+        int read = in.read(buffer, 0, buffer.length);
+        offset += limit;
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+    /**
+     * @param bytes the number of bytes that are skipped.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    protected void skip(int bytes) throws IOException{
+        while(bytes > 0){
+            if(position == limit && !fill())
+                throw new EOFException();
+            int skipped = Math.min(bytes, limit - position);
+            position += skipped;
+            bytes -= skipped;
+        }
+    }
+    /**
+     * @return the next byte of the stream.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    protected int readByte() throws IOException{
+        if(position == limit && !fill())
+            throw new EOFException();
+        return buffer[position++] & 0xFF;
+    }
+    /**
+     * @return the next number written by
+     * {@link ReplayRecorder#writeVarint(long)}.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    protected long readVarint() throws IOException{
+        long value = 0L;
+        for(int shift = 0 ; shift < Long.SIZE ; shift += 7){
+            int b = readByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("The number is too long.");
+    }
+    /**
+     * @param value a number written by {@link ReplayRecorder#encode(long)}.
+     * @return the original number.
+     */
+    protected static long decode(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+    /**
+     * @return the next number written by
+     * {@link ReplayRecorder#writeLong(long)}.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    protected long readLong() throws IOException{
+        return (long)readInt() << 32 | readInt() & 0xFFFFFFFFL;
+    }
+    /**
+     * @return the next number written by
+     * {@link ReplayRecorder#writeInt(int)}.
+     * @throws IOException if the end of the stream has been reached.
+     */
+    protected int readInt() throws IOException{
+        return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class writes every command that is executed by a game into a
+ * compact binary stream, so that the game can be simulated again later.
+ * <br>
+ * The stream starts with a header containing the size of the field and
+ * the kind, seed and position of the randomizer. Every command is then
+ * stored as a single variable-length number, where the lowest three bits
+ * contain the command and the remaining bits the milliseconds since the
+ * previous command. Most commands therefore only need one or two bytes.
+ * <br>
+ * After a fixed number of commands, a keyframe with the complete state of
+ * the game is inserted between the commands. Once the recorder is closed,
+ * the position of every keyframe is written to an index at the end of the
+ * stream, followed by the position of the index itself. This way, a
+ * player can jump to any tick by restoring the closest keyframe before it
+ * and only simulating the commands after that keyframe.<br>
+ * Going back or forth between placements is written as the number of
+ * placements, together with the number of placements the game stores.
+ * A player keeps the same states while simulating the commands, so the
+ * new state is derived from the commands instead of being trusted.
+ * <br>
+ * The commands are collected in a buffer and only written to the stream
+ * once the buffer is full or the recorder is closed, so that recording
+ * doesn't slow down the game. In particular, the end of a game doesn't
+ * block the thread that executes it. A full buffer is written by the
+ * thread that records the next command, which therefore waits for the
+ * stream, unless an executor has been set with
+ * {@link #setExecutor(Executor)}. In this case, full buffers are handed to
+ * the executor, which writes them in order, while the recorder continues
+ * with another buffer.
+ * @author Zavarov
+ */
+public class ReplayRecorder implements Closeable{
+    /**
+     * The first four bytes of every replay.
+     */
+    static final int MAGIC = 0x54525059;
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 1;
+    /**
+     * The command for starting a new game.
+     */
+    static final int START = 6;
+    /**
+     * The command for an entry that isn't executed, such as a keyframe or
+     * the index. It is followed by the kind of the entry.
+     */
+    static final int EXTENSION = 7;
+    /**
+     * The kind of a keyframe entry.
+     */
+    static final int KEYFRAME = 0;
+    /**
+     * The kind of the index entry.
+     */
+    static final int INDEX = 1;
+    /**
+     * The kind of an entry containing the number of placements the game
+     * stores from now on.
+     */
+    static final int HISTORY = 2;
+    /**
+     * The kind of an entry that goes back or forth between the stored
+     * placements.
+     */
+    static final int TRAVEL = 3;
+    /**
+     * The number of bits used for the command of every entry.
+     */
+    static final int COMMAND_BITS = 3;
+    /**
+     * The default size of the buffer in bytes.
+     */
+    protected static int CAPACITY = 8192;
+    /**
+     * The default number of commands between two keyframes.
+     */
+    protected static int INTERVAL = 1024;
+    /**
+     * The stream the replay is written to.
+     */
+    protected final OutputStream out;
+    /**
+     * The commands that haven't been written to the stream yet.
+     */
+    protected byte[] buffer;
+    /**
+     * The number of bytes in the buffer.
+     */
+    protected int size;
+    /**
+     * The number of bytes that have already been written to the stream.
+     */
+    protected long written;
+    /**
+     * The number of commands between two keyframes.
+     */
+    protected final int interval;
+    /**
+     * The game that is recorded or null, if no game has been started yet.
+     */
+    protected Simulation simulation;
+    /**
+     * The number of recorded commands.
+     */
+    private long commands;
+    /**
+     * The number of recorded ticks.
+     */
+    private long ticks;
+    /**
+     * The number of commands since the last keyframe.
+     */
+    private int pending;
+    /**
+     * The number of recorded ticks at every keyframe.
+     */
+    private long[] keyframeTicks = new long[16];
+    /**
+     * The position of every keyframe in the stream.
+     */
+    private long[] keyframeOffsets = new long[16];
+    /**
+     * The number of keyframes.
+     */
+    private int keyframes;
+    /**
+     * The time the header was written in milliseconds.
+     */
+    private long origin;
+    /**
+     * The time of the previous command in milliseconds.
+     */
+    private long time;
+    /**
+     * The executor writing full buffers or null, if they are written by
+     * the thread that records the commands.
+     */
+    private volatile Executor executor;
+    /**
+     * The full buffers that haven't been written yet, in order.
+     */
+    private final Queue<ByteBuffer> full = new ConcurrentLinkedQueue<>();
+    /**
+     * The buffers that have been written and may be used again.
+     */
+    private final Queue<byte[]> spare = new ConcurrentLinkedQueue<>();
+    /**
+     * The first failure of the executor or null.
+     */
+    private volatile IOException failure;
+    /**
+     * @param out the stream the replay is written to.
+     */
+    public ReplayRecorder(OutputStream out){
+        this(out, INTERVAL);
+    }
+    /**
+     * @param out the stream the replay is written to.
+     * @param interval the number of commands between two keyframes.
+     */
+    public ReplayRecorder(OutputStream out, int interval){
+        this.out = out;
+        this.buffer = new byte[CAPACITY];
+        this.interval = Math.max(1, interval);
+    }
+    /**
+     * Records the start of a new game. The header is written before the
+     * first game, so the randomizer must not have been used for the new
+     * game yet.
+     * @param simulation the game that is started.
+     */
+    public void start(Simulation simulation){
+        if(this.simulation == null){
+            Randomizer randomizer = simulation.getRandomizer();
+            writeInt(MAGIC);
+            writeVarint(VERSION);
+            writeVarint(simulation.columns);
+            writeVarint(simulation.rows);
+            writeVarint(randomizer.getKind().ordinal());
+            writeVarint(randomizer.getPreview());
+            writeLong(randomizer.getSeed());
+            writeVarint(randomizer.getPosition());
+            origin = time = now();
+            this.simulation = simulation;
+            if(simulation.getHistory() != null)
+                history(simulation.getHistory().getCapacity());
+        }
+        record(START);
+    }
+    /**
+     * Records a command that has been executed by the game.
+     * @param command the command.
+     */
+    public void record(int command){
+        //The keyframe contains the state before this command is executed
+        if(simulation != null && pending >= interval)
+            writeKeyframe();
+
+        long now = now();
+        writeVarint((now - time) << COMMAND_BITS | command);
+        time = now;
+
+        ++commands;
+        ++pending;
+        if(command == Game.TICK)
+            ++ticks;
+    }
+    /**
+     * Writes the complete state of the game and remembers the position of
+     * the keyframe for the index.<br>
+     * The keyframe contains the number of recorded ticks and commands, the
+     * time of the last command and the number of placements the game
+     * stores, followed by the state of the game as written by
+     * {@link StateCodec}.
+     */
+    protected void writeKeyframe(){
+        if(keyframes == keyframeTicks.length){
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = ticks;
+        keyframeOffsets[keyframes] = written + size;
+        ++keyframes;
+        pending = 0;
+
+        writeVarint(EXTENSION);
+        writeVarint(KEYFRAME);
+        writeVarint(ticks);
+        writeVarint(commands);
+        writeVarint(time - origin);
+        writeVarint(simulation.getHistory() == null ? 0 : simulation.getHistory().getCapacity());
+        writeState();
+    }
+    /**
+     * Records that the game stores a different number of placements from
+     * now on.
+     * @param capacity the maximum number of stored placements or 0, if no
+     * states are stored.
+     */
+    public void history(int capacity){
+        if(simulation == null)
+            return;
+
+        writeVarint(EXTENSION);
+        writeVarint(HISTORY);
+        writeVarint(Math.max(0, capacity));
+    }
+    /**
+     * Records that the game has gone back or forth between the stored
+     * placements. Only the number of placements is written, so a player
+     * has to reach the same state with its own stored placements.
+     * @param placements the number of placements, where negative numbers
+     * go back.
+     */
+    public void travel(int placements){
+        if(simulation == null)
+            return;
+
+        writeVarint(EXTENSION);
+        writeVarint(TRAVEL);
+        writeVarint(encode(placements));
+    }
+    /**
+     * Writes the state of the game with the {@link StateCodec}.
+     */
+    protected void writeState(){
+        int length = StateCodec.getSize(simulation);
+        if(size + length > buffer.length)
+            spill();
+        if(length > buffer.length)
+            buffer = new byte[length];
+        StateCodec.write(simulation, ByteBuffer.wrap(buffer, size, length));
+        size += length;
+    }
+    /**
+     * Writes the ticks and position of every keyframe, followed by the
+     * position of the index itself.
+     */
+    protected void writeIndex(){
+        long offset = written + size;
+        writeVarint(EXTENSION);
+        writeVarint(INDEX);
+        writeVarint(keyframes);
+        long previousTicks = 0L;
+        long previousOffset = 0L;
+        for(int i = 0 ; i < keyframes ; ++i){
+            writeVarint(keyframeTicks[i] - previousTicks);
+            writeVarint(keyframeOffsets[i] - previousOffset);
+            previousTicks = keyframeTicks[i];
+            previousOffset = keyframeOffsets[i];
+        }
+        writeLong(offset);
+    }
+    /**
+     * Writes full buffers on the executor instead of the thread that
+     * records the commands, so that the game doesn't wait for the stream.
+     * Failures of the executor are thrown by the next call of
+     * {@link #flush()} or {@link #close()}.
+     * @param executor the executor or null, if full buffers are written by
+     * the thread that records the commands.
+     */
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+    /**
+     * Writes all buffered commands to the stream and waits until the
+     * executor, if there is one, has written its buffers as well.
+     * @throws UncheckedIOException if the stream couldn't be written.
+     */
+    public void flush(){
+        handOver();
+        write();
+        if(failure != null)
+            throw new UncheckedIOException(failure);
+    }
+    /**
+     * Makes room in the buffer, once it is full. If an executor has been
+     * set, the buffer is written by the executor, otherwise right away.
+     */
+    protected void spill(){
+        Executor executor = this.executor;
+        if(executor == null){
+            flush();
+            return;
+        }
+        handOver();
+        try{
+            executor.execute(this::write);
+        }catch(RuntimeException e){
+            write();
+        }
+    }
+    /**
+     * Queues the buffered commands for writing and continues with a spare
+     * buffer.
+     */
+    private void handOver(){
+        if(size == 0)
+            return;
+
+        full.add(ByteBuffer.wrap(buffer, 0, size));
+        written += size;
+        byte[] next = spare.poll();
+        buffer = next == null ? new byte[buffer.length] : next;
+        size = 0;
+    }
+    /**
+     * Writes all queued buffers to the stream. The buffers are taken while
+     * owning the stream, so they are written in order. Once writing has
+     * failed, the remaining buffers are dropped, since the stream would
+     * have a gap anyway.
+     */
+    private void write(){
+        synchronized(out){
+            if(failure != null){
+                full.clear();
+                return;
+            }
+            try{
+                for(ByteBuffer next = full.poll() ; next != null ; next = full.poll()){
+                    out.write(next.array(), 0, next.limit());
+                    spare.add(next.array());
+                }
+                out.flush();
+            }catch(IOException e){
+                if(failure == null)
+                    failure = e;
+            }
+        }
+    }
+    /**
+     * Writes all buffered commands and the index and closes the stream.
+     */
+    @Override
+    public void close(){
+        if(simulation != null)
+            writeIndex();
+        flush();
+        try{
+            out.close();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+    /**
+     * @return the current time in milliseconds.
+     */
+    protected long now(){
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+    /**
+     * Writes a non-negative number, seven bits at a time, starting with the
+     * lowest bits. The highest bit of every byte is set, if more bytes
+     * follow.
+     * @param value the number.
+     */
+    protected void writeVarint(long value){
+        if(size + 10 > buffer.length)
+            spill();
+        while((value & ~0x7FL) != 0L){
+            buffer[size++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte)value;
+    }
+    /**
+     * Maps numbers of a small magnitude to small non-negative numbers, so
+     * that negative numbers can be written as variable-length numbers.
+     * @param value the number.
+     * @return the zigzag encoding of the number.
+     */
+    protected static long encode(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+    /**
+     * Writes all eight bytes of the number, starting with the highest byte.
+     * @param value the number.
+     */
+    protected void writeLong(long value){
+        writeInt((int)(value >>> 32));
+        writeInt((int)value);
+    }
+    /**
+     * Writes all four bytes of the number, starting with the highest byte.
+     * @param value the number.
+     */
+    protected void writeInt(int value){
+        if(size + 4 > buffer.length)
+            spill();
+        buffer[size++] = (byte)(value >>> 24);
+        buffer[size++] = (byte)(value >>> 16);
+        buffer[size++] = (byte)(value >>> 8);
+        buffer[size++] = (byte)value;
+    }
+}
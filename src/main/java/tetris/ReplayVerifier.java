@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class simulates many replays in parallel and compares the number
+ * of removed rows with the number that has been claimed for each replay.
+ * <br>
+ * The files of a directory are handed to the executor one after another,
+ * while at most a fixed number of replays are simulated or waiting at the
+ * same time. This way, the memory only depends on the number of threads
+ * and not on the number of replays. Every replay is simulated by a single
+ * thread without any shared state, so the throughput grows with the
+ * number of threads.
+ * @author Zavarov
+ */
+public class ReplayVerifier{
+    /**
+     * The executor simulating the replays.
+     */
+    protected final Executor executor;
+    /**
+     * The maximum number of replays that are simulated or waiting at the
+     * same time.
+     */
+    protected final int capacity;
+    /**
+     * Creates a verifier that uses the common fork join pool.
+     */
+    public ReplayVerifier(){
+        this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() * 2);
+    }
+    /**
+     * @param executor the executor simulating the replays.
+     * @param capacity the maximum number of replays that are simulated or
+     * waiting at the same time.
+     */
+    public ReplayVerifier(Executor executor, int capacity){
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+    }
+    /**
+     * Simulates all files in the directory. The verdict of every replay is
+     * passed on as soon as it is available, so the consumer may be called
+     * by several threads at the same time. Exceptions thrown by either
+     * callback don't stop the verification, but are collected in the
+     * summary apart from the verdicts. A replay whose claim couldn't be
+     * determined isn't simulated.
+     * @param directory the directory containing the replays.
+     * @param claims the number of removed rows that has been claimed for
+     * each replay.
+     * @param verdicts the consumer that is called with the verdict of every
+     * replay.
+     * @return the summary of all replays.
+     * @throws IOException if the directory couldn't be read.
+     * @throws InterruptedException if the thread was interrupted while
+     * waiting for the replays.
+     */
+    public Summary verify(Path directory, ToLongFunction<Path> claims, Consumer<? super Verdict> verdicts) throws IOException, InterruptedException{
+        Summary summary = new Summary();
+        Semaphore permits = new Semaphore(capacity);
+        long start = System.nanoTime();
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, Files::isRegularFile)){
+            for(Path file : files){
+                permits.acquire();
+                try{
+                    executor.execute(() -> {
+                        try{
+                            long claimed;
+                            try{
+                                claimed = claims.applyAsLong(file);
+                            }catch(RuntimeException e){
+                                summary.errors.add(e);
+                                return;
+                            }
+                            Verdict verdict = verify(file, claimed);
+                            summary.add(verdict);
+                            try{
+                                verdicts.accept(verdict);
+                            }catch(RuntimeException e){
+                                summary.errors.add(e);
+                            }
+                        }finally{
+                            permits.release();
+                        }
+                    });
+                }catch(RuntimeException e){
+                    permits.release();
+                    throw e;
+                }
+            }
+        }finally{
+            //Wait until all replays are done
+            permits.acquireUninterruptibly(capacity);
+            summary.nanos = System.nanoTime() - start;
+        }
+        return summary;
+    }
+    /**
+     * Simulates a single replay on the calling thread.
+     * @param file the replay.
+     * @param claimed the number of removed rows that has been claimed.
+     * @return the verdict of the replay.
+     */
+    public Verdict verify(Path file, long claimed){
+        try(InputStream in = Files.newInputStream(file); ReplayPlayer player = new ReplayPlayer(in)){
+            player.run();
+            return new Verdict(file, claimed, player, null);
+        }catch(IOException | RuntimeException e){
+            return new Verdict(file, claimed, null, e);
+        }
+    }
+    /**
+     * This class contains the result of a single replay.
+     */
+    public static class Verdict{
+        /**
+         * The replay.
+         */
+        protected final Path file;
+        /**
+         * The number of removed rows that has been claimed.
+         */
+        protected final long claimed;
+        /**
+         * The number of removed rows in the last game of the replay.
+         */
+        protected final long lines;
+        /**
+         * The number of ticks in the replay.
+         */
+        protected final long ticks;
+        /**
+         * The number of commands in the replay.
+         */
+        protected final long commands;
+        /**
+         * The reason why the replay couldn't be simulated or null.
+         */
+        protected final Exception error;
+        /**
+         * @param file the replay.
+         * @param claimed the number of removed rows that has been claimed.
+         * @param player the player that has simulated the whole replay or
+         * null, if the replay couldn't be simulated.
+         * @param error the reason why the replay couldn't be simulated.
+         */
+        protected Verdict(Path file, long claimed, ReplayPlayer player, Exception error){
+            this.file = file;
+            this.claimed = claimed;
+            this.lines = player == null ? 0L : player.getSimulation().getLines();
+            this.ticks = player == null ? 0L : player.getTicks();
+            this.commands = player == null ? 0L : player.getCommands();
+            this.error = error;
+        }
+        /**
+         * @return true if the replay could be simulated and the claimed
+         * number of removed rows is correct.
+         */
+        public boolean isValid(){
+            return error == null && claimed == lines;
+        }
+        /**
+         * @return the replay.
+         */
+        public Path getFile(){
+            return file;
+        }
+        /**
+         * @return the number of removed rows that has been claimed.
+         */
+        public long getClaimed(){
+            return claimed;
+        }
+        /**
+         * @return the number of removed rows in the last game of the replay.
+         */
+        public long getLines(){
+            return lines;
+        }
+        /**
+         * @return the number of ticks in the replay.
+         */
+        public long getTicks(){
+            return ticks;
+        }
+        /**
+         * @return the number of commands in the replay.
+         */
+        public long getCommands(){
+            return commands;
+        }
+        /**
+         * @return the reason why the replay couldn't be simulated or null.
+         */
+        public Exception getError(){
+            return error;
+        }
+        @Override
+        public String toString(){
+            if(error != null)
+                return file+": failed ("+error.getMessage()+")";
+            return file+": "+(isValid() ? "valid" : "invalid")+" (claimed "+claimed+", actual "+lines+")";
+        }
+    }
+    /**
+     * This class contains the combined results of all replays.
+     */
+    public static class Summary{
+        /**
+         * The number of valid replays.
+         */
+        private final LongAdder valid = new LongAdder();
+        /**
+         * The number of replays with a wrong claim.
+         */
+        private final LongAdder invalid = new LongAdder();
+        /**
+         * The number of replays that couldn't be simulated.
+         */
+        private final LongAdder failed = new LongAdder();
+        /**
+         * The number of simulated ticks.
+         */
+        private final LongAdder ticks = new LongAdder();
+        /**
+         * The number of simulated commands.
+         */
+        private final LongAdder commands = new LongAdder();
+        /**
+         * The exceptions thrown by the callbacks.
+         */
+        private final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+        /**
+         * The time it took to verify all replays in nanoseconds.
+         */
+        private volatile long nanos;
+        /**
+         * @param verdict the verdict of a single replay.
+         */
+        private void add(Verdict verdict){
+            if(verdict.getError() != null)
+                failed.increment();
+            else if(verdict.isValid())
+                valid.increment();
+            else
+                invalid.increment();
+            ticks.add(verdict.getTicks());
+            commands.add(verdict.getCommands());
+        }
+        /**
+         * @return the number of replays.
+         */
+        public long getReplays(){
+            return getValid() + getInvalid() + getFailed();
+        }
+        /**
+         * @return the number of valid replays.
+         */
+        public long getValid(){
+            return valid.sum();
+        }
+        /**
+         * @return the number of replays with a wrong claim.
+         */
+        public long getInvalid(){
+            return invalid.sum();
+        }
+        /**
+         * @return the number of replays that couldn't be simulated.
+         */
+        public long getFailed(){
+            return failed.sum();
+        }
+        /**
+         * @return the number of simulated ticks.
+         */
+        public long getTicks(){
+            return ticks.sum();
+        }
+        /**
+         * @return the number of simulated commands.
+         */
+        public long getCommands(){
+            return commands.sum();
+        }
+        /**
+         * @return the exceptions thrown by the callbacks, which are neither
+         * part of the replays nor of their verdicts.
+         */
+        public List<RuntimeException> getErrors(){
+            return new ArrayList<>(errors);
+        }
+        /**
+         * @return the time it took to verify all replays in nanoseconds.
+         */
+        public long getNanos(){
+            return nanos;
+        }
+        /**
+         * @return the number of simulated commands per second.
+         */
+        public double getCommandsPerSecond(){
+            return nanos == 0L ? 0.0 : getCommands() * 1e9 / nanos;
+        }
+        @Override
+        public String toString(){
+            return getReplays()+" replays ("+getValid()+" valid, "+getInvalid()+" invalid, "+getFailed()+" failed), "
+                    +errors.size()+" callback errors, "+String.format("%.0f", getCommandsPerSecond())+" commands/s";
+        }
+    }
+}
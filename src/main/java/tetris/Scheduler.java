@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class executes periodic tasks of many games with a fixed number of
+ * threads.<br>
+ * The tasks are kept in a hashed timer wheel, which is advanced by a
+ * single thread in steps of a fixed duration. Tasks that are due are
+ * handed over to a fixed pool of workers. A task is never executed by two
+ * workers at the same time. If it is still running when it is due again,
+ * that execution is skipped.
+ * @author Zavarov
+ */
+public class Scheduler implements Executor{
+    /**
+     * The scheduler that is shared by all games that don't specify their own.
+     */
+    private static Scheduler instance;
+    /**
+     * The duration of a single step of the wheel in nanoseconds.
+     */
+    protected final long tick;
+    /**
+     * The buckets of the wheel. A task is in the bucket of the step it is
+     * due in, modulo the number of buckets.
+     */
+    protected final List<Queue<Timeout>> wheel;
+    /**
+     * The tasks that have been scheduled since the last step of the wheel.
+     */
+    protected final Queue<Timeout> pending;
+    /**
+     * The threads that execute the tasks.
+     */
+    protected final Executor workers;
+    /**
+     * The thread that advances the wheel or null, if the wheel is advanced
+     * by hand.
+     */
+    protected final Thread ticker;
+    /**
+     * The tasks that are due in the current step.
+     */
+    private final Queue<Timeout> due = new ArrayDeque<>();
+    /**
+     * The number of tasks that haven't been cancelled yet.
+     */
+    protected final AtomicInteger size;
+    /**
+     * The number of steps the wheel has made.
+     */
+    protected long steps;
+    /**
+     * Set once the scheduler has been shut down.
+     */
+    protected volatile boolean shutdown;
+    /**
+     * Creates a new scheduler and starts its threads.
+     * @param threads the number of threads executing the tasks.
+     * @param tick the duration of a single step of the wheel.
+     * @param unit the unit of the duration.
+     * @param buckets the number of buckets in the wheel.
+     */
+    public Scheduler(int threads, long tick, TimeUnit unit, int buckets){
+        this(threads, tick, unit, buckets, newThreadFactory());
+    }
+    /**
+     * Creates a scheduler without a thread of its own, whose wheel only
+     * advances when {@link #advance()} is called, so that the tasks are
+     * executed in a predictable order, for example in tests.
+     * @param workers the executor that executes the tasks.
+     * @param tick the duration of a single step of the wheel.
+     * @param unit the unit of the duration.
+     * @param buckets the number of buckets in the wheel.
+     */
+    public Scheduler(Executor workers, long tick, TimeUnit unit, int buckets){
+        this(workers, tick, unit, buckets, null);
+    }
+    /**
+     * @param threads the number of threads executing the tasks.
+     * @param tick the duration of a single step of the wheel.
+     * @param unit the unit of the duration.
+     * @param buckets the number of buckets in the wheel.
+     * @param factory the factory of the threads.
+     */
+    private Scheduler(int threads, long tick, TimeUnit unit, int buckets, ThreadFactory factory){
+        this(Executors.newFixedThreadPool(threads, factory), tick, unit, buckets, factory);
+    }
+    /**
+     * @param workers the executor that executes the tasks.
+     * @param tick the duration of a single step of the wheel.
+     * @param unit the unit of the duration.
+     * @param buckets the number of buckets in the wheel.
+     * @param factory the factory of the thread advancing the wheel or null,
+     * if the wheel is advanced by hand.
+     */
+    private Scheduler(Executor workers, long tick, TimeUnit unit, int buckets, ThreadFactory factory){
+        int length = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+        this.tick = Math.max(1, unit.toNanos(tick));
+        this.wheel = new ArrayList<>(length);
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.workers = workers;
+
+        for(int i = 0 ; i < length ; ++i)
+            wheel.add(new ArrayDeque<>());
+
+        this.ticker = factory == null ? null : factory.newThread(new Ticker());
+        if(ticker != null)
+            ticker.start();
+    }
+    /**
+     * @return a factory of daemon threads that are numbered consecutively.
+     */
+    private static ThreadFactory newThreadFactory(){
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "scheduler-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    /**
+     * @return the scheduler that is shared by all games that don't specify
+     * their own.
+     */
+    public static synchronized Scheduler getDefault(){
+        if(instance == null)
+            instance = new Scheduler(Runtime.getRuntime().availableProcessors(), 10, TimeUnit.MILLISECONDS, 512);
+        return instance;
+    }
+    /**
+     * Executes the task periodically, starting after the first period.
+     * @param task the task that is executed.
+     * @param period the time between two executions.
+     * @param unit the unit of the period.
+     * @return the handle for controlling the task.
+     * @throws IllegalStateException if the scheduler has been shut down.
+     */
+    public Timeout schedule(Runnable task, long period, TimeUnit unit){
+        if(shutdown)
+            throw new IllegalStateException("The scheduler has been shut down.");
+
+        Timeout timeout = new Timeout(task, Math.max(1, unit.toNanos(period) / tick));
+        size.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+    /**
+     * Executes the task once on one of the workers, as soon as one is
+     * available.
+     * @param task the task that is executed.
+     * @throws IllegalStateException if the scheduler has been shut down.
+     */
+    @Override
+    public void execute(Runnable task){
+        if(shutdown)
+            throw new IllegalStateException("The scheduler has been shut down.");
+
+        workers.execute(task);
+    }
+    /**
+     * @return the number of tasks that haven't been cancelled yet.
+     */
+    public int size(){
+        return size.get();
+    }
+    /**
+     * Stops the threads of the scheduler. Tasks that are currently running
+     * are allowed to finish. The workers are shut down as well, if they
+     * are an {@link ExecutorService}.
+     */
+    public void shutdown(){
+        shutdown = true;
+        LockSupport.unpark(ticker);
+        if(workers instanceof ExecutorService)
+            ((ExecutorService)workers).shutdown();
+    }
+    /**
+     * @return true if the scheduler has been shut down.
+     */
+    public boolean isShutdown(){
+        return shutdown;
+    }
+    /**
+     * Advances the wheel of a scheduler without a thread of its own by one
+     * step and hands all tasks that are due in this step over to the
+     * workers. Must not be called by two threads at the same time.
+     * @throws IllegalStateException if the scheduler has a thread
+     * advancing the wheel.
+     */
+    public void advance(){
+        if(ticker != null)
+            throw new IllegalStateException("The wheel is advanced by its own thread.");
+        step();
+    }
+    /**
+     * Advances the wheel by one step and hands all tasks that are due in
+     * this step over to the workers.
+     */
+    private void step(){
+        transfer();
+        try{
+            expire(getBucket(steps));
+        }finally{
+            ++steps;
+        }
+    }
+    /**
+     * Moves the new tasks into the wheel.
+     */
+    private void transfer(){
+        for(Timeout timeout = pending.poll() ; timeout != null ; timeout = pending.poll()){
+            if(timeout.isCancelled())
+                continue;
+            timeout.step = steps + timeout.period;
+            getBucket(timeout.step).add(timeout);
+        }
+    }
+    /**
+     * Executes all tasks in the bucket that are due in the current step.
+     * @param bucket the bucket of the current step.
+     */
+    private void expire(Queue<Timeout> bucket){
+        Iterator<Timeout> iterator = bucket.iterator();
+        while(iterator.hasNext()){
+            Timeout timeout = iterator.next();
+            if(timeout.isCancelled()){
+                iterator.remove();
+            }else if(timeout.step <= steps){
+                iterator.remove();
+                due.add(timeout);
+            }
+        }
+        
+        //The next step may be in the same bucket
+        for(Timeout timeout = due.poll() ; timeout != null ; timeout = due.poll()){
+            timeout.step += timeout.period;
+            getBucket(timeout.step).add(timeout);
+            timeout.execute();
+        }
+    }
+    /**
+     * @param step the step of the wheel.
+     * @return the bucket of the tasks that are due in the step.
+     */
+    private Queue<Timeout> getBucket(long step){
+        return wheel.get((int)(step & (wheel.size() - 1)));
+    }
+    /**
+     * The task that advances the wheel in real time.
+     */
+    private class Ticker implements Runnable{
+        @Override
+        public void run(){
+            long deadline = System.nanoTime();
+            while(!shutdown){
+                deadline += tick;
+                for(long delay = deadline - System.nanoTime() ; delay > 0 && !shutdown ; delay = deadline - System.nanoTime())
+                    LockSupport.parkNanos(this, delay);
+
+                //A single failure mustn't stop all tasks
+                try{
+                    step();
+                }catch(RuntimeException e){
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    }
+    /**
+     * The handle of a single periodic task.
+     */
+    public class Timeout implements Runnable{
+        /**
+         * The task that is executed.
+         */
+        private final Runnable task;
+        /**
+         * The number of steps between two executions.
+         */
+        private final long period;
+        /**
+         * The step in which the task is executed next.
+         */
+        private long step;
+        /**
+         * Set while the task is either waiting for or being executed.
+         */
+        private final AtomicBoolean running;
+        /**
+         * Set while the task is paused.
+         */
+        private volatile boolean paused;
+        /**
+         * Set once the task has been cancelled.
+         */
+        private final AtomicBoolean cancelled;
+        /**
+         * @param task the task that is executed.
+         * @param period the number of steps between two executions.
+         */
+        private Timeout(Runnable task, long period){
+            this.task = task;
+            this.period = period;
+            this.running = new AtomicBoolean();
+            this.cancelled = new AtomicBoolean();
+        }
+        /**
+         * Hands the task over to the workers, unless it is paused or the
+         * previous execution hasn't finished yet.
+         */
+        private void execute(){
+            if(paused || !running.compareAndSet(false, true))
+                return;
+
+            try{
+                workers.execute(this);
+            }catch(RuntimeException e){
+                running.set(false);
+            }
+        }
+        /**
+         * Executes the task.
+         */
+        @Override
+        public void run(){
+            try{
+                if(!cancelled.get())
+                    task.run();
+            }finally{
+                running.set(false);
+            }
+        }
+        /**
+         * Suspends the task until it is resumed.
+         */
+        public void pause(){
+            paused = true;
+        }
+        /**
+         * Continues the task after it has been paused.
+         */
+        public void resume(){
+            paused = false;
+        }
+        /**
+         * Removes the task from the scheduler. The current execution, if
+         * there is one, is allowed to finish, since the task may cancel
+         * itself.
+         * @return true if the task hasn't already been cancelled.
+         */
+        public boolean cancel(){
+            if(!cancelled.compareAndSet(false, true))
+                return false;
+            size.decrementAndGet();
+            return true;
+        }
+        /**
+         * @return true if the task has been paused.
+         */
+        public boolean isPaused(){
+            return paused;
+        }
+        /**
+         * @return true if the task has been cancelled.
+         */
+        public boolean isCancelled(){
+            return cancelled.get();
+        }
+    }
+}
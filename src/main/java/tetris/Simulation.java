@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class implements the rules of the game without any notion of real
+ * time.<br>
+ * The game only advances when {@link #step()} or {@link #tick(int)} is
+ * called, where every tick corresponds to the block falling down by one
+ * row. This way, a game can be simulated as fast as possible without any
+ * threads or a visual interface involved.
+ * @author Zavarov
+ */
+public class Simulation extends Field{
+    /**
+     * The randomizer deciding the order of the tetrominoes.
+     */
+    protected final Randomizer randomizer;
+    /**
+     * The block that is currently selected.
+     */
+    protected Tetromino currentBlock;
+    /**
+     * The x coordinate of every new block.
+     */
+    protected int xStart;
+    /**
+     * The y coordinate of every new block.
+     */
+    protected int yStart;
+    /**
+     * The number of ticks since the start of the game.
+     */
+    protected long ticks;
+    /**
+     * The number of rows that have been removed since the start of the game.
+     */
+    protected long lines;
+    /**
+     * The states after the last placements or null, if they aren't stored.
+     */
+    protected History history;
+    /**
+     * Initializes an empty field.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     */
+    public Simulation(int columns, int rows){
+        this(columns, rows, Randomizer.uniform(ThreadLocalRandom.current().nextLong()));
+    }
+    /**
+     * Initializes an empty field.
+     * @param columns the number of columns in the field.
+     * @param rows the number of rows in the field.
+     * @param randomizer the randomizer deciding the order of the
+     * tetrominoes.
+     */
+    public Simulation(int columns, int rows, Randomizer randomizer){
+        super(columns, rows);
+
+        this.randomizer = randomizer;
+        this.xStart = columns / 2;
+        this.yStart = rows - 2;
+    }
+    /**
+     * @return the next tetromino of the randomizer.
+     */
+    protected Tetromino newTetromino(){
+        return randomizer.next().create(this, xStart, yStart);
+    }
+    /**
+     * Starts a new game.
+     */
+    public void start(){
+        clear();
+
+        ticks = 0;
+        lines = 0;
+        currentBlock = newTetromino();
+        currentBlock.put();
+        if(history != null){
+            history.clear();
+            history.record(this);
+        }
+    }
+    /**
+     * Lets the current tetromino fall down by one row.<br>
+     * If it can't fall any further, all full rows are removed and the next
+     * tetromino is created. The game is over once the new tetromino
+     * overlaps with the field.
+     * @return true if the game is still running after this step.
+     */
+    public boolean step(){
+        if(currentBlock == null)
+            return false;
+
+        ++ticks;
+        if(!currentBlock.moveDown()){
+            lines += removeRows();
+            currentBlock = newTetromino();
+
+            if(currentBlock.hasCollision()){
+                end();
+            }else{
+                currentBlock.put();
+                if(history != null)
+                    history.record(this);
+            }
+        }
+        return currentBlock != null;
+    }
+    /**
+     * Advances the game by several steps at once.
+     * @param ticks the number of steps.
+     * @return the number of steps that were executed before the game ended.
+     */
+    public int tick(int ticks){
+        for(int i = 0 ; i < ticks ; ++i)
+            if(!step())
+                return i;
+        return ticks;
+    }
+    /**
+     * Moves the current tetromino to the left.
+     */
+    public void moveLeft(){
+        if(currentBlock != null)
+            currentBlock.moveLeft();
+    }
+    /**
+     * Moves the current tetromino to the right.
+     */
+    public void moveRight(){
+        if(currentBlock != null)
+            currentBlock.moveRight();
+    }
+    /**
+     * Rotates the current tetromino counter clockwise.
+     */
+    public void rotateLeft(){
+        if(currentBlock != null)
+            currentBlock.rotateLeft();
+    }
+    /**
+     * Rotates the current tetromino clockwise.
+     */
+    public void rotateRight(){
+        if(currentBlock != null)
+            currentBlock.rotateRight();
+    }
+    /**
+     * Moves the current tetromino to the bottom.
+     */
+    public void fallDown(){
+        if(currentBlock != null)
+            currentBlock.fallDown();
+    }
+    /**
+     * Stores the state after each of the given number of placements, so
+     * that the game can go back to them. The states are stored from the
+     * next start of the game onwards.
+     * @param placements the maximum number of stored placements or 0, if
+     * no states should be stored.
+     */
+    public void setHistory(int placements){
+        history = placements > 0 ? new History(this, placements) : null;
+    }
+    /**
+     * Goes back to the state right after an earlier tetromino has been
+     * placed.
+     * @param placements the number of placements to go back.
+     * @return false if not enough placements are stored.
+     */
+    public boolean rewind(int placements){
+        return history != null && history.rewind(this, placements);
+    }
+    /**
+     * Goes forth again after going back, as long as no other tetromino has
+     * been placed in the meantime.
+     * @param placements the number of placements to go forth.
+     * @return false if not enough placements are stored.
+     */
+    public boolean forward(int placements){
+        return history != null && history.forward(this, placements);
+    }
+    /**
+     * Ends the current game.
+     */
+    protected void end(){
+        currentBlock.put();
+        currentBlock = null;
+    }
+    /**
+     * @return true if a game has been started and isn't over yet.
+     */
+    public boolean isRunning(){
+        return currentBlock != null;
+    }
+    /**
+     * @return the tetromino that is currently falling down or null, if the
+     * game isn't running.
+     */
+    public Tetromino getCurrentBlock(){
+        return currentBlock;
+    }
+    /**
+     * @return the states after the last placements or null, if they aren't
+     * stored.
+     */
+    public History getHistory(){
+        return history;
+    }
+    /**
+     * The upcoming tetrominoes may be read from the randomizer by any
+     * thread.
+     * @return the randomizer deciding the order of the tetrominoes.
+     */
+    public Randomizer getRandomizer(){
+        return randomizer;
+    }
+    /**
+     * @return the number of ticks since the start of the game.
+     */
+    public long getTicks(){
+        return ticks;
+    }
+    /**
+     * @return the number of rows that have been removed since the start of
+     * the game.
+     */
+    public long getLines(){
+        return lines;
+    }
+}
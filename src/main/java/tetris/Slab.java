@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class reserves a single block of memory outside of the heap, which
+ * is divided into slots of the same size that hold one field each.<br>
+ * Every cell takes four bits and every row additionally keeps its mask and
+ * its hash, so a field of ten columns and twenty rows needs 424 bytes and
+ * five million of them fit into a single slab. A slot is taken by {@link #allocate()} and given back once its field is
+ * closed, after which it may be handed out again. Closing the slab
+ * releases all fields at once. The memory itself is returned once the
+ * garbage collector has collected the slab, since a direct buffer can't
+ * be freed explicitly.<br>
+ * Handing out and giving back slots is thread-safe. The fields don't share
+ * any cells, so different threads may use different fields of the same
+ * slab, but a single field may only be used by one thread at a time.
+ * @author Zavarov
+ */
+public class Slab implements AutoCloseable{
+    /**
+     * The number of columns of every field.
+     */
+    protected final int columns;
+    /**
+     * The number of rows of every field.
+     */
+    protected final int rows;
+    /**
+     * The number of fields.
+     */
+    protected final int capacity;
+    /**
+     * The number of bytes of every slot.
+     */
+    protected final int stride;
+    /**
+     * The memory of all slots.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The slots that aren't used, where the next one is on top.
+     */
+    private final int[] free;
+    /**
+     * The number of slots that aren't used.
+     */
+    private int available;
+    /**
+     * Set once the slab has been closed.
+     */
+    private volatile boolean closed;
+    /**
+     * Reserves the memory of all fields.
+     * @param columns the number of columns of every field.
+     * @param rows the number of rows of every field.
+     * @param capacity the number of fields.
+     * @throws IllegalArgumentException if the fields don't fit into a
+     * single buffer.
+     */
+    public Slab(int columns, int rows, int capacity){
+        if((long)getStride(columns, rows) * capacity > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The fields don't fit into a single buffer.");
+
+        this.columns = columns;
+        this.rows = rows;
+        this.capacity = capacity;
+        this.stride = getStride(columns, rows);
+        this.buffer = ByteBuffer.allocateDirect(stride * capacity);
+        this.free = new int[capacity];
+        for(int slot = 0 ; slot < capacity ; ++slot)
+            free[slot] = capacity - 1 - slot;
+        this.available = capacity;
+    }
+    /**
+     * @param columns the number of columns.
+     * @param rows the number of rows.
+     * @return the number of bytes needed for a single field, made up of
+     * the cells and one mask and one hash for every row.
+     */
+    public static int getStride(int columns, int rows){
+        return getCellBytes(columns, rows) + 2 * rows * Long.BYTES;
+    }
+    /**
+     * @param columns the number of columns.
+     * @param rows the number of rows.
+     * @return the number of bytes of the cells of a single field, where
+     * every row starts at a new byte, rounded up so that the masks behind
+     * the cells are aligned.
+     */
+    static int getCellBytes(int columns, int rows){
+        return ((columns + 1) / 2 * rows + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+    }
+    /**
+     * Takes an unused slot.
+     * @return an empty field in the slot.
+     * @throws IllegalStateException if all slots are used or the slab has
+     * been closed.
+     */
+    public synchronized OffHeapField allocate(){
+        if(closed)
+            throw new IllegalStateException("The slab has been closed.");
+        if(available == 0)
+            throw new IllegalStateException("All "+capacity+" slots are used.");
+        return new OffHeapField(this, free[--available]);
+    }
+    /**
+     * Empties the slot and makes it available again.
+     * @param slot the slot.
+     */
+    synchronized void release(int slot){
+        if(closed)
+            return;
+
+        for(int i = slot * stride ; i < (slot + 1) * stride ; ++i)
+            buffer.put(i, (byte)0);
+        free[available++] = slot;
+    }
+    /**
+     * Releases all fields. Using any of them afterwards fails.
+     */
+    @Override
+    public synchronized void close(){
+        closed = true;
+    }
+    /**
+     * @return true if the slab has been closed.
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+    /**
+     * @return the memory of all slots.
+     * @throws IllegalStateException if the slab has been closed.
+     */
+    ByteBuffer buffer(){
+        if(closed)
+            throw new IllegalStateException("The slab has been closed.");
+        return buffer;
+    }
+    /**
+     * @return the number of fields that are in use.
+     */
+    public synchronized int size(){
+        return capacity - available;
+    }
+    /**
+     * @return the number of fields.
+     */
+    public int capacity(){
+        return capacity;
+    }
+    /**
+     * @return the number of bytes of every field.
+     */
+    public int getStride(){
+        return stride;
+    }
+    /**
+     * @return the number of columns of every field.
+     */
+    public int getColumns(){
+        return columns;
+    }
+    /**
+     * @return the number of rows of every field.
+     */
+    public int getRows(){
+        return rows;
+    }
+}
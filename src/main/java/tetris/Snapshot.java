@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import static tetris.Types.TYPES;
+
+/**
+ * This class contains the type of every cell of a field at a single point
+ * in time.<br>
+ * A snapshot never changes once it has been created, so it may be read by
+ * any thread while the field itself keeps changing. Instead of copying the
+ * whole field, a new snapshot may also be derived from the previous one,
+ * in which case only the rows that have changed in the meantime are copied
+ * and all other rows are shared with the previous snapshot.
+ * @author Zavarov
+ */
+public final class Snapshot{
+    /**
+     * The number of columns.
+     */
+    private final int columns;
+    /**
+     * The number of rows.
+     */
+    private final int rows;
+    /**
+     * The ordinal of the type of every cell plus one or 0 for empty cells,
+     * row by row starting with the lowest row. A row is never modified once
+     * the snapshot has been created, so it may be shared with later
+     * snapshots.
+     */
+    private final byte[][] types;
+    /**
+     * The number of snapshots of the field that were taken before this one.
+     */
+    private final long version;
+    /**
+     * The type of the falling tetromino or null, if the field doesn't
+     * belong to a running game.
+     */
+    private final Type current;
+    /**
+     * The x coordinate of the center of the falling tetromino.
+     */
+    private final int x;
+    /**
+     * The y coordinate of the center of the falling tetromino.
+     */
+    private final int y;
+    /**
+     * The orientation of the falling tetromino.
+     */
+    private final int orientation;
+    /**
+     * The number of tetrominoes the randomizer has handed out or -1, if the
+     * field doesn't belong to a game.
+     */
+    private final long position;
+    /**
+     * Copies the current state of the field.
+     * @param field the field.
+     * @param version the number of snapshots taken before this one.
+     */
+    public Snapshot(Field field, long version){
+        this.columns = field.columns;
+        this.rows = field.rows;
+        this.types = new byte[rows][columns];
+        this.version = version;
+
+        for(int y = 0 ; y < rows ; ++y){
+            for(int x = 0 ; x < columns ; ++x){
+                Tetromino tetromino = field.get(x, y);
+                if(tetromino != null)
+                    types[y][x] = (byte)(tetromino.getType().ordinal() + 1);
+            }
+        }
+
+        Tetromino block = getCurrentBlock(field);
+        this.current = block == null ? null : block.getType();
+        this.x = block == null ? 0 : block.getX();
+        this.y = block == null ? 0 : block.getY();
+        this.orientation = block == null ? 0 : block.getOrientation();
+        this.position = getPosition(field);
+    }
+    /**
+     * Shares the rows of the previous snapshot and only copies the rows of
+     * the rectangle, whose cells are read from the field. All cells outside
+     * of the rectangle must not have changed since the previous snapshot
+     * was taken.
+     * @param previous the previous snapshot of the field.
+     * @param field the field.
+     * @param column the leftmost column of the rectangle.
+     * @param row the lowest row of the rectangle.
+     * @param width the number of columns in the rectangle.
+     * @param height the number of rows in the rectangle.
+     */
+    public Snapshot(Snapshot previous, Field field, int column, int row, int width, int height){
+        this.columns = previous.columns;
+        this.rows = previous.rows;
+        this.types = previous.types.clone();
+        this.version = previous.version + 1;
+
+        for(int y = row ; y < row + height ; ++y){
+            byte[] line = types[y] = types[y].clone();
+            for(int x = column ; x < column + width ; ++x){
+                Tetromino tetromino = field.get(x, y);
+                line[x] = tetromino == null ? 0 : (byte)(tetromino.getType().ordinal() + 1);
+            }
+        }
+
+        Tetromino block = getCurrentBlock(field);
+        this.current = block == null ? null : block.getType();
+        this.x = block == null ? 0 : block.getX();
+        this.y = block == null ? 0 : block.getY();
+        this.orientation = block == null ? 0 : block.getOrientation();
+        this.position = getPosition(field);
+    }
+    /**
+     * @param column the x coordinate.
+     * @param row the y coordinate.
+     * @return the type of the tetromino at the specified position or null
+     * if the position is empty or outside the field.
+     */
+    public Type getType(int column, int row){
+        if(column < 0 || column >= columns || row < 0 || row >= rows)
+            return null;
+
+        int type = types[row][column];
+        return type == 0 ? null : TYPES[type - 1];
+    }
+    /**
+     * @return the number of columns.
+     */
+    public int getColumns(){
+        return columns;
+    }
+    /**
+     * @return the number of rows.
+     */
+    public int getRows(){
+        return rows;
+    }
+    /**
+     * @return the number of snapshots of the field that were taken before
+     * this one.
+     */
+    public long getVersion(){
+        return version;
+    }
+    /**
+     * @return the type of the falling tetromino or null, if there is none.
+     */
+    public Type getCurrentType(){
+        return current;
+    }
+    /**
+     * @return the x coordinate of the center of the falling tetromino.
+     */
+    public int getCurrentX(){
+        return x;
+    }
+    /**
+     * @return the y coordinate of the center of the falling tetromino.
+     */
+    public int getCurrentY(){
+        return y;
+    }
+    /**
+     * @return the orientation of the falling tetromino.
+     */
+    public int getCurrentOrientation(){
+        return orientation;
+    }
+    /**
+     * The falling tetromino has been handed out last, so the preview of the
+     * randomizer belongs to this snapshot as long as its position hasn't
+     * changed.
+     * @return the number of tetrominoes the randomizer had handed out when
+     * the snapshot was taken or -1, if the field doesn't belong to a game.
+     */
+    public long getPosition(){
+        return position;
+    }
+    /**
+     * @param field the field.
+     * @return the falling tetromino, if the field belongs to a game.
+     */
+    private static Tetromino getCurrentBlock(Field field){
+        return field instanceof Simulation ? ((Simulation)field).getCurrentBlock() : null;
+    }
+    /**
+     * @param field the field.
+     * @return the position of the randomizer, if the field belongs to a game.
+     */
+    private static long getPosition(Field field){
+        return field instanceof Simulation ? ((Simulation)field).getRandomizer().getPosition() : -1;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino.Type;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * This class contains the image of every kind of block for a fixed block
+ * size.<br>
+ * Every image is only drawn once, so that drawing a block is reduced to
+ * copying its image.
+ * @author Zavarov
+ */
+public class Sprites{
+    /**
+     * The pixel between the inner and outer rectangle in the image.
+     */
+    private static final int INNER_RECTANGLE_OFFSET = 4;
+    /**
+     * The width of a single block.
+     */
+    protected final int width;
+    /**
+     * The height of a single block.
+     */
+    protected final int height;
+    /**
+     * The image of a single block, indexed by the ordinal of its type.
+     */
+    private final BufferedImage[] blocks;
+    /**
+     * The images of the gray and the white empty block.
+     */
+    private final BufferedImage[] blanks;
+    /**
+     * Draws the images of all blocks.
+     * @param width the width of a single block.
+     * @param height the height of a single block.
+     * @param imageType the type of the images.
+     */
+    public Sprites(int width, int height, int imageType){
+        this.width = width;
+        this.height = height;
+        this.blocks = new BufferedImage[Type.values().length];
+        this.blanks = new BufferedImage[2];
+
+        for(Type type : Type.values())
+            blocks[type.ordinal()] = createBlock(new Color(type.getColor()), imageType);
+        blanks[0] = createBlank(Color.LIGHT_GRAY, imageType);
+        blanks[1] = createBlank(Color.WHITE, imageType);
+    }
+    /**
+     * If the position is empty and both x and y are both either odd or
+     * even, the blank block will be gray, otherwise white.
+     * @param type the type of the block or null if it is empty.
+     * @param x the x coordinate.
+     * @param y the y coordinate.
+     * @return the image of the block at the specified position.
+     */
+    public BufferedImage get(Type type, int x, int y){
+        if(type == null)
+            return blanks[x % 2 == y % 2 ? 0 : 1];
+        return blocks[type.ordinal()];
+    }
+    /**
+     * @return the width of a single block.
+     */
+    public int getWidth(){
+        return width;
+    }
+    /**
+     * @return the height of a single block.
+     */
+    public int getHeight(){
+        return height;
+    }
+    /**
+     * Creates the image of a single block.
+     * @param color the color of the block.
+     * @param imageType the type of the image.
+     * @return the image of the block.
+     */
+    private BufferedImage createBlock(Color color, int imageType){
+        BufferedImage sprite = new BufferedImage(width, height, imageType);
+        Graphics g = sprite.getGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        
+        g.setColor(Color.BLACK);
+        //-1 so that we don't have overlaps between the entries
+        g.drawRect(0, 0, width-1, height-1);
+        
+        //A a inner black rectangle to add a little detail.
+        if(width > INNER_RECTANGLE_OFFSET * 2 && height > INNER_RECTANGLE_OFFSET * 2){
+            g.setColor(Color.BLACK);
+            g.drawRect(INNER_RECTANGLE_OFFSET,
+                       INNER_RECTANGLE_OFFSET, 
+                       width  - 2*INNER_RECTANGLE_OFFSET-1, 
+                       height - 2*INNER_RECTANGLE_OFFSET-1);
+        }
+        g.dispose();
+        return sprite;
+    }
+    /**
+     * Creates the image of a blank block.
+     * @param color the color of the block.
+     * @param imageType the type of the image.
+     * @return the image of the block.
+     */
+    private BufferedImage createBlank(Color color, int imageType){
+        BufferedImage sprite = new BufferedImage(width, height, imageType);
+        Graphics g = sprite.getGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return sprite;
+    }
+}
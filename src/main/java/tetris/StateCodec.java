@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Shape;
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static tetris.Types.FILLERS;
+import static tetris.Types.TYPES;
+
+/**
+ * This class converts fields and games into a compact binary form and
+ * back.<br>
+ * Every cell is stored as a nibble that contains the ordinal of its type
+ * plus one, or 0 if the cell is empty, two cells per byte and row by row
+ * starting with the lowest row. A game additionally contains its ticks,
+ * the removed rows, the current tetromino and the complete state of its
+ * randomizer. All values have a fixed size and are stored in big-endian
+ * order, so the size of the state only depends on the size of the field.
+ * <br>
+ * The states are read from and written to the buffer directly, starting
+ * at its current position, without any intermediate copies. A state is
+ * validated completely before anything is changed, so an invalid state
+ * leaves the field or game as it was.
+ * @author Zavarov
+ */
+public final class StateCodec{
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The number of bytes in front of the cells of a field.
+     */
+    private static final int FIELD_HEADER = 2 * Short.BYTES;
+    /**
+     * The number of bytes of a game that aren't part of the field or the
+     * state of the randomizer.
+     */
+    private static final int GAME_HEADER = 1 + 2 * Long.BYTES + 1 + 1 + 2 * Short.BYTES + 1 + Short.BYTES + Long.BYTES;
+    /**
+     * There are no instances of this class.
+     */
+    private StateCodec(){}
+    /**
+     * @param field the field.
+     * @return the number of bytes needed for the field.
+     */
+    public static int getSize(Field field){
+        return FIELD_HEADER + (field.columns * field.rows + 1) / 2;
+    }
+    /**
+     * @param simulation the game.
+     * @return the number of bytes needed for the game.
+     */
+    public static int getSize(Simulation simulation){
+        return GAME_HEADER + getSize((Field)simulation) + simulation.getRandomizer().getStateSize();
+    }
+    /**
+     * Writes the size of the field and the type of every cell.
+     * @param field the field.
+     * @param buffer the buffer the field is written to.
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    public static void write(Field field, ByteBuffer buffer){
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try{
+            buffer.putShort((short)field.columns);
+            buffer.putShort((short)field.rows);
+            writeCells(field, buffer);
+        }finally{
+            buffer.order(order);
+        }
+    }
+    /**
+     * Replaces all cells of the field with the cells that have been written
+     * by {@link #write(Field, ByteBuffer)}. The cells don't belong to any
+     * tetromino of the field, instead every occupied cell contains a
+     * tetromino of the stored type that is shared by all fields.
+     * @param buffer the buffer the field is read from.
+     * @param field the field with the same size as the stored one.
+     * @throws IllegalArgumentException if the size of the field doesn't
+     * match.
+     * @throws BufferUnderflowException if the buffer is too small.
+     */
+    public static void read(ByteBuffer buffer, Field field){
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try{
+            checkField(buffer, buffer.position(), field);
+            buffer.position(buffer.position() + FIELD_HEADER);
+            readCells(buffer, field);
+        }finally{
+            buffer.order(order);
+        }
+    }
+    /**
+     * Writes the field, the ticks and removed rows, the current tetromino
+     * and the randomizer of the game.
+     * @param simulation the game.
+     * @param buffer the buffer the game is written to.
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    public static void write(Simulation simulation, ByteBuffer buffer){
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try{
+            buffer.put((byte)VERSION);
+            buffer.putLong(simulation.ticks);
+            buffer.putLong(simulation.lines);
+            write((Field)simulation, buffer);
+
+            Tetromino current = simulation.currentBlock;
+            buffer.put(current == null ? 0 : (byte)(current.getType().ordinal() + 1));
+            buffer.put(current == null ? 0 : (byte)current.getOrientation());
+            buffer.putShort(current == null ? 0 : (short)current.getX());
+            buffer.putShort(current == null ? 0 : (short)current.getY());
+
+            Randomizer randomizer = simulation.getRandomizer();
+            buffer.put((byte)randomizer.getKind().ordinal());
+            buffer.putShort((short)randomizer.getPreview());
+            buffer.putLong(randomizer.getSeed());
+            randomizer.save(buffer);
+        }finally{
+            buffer.order(order);
+        }
+    }
+    /**
+     * Creates a new game from the state that has been written by
+     * {@link #write(Simulation, ByteBuffer)}.
+     * @param buffer the buffer the game is read from.
+     * @return the restored game.
+     * @throws IllegalArgumentException if the state is invalid.
+     * @throws BufferUnderflowException if the buffer is too small.
+     */
+    public static Simulation read(ByteBuffer buffer){
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try{
+            int start = buffer.position();
+            checkVersion(buffer.get());
+            buffer.position(start + 1 + 2 * Long.BYTES);
+            int columns = buffer.getShort();
+            int rows = buffer.getShort();
+            if(columns < 1 || columns > Long.SIZE || rows < 1)
+                throw new IllegalArgumentException("A field with "+columns+"x"+rows+" cells isn't supported.");
+            buffer.position(buffer.position() + (columns * rows + 1) / 2 + 1 + 1 + 2 * Short.BYTES);
+            Randomizer randomizer = createRandomizer(buffer);
+
+            Simulation simulation = new Simulation(columns, rows, randomizer);
+            buffer.position(start);
+            read(buffer, simulation);
+            return simulation;
+        }finally{
+            buffer.order(order);
+        }
+    }
+    /**
+     * Replaces the state of the game with the state that has been written
+     * by {@link #write(Simulation, ByteBuffer)}.<br>
+     * The game must have a field of the same size and a randomizer of the
+     * same kind, seed and preview as the stored one.
+     * @param buffer the buffer the game is read from.
+     * @param simulation the game.
+     * @throws IllegalArgumentException if the state doesn't match the game.
+     * @throws BufferUnderflowException if the buffer is too small.
+     */
+    public static void read(ByteBuffer buffer, Simulation simulation){
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try{
+            int start = buffer.position();
+            if(buffer.limit() - start < getSize(simulation))
+                throw new BufferUnderflowException();
+            checkVersion(buffer.get(start));
+            long ticks = buffer.getLong(start + 1);
+            long lines = buffer.getLong(start + 1 + Long.BYTES);
+            if(ticks < 0L || lines < 0L)
+                throw new IllegalArgumentException("The ticks and removed rows must not be negative.");
+
+            int field = start + 1 + 2 * Long.BYTES;
+            checkField(buffer, field, simulation);
+            int current = field + getSize((Field)simulation);
+            int type = buffer.get(current);
+            int orientation = buffer.get(current + 1);
+            int x = buffer.getShort(current + 2);
+            int y = buffer.getShort(current + 2 + Short.BYTES);
+            if(type != 0)
+                checkTetromino(simulation, decode(type), orientation, x, y);
+
+            Randomizer randomizer = simulation.getRandomizer();
+            int kind = buffer.get(current + 2 + 2 * Short.BYTES);
+            int preview = buffer.getShort(current + 3 + 2 * Short.BYTES);
+            long seed = buffer.getLong(current + 3 + 3 * Short.BYTES);
+            if(kind != randomizer.getKind().ordinal() || preview != randomizer.getPreview() || seed != randomizer.getSeed())
+                throw new IllegalArgumentException("The randomizer of the game doesn't match the stored one.");
+            randomizer.check(buffer, start + GAME_HEADER + getSize((Field)simulation));
+
+            //The state is valid, so the game can be changed now
+            buffer.position(field + FIELD_HEADER);
+            readCells(buffer, simulation);
+            buffer.position(start + GAME_HEADER + getSize((Field)simulation));
+            randomizer.restore(buffer);
+
+            simulation.ticks = ticks;
+            simulation.lines = lines;
+            simulation.currentBlock = null;
+            if(type != 0){
+                Tetromino tetromino = decode(type).create(simulation, x, y);
+                tetromino.setOrientation(orientation);
+                tetromino.put();
+                simulation.currentBlock = tetromino;
+            }
+        }finally{
+            buffer.order(order);
+        }
+    }
+    /**
+     * Writes the type of every cell as a nibble, two cells per byte.
+     * @param field the field.
+     * @param buffer the buffer the cells are written to.
+     */
+    private static void writeCells(Field field, ByteBuffer buffer){
+        int cells = field.columns * field.rows;
+        for(int i = 0 ; i < cells ; i += 2){
+            int low = encode(field, i);
+            int high = i + 1 < cells ? encode(field, i + 1) : 0;
+            buffer.put((byte)(high << 4 | low));
+        }
+    }
+    /**
+     * Replaces every cell of the field with a tetromino of the stored type.
+     * The field isn't cleared beforehand, so that subclasses, which react
+     * to a cleared field, aren't affected.
+     * @param buffer the buffer the cells are read from.
+     * @param field the field.
+     */
+    private static void readCells(ByteBuffer buffer, Field field){
+        int cells = field.columns * field.rows;
+        for(int i = 0 ; i < cells ; i += 2){
+            int value = buffer.get();
+            fill(field, i, value & 0x0F);
+            if(i + 1 < cells)
+                fill(field, i + 1, value >>> 4 & 0x0F);
+        }
+    }
+    /**
+     * Checks the size of a stored field and the type of each of its cells
+     * without changing the position of the buffer.
+     * @param buffer the buffer the field is stored in.
+     * @param index the position of the stored field.
+     * @param field the field with the same size as the stored one.
+     * @throws IllegalArgumentException if the size of the field doesn't
+     * match or a cell contains an unknown type.
+     * @throws BufferUnderflowException if the buffer is too small.
+     */
+    private static void checkField(ByteBuffer buffer, int index, Field field){
+        if(buffer.limit() - index < getSize(field))
+            throw new BufferUnderflowException();
+
+        int columns = buffer.getShort(index);
+        int rows = buffer.getShort(index + Short.BYTES);
+        if(columns != field.columns || rows != field.rows)
+            throw new IllegalArgumentException("Expected a field with "+field.columns+"x"+field.rows+" cells but got "+columns+"x"+rows+".");
+
+        int cells = field.columns * field.rows;
+        for(int i = 0 ; i < cells ; i += 2){
+            int value = buffer.get(index + FIELD_HEADER + i / 2);
+            checkCell(value & 0x0F);
+            if(i + 1 < cells)
+                checkCell(value >>> 4 & 0x0F);
+        }
+    }
+    /**
+     * @param simulation the game.
+     * @param type the type of the current tetromino.
+     * @param orientation its orientation.
+     * @param x its x coordinate.
+     * @param y its y coordinate.
+     * @throws IllegalArgumentException if the orientation doesn't exist or
+     * a block of the tetromino is outside of the field.
+     */
+    private static void checkTetromino(Simulation simulation, Type type, int orientation, int x, int y){
+        Shape shape = FILLERS[type.ordinal()].getShape();
+        if(orientation < 0 || orientation >= shape.size())
+            throw new IllegalArgumentException("Unknown orientation "+orientation+".");
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i)
+            if(!simulation.isValid(x + shape.getX(orientation, i), y + shape.getY(orientation, i)))
+                throw new IllegalArgumentException("The current tetromino is outside of the field.");
+    }
+    /**
+     * @param field the field.
+     * @param cell the index of the cell, row by row.
+     * @return the ordinal of the type of the cell plus one or 0 if it is
+     * empty.
+     */
+    private static int encode(Field field, int cell){
+        int x = cell % field.columns;
+        int y = cell / field.columns;
+        if(field instanceof BitField)
+            return BitField.encode(((BitField)field).getType(x, y));
+
+        Tetromino tetromino = field.get(x, y);
+        return tetromino == null ? 0 : tetromino.getType().ordinal() + 1;
+    }
+    /**
+     * Puts a tetromino of the stored type into the cell or empties it.
+     * @param field the field.
+     * @param cell the index of the cell, row by row.
+     * @param value the ordinal of the type plus one or 0 if it is empty.
+     */
+    private static void fill(Field field, int cell, int value){
+        if(value == 0)
+            field.remove(cell % field.columns, cell / field.columns);
+        else
+            field.put(cell % field.columns, cell / field.columns, FILLERS[value - 1]);
+    }
+    /**
+     * @param value the ordinal of the type plus one.
+     * @return the type.
+     * @throws IllegalArgumentException if there is no such type.
+     */
+    private static Type decode(int value){
+        if(value < 1 || value > TYPES.length)
+            throw new IllegalArgumentException("Unknown type "+value+".");
+        return TYPES[value - 1];
+    }
+    /**
+     * @param value the ordinal of the type plus one or 0 if it is empty.
+     * @throws IllegalArgumentException if there is no such type.
+     */
+    private static void checkCell(int value){
+        if(value != 0)
+            decode(value);
+    }
+    /**
+     * Reads the kind, preview and seed of the randomizer and creates it.
+     * @param buffer the buffer the randomizer is read from.
+     * @return a new randomizer.
+     */
+    private static Randomizer createRandomizer(ByteBuffer buffer){
+        int kind = buffer.get();
+        int preview = buffer.getShort();
+        long seed = buffer.getLong();
+        if(kind < 0 || kind >= Randomizer.Kind.values().length)
+            throw new IllegalArgumentException("Unknown randomizer "+kind+".");
+        return Randomizer.Kind.values()[kind].create(seed, preview);
+    }
+    /**
+     * @param version the version of the stored state.
+     * @throws IllegalArgumentException if the version isn't supported.
+     */
+    private static void checkVersion(int version){
+        if(version != VERSION)
+            throw new IllegalArgumentException("Version "+version+" isn't supported.");
+    }
+}
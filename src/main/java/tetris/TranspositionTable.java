@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+/**
+ * This class implements a bounded map from the hash of a field to a value,
+ * such as the evaluation of a position by a bot.<br>
+ * Every hash has exactly one slot it may be stored in. If the slot is
+ * already taken by another hash, the older entry is replaced, so the table
+ * never grows beyond its capacity. The slots are split into stripes,
+ * each guarded by its own lock, so that threads only contend if they
+ * access the same stripe at the same time.
+ * @param <V> the type of the values.
+ * @author Zavarov
+ */
+public class TranspositionTable<V>{
+    /**
+     * The default number of stripes.
+     */
+    protected static int STRIPES = 64;
+    /**
+     * The hash stored in every slot.
+     */
+    protected final long[] keys;
+    /**
+     * The value stored in every slot or null, if the slot is empty.
+     */
+    protected final Object[] values;
+    /**
+     * The locks of the stripes.
+     */
+    protected final Object[] locks;
+    /**
+     * The mask to map a hash to its slot.
+     */
+    protected final int mask;
+    /**
+     * Creates an empty table.
+     * @param capacity the minimum number of slots. It is rounded up to the
+     * next power of two.
+     */
+    public TranspositionTable(int capacity){
+        this(capacity, STRIPES);
+    }
+    /**
+     * Creates an empty table.
+     * @param capacity the minimum number of slots. It is rounded up to the
+     * next power of two.
+     * @param stripes the number of locks. It is rounded up to the next
+     * power of two.
+     */
+    public TranspositionTable(int capacity, int stripes){
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        int count = Math.min(size, Integer.highestOneBit(Math.max(1, stripes - 1)) << 1);
+
+        this.keys = new long[size];
+        this.values = new Object[size];
+        this.locks = new Object[count];
+        this.mask = size - 1;
+
+        for(int i = 0 ; i < count ; ++i)
+            locks[i] = new Object();
+    }
+    /**
+     * @param hash the hash of a field.
+     * @return the value stored for the hash or null, if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long hash){
+        int index = index(hash);
+        synchronized(lock(index)){
+            return keys[index] == hash ? (V)values[index] : null;
+        }
+    }
+    /**
+     * @param field the field.
+     * @return the value stored for the hash of the field or null, if there
+     * is none.
+     */
+    public V get(Field field){
+        return get(field.getHash());
+    }
+    /**
+     * Stores the value for the hash, replacing any entry in its slot.
+     * @param hash the hash of a field.
+     * @param value the value.
+     * @return the value that was previously stored for the same hash or
+     * null, if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long hash, V value){
+        int index = index(hash);
+        synchronized(lock(index)){
+            V previous = keys[index] == hash ? (V)values[index] : null;
+            keys[index] = hash;
+            values[index] = value;
+            return previous;
+        }
+    }
+    /**
+     * Stores the value for the hash of the field, replacing any entry in its
+     * slot.
+     * @param field the field.
+     * @param value the value.
+     * @return the value that was previously stored for the same hash or
+     * null, if there was none.
+     */
+    public V put(Field field, V value){
+        return put(field.getHash(), value);
+    }
+    /**
+     * Stores the value unless the hash is already stored. This can be used
+     * to find fields that have already been seen.
+     * @param hash the hash of a field.
+     * @param value the value.
+     * @return the value that is stored for the hash afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long hash, V value){
+        int index = index(hash);
+        synchronized(lock(index)){
+            if(keys[index] == hash && values[index] != null)
+                return (V)values[index];
+            keys[index] = hash;
+            values[index] = value;
+            return value;
+        }
+    }
+    /**
+     * Removes all entries.
+     */
+    public void clear(){
+        for(int stripe = 0 ; stripe < locks.length ; ++stripe){
+            synchronized(locks[stripe]){
+                for(int index = stripe ; index < values.length ; index += locks.length){
+                    keys[index] = 0L;
+                    values[index] = null;
+                }
+            }
+        }
+    }
+    /**
+     * @return the number of slots.
+     */
+    public int capacity(){
+        return values.length;
+    }
+    /**
+     * The lower bits of the hash are spread over the slots by mixing in the
+     * upper bits.
+     * @param hash the hash of a field.
+     * @return the slot of the hash.
+     */
+    private int index(long hash){
+        return (int)(hash ^ (hash >>> 32)) & mask;
+    }
+    /**
+     * @param index the slot.
+     * @return the lock of the stripe the slot belongs to.
+     */
+    private Object lock(int index){
+        return locks[index & (locks.length - 1)];
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Arrays;
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+/**
+ * This class contains the lookup tables of the types, which are shared by
+ * all classes that store a type by its ordinal.
+ * @author Zavarov
+ */
+final class Types{
+    /**
+     * All types, indexed by their ordinal. The array is shared, so it must
+     * not be modified.
+     */
+    static final Type[] TYPES = Type.values();
+    /**
+     * The tetromino that is put into every cell of a type, where the cell
+     * doesn't belong to any tetromino of the field, such as the cells of a
+     * restored or off-heap field. A single one is shared by all fields.
+     */
+    static final Tetromino[] FILLERS = Arrays.stream(TYPES).map(type -> type.create(null, 0, 0)).toArray(Tetromino[]::new);
+    /**
+     * There are no instances of this class.
+     */
+    private Types(){}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import tetris.tetromino.Tetromino.Type;
+
+import java.nio.ByteBuffer;
+
+import static tetris.Types.TYPES;
+
+/**
+ * This class picks every type independently, where all types are equally
+ * likely.
+ * @author Zavarov
+ */
+public class UniformRandomizer extends Randomizer{
+    /**
+     * @param seed the seed of the random number generator.
+     * @param preview the number of types that are known in advance.
+     */
+    public UniformRandomizer(long seed, int preview){
+        super(seed, preview);
+        reset();
+    }
+    @Override
+    public Kind getKind(){
+        return Kind.UNIFORM;
+    }
+    @Override
+    protected void restart(){
+    }
+    @Override
+    protected int getAdditionalStateSize(){
+        return 0;
+    }
+    @Override
+    protected void saveAdditionalState(ByteBuffer buffer){
+    }
+    @Override
+    protected void restoreAdditionalState(ByteBuffer buffer){
+    }
+    @Override
+    protected void checkAdditionalState(ByteBuffer buffer, int index){
+    }
+    @Override
+    protected Type generate(){
+        return TYPES[nextInt(TYPES.length)];
+    }
+}
@@ -18,8 +18,6 @@ package tetris.tetromino;
 
 import tetris.Field;
 
-import java.awt.*;
-
 import static tetris.tetromino.Tetromino.Rotation.SWAP;
 
 /**
@@ -31,18 +29,25 @@ public class IBlock extends Tetromino{
      * @param field the playing field.
      * @param xC the x coordinate of the center piece
      * @param yC the y coordinate of the center piece
-     * @param color the color for a single block.
+     * @param color the RGB value of the color for a single block.
      */
-    private IBlock(Field field, int xC, int yC, Color color){
+    private IBlock(Field field, int xC, int yC, int color){
         super(field, xC, yC, SWAP, SWAP, color);
     }
     
     public static IBlock create(Field field, int x, int y){
-        IBlock tetromino = new IBlock(field, x, y, Color.RED);
+        IBlock tetromino = new IBlock(field, x, y, 0xFF0000);
         tetromino.add( 0, 1);
         tetromino.add( 0, 0);
         tetromino.add( 0,-1);
         tetromino.add( 0,-2);
         return tetromino;
     }
+    /**
+     * @return the type of this tetromino.
+     */
+    @Override
+    public Type getType(){
+        return Type.IBLOCK;
+    }
 }
\ No newline at end of file
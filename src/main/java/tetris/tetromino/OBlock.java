@@ -18,8 +18,6 @@ package tetris.tetromino;
 
 import tetris.Field;
 
-import java.awt.*;
-
 import static tetris.tetromino.Tetromino.Rotation.NONE;
 
 /**
@@ -31,18 +29,25 @@ public class OBlock extends Tetromino{
      * @param field the playing field.
      * @param xC the x coordinate of the center piece
      * @param yC the y coordinate of the center piece
-     * @param color the color for a single block.
+     * @param color the RGB value of the color for a single block.
      */
-    private OBlock(Field field, int xC, int yC, Color color){
+    private OBlock(Field field, int xC, int yC, int color){
         super(field, xC, yC, NONE, NONE, color);
     }
     
     public static OBlock create(Field field, int x, int y){
-        OBlock tetromino = new OBlock(field, x, y, Color.BLUE);
+        OBlock tetromino = new OBlock(field, x, y, 0x0000FF);
         tetromino.add( 0, 0);
         tetromino.add( 1, 0);
         tetromino.add( 0, 1);
         tetromino.add( 1, 1);
         return tetromino;
     }
+    /**
+     * @return the type of this tetromino.
+     */
+    @Override
+    public Type getType(){
+        return Type.OBLOCK;
+    }
 }
\ No newline at end of file
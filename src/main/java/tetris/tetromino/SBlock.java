@@ -18,8 +18,6 @@ package tetris.tetromino;
 
 import tetris.Field;
 
-import java.awt.*;
-
 import static tetris.tetromino.Tetromino.Rotation.DEG270;
 import static tetris.tetromino.Tetromino.Rotation.DEG90;
 
@@ -32,18 +30,25 @@ public class SBlock extends Tetromino{
      * @param field the playing field.
      * @param xC the x coordinate of the center piece
      * @param yC the y coordinate of the center piece
-     * @param color the color for a single block.
+     * @param color the RGB value of the color for a single block.
      */
-    private SBlock(Field field, int xC, int yC, Color color){
+    private SBlock(Field field, int xC, int yC, int color){
         super(field, xC, yC, DEG270, DEG90, color);
     }
     
     public static SBlock create(Field field, int x, int y){
-        SBlock tetromino = new SBlock(field, x, y, Color.CYAN);
+        SBlock tetromino = new SBlock(field, x, y, 0x00FFFF);
         tetromino.add( 0, 0);
         tetromino.add(-1, 0);
         tetromino.add( 0, 1);
         tetromino.add( 1, 1);
         return tetromino;
     }
+    /**
+     * @return the type of this tetromino.
+     */
+    @Override
+    public Type getType(){
+        return Type.SBLOCK;
+    }
 }
\ No newline at end of file
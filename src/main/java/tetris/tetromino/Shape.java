@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris.tetromino;
+
+import tetris.tetromino.Tetromino.Block;
+import tetris.tetromino.Tetromino.Rotation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class contains all orientations a tetromino can have.<br>
+ * The orientations are computed once by repeatedly rotating the initial
+ * blocks counter clockwise, until the initial orientation is reached again.
+ * Every orientation is stored as the offsets of its blocks from the center
+ * piece and as one bitmask per row, so that rotating a tetromino only
+ * requires to look up a different index.
+ * @author Zavarov
+ */
+public final class Shape {
+    /**
+     * The x offsets of the blocks, indexed by the orientation.
+     */
+    private final int[][] xOffsets;
+    /**
+     * The y offsets of the blocks, indexed by the orientation.
+     */
+    private final int[][] yOffsets;
+    /**
+     * The orientation after rotating counter clockwise.
+     */
+    private final int[] left;
+    /**
+     * The orientation after rotating clockwise.
+     */
+    private final int[] right;
+    /**
+     * The smallest x offset of every orientation.
+     */
+    private final int[] minX;
+    /**
+     * The largest x offset of every orientation.
+     */
+    private final int[] maxX;
+    /**
+     * The smallest y offset of every orientation.
+     */
+    private final int[] minY;
+    /**
+     * The largest y offset of every orientation.
+     */
+    private final int[] maxY;
+    /**
+     * The blocks of every row of an orientation, starting with the lowest
+     * row. Bit 0 corresponds to the smallest x offset.
+     */
+    private final long[][] masks;
+    /**
+     * The smallest y offset in every column of an orientation, starting with
+     * the column of the smallest x offset.
+     */
+    private final int[][] bottoms;
+    /**
+     * Computes all orientations of the tetromino.
+     * @param tetromino the tetromino in its initial orientation.
+     */
+    Shape(Tetromino tetromino){
+        List<int[]> orientations = new ArrayList<>();
+        int[] initial = sort(tetromino.blocks.stream()
+                .flatMapToInt(b -> Arrays.stream(new int[]{b.getX() - tetromino.xC, b.getY() - tetromino.yC}))
+                .toArray());
+
+        int[] current = initial;
+        do{
+            orientations.add(current);
+            current = rotate(tetromino, current, tetromino.left);
+        }while(!Arrays.equals(current, initial));
+
+        int size = orientations.size();
+        this.xOffsets = new int[size][];
+        this.yOffsets = new int[size][];
+        this.left = new int[size];
+        this.right = new int[size];
+        this.minX = new int[size];
+        this.maxX = new int[size];
+        this.minY = new int[size];
+        this.maxY = new int[size];
+        this.masks = new long[size][];
+        this.bottoms = new int[size][];
+
+        for(int o = 0 ; o < size ; ++o){
+            int[] offsets = orientations.get(o);
+            int blocks = offsets.length / 2;
+
+            xOffsets[o] = new int[blocks];
+            yOffsets[o] = new int[blocks];
+            for(int i = 0 ; i < blocks ; ++i){
+                xOffsets[o][i] = offsets[2 * i];
+                yOffsets[o][i] = offsets[2 * i + 1];
+            }
+
+            minX[o] = Arrays.stream(xOffsets[o]).min().orElse(0);
+            maxX[o] = Arrays.stream(xOffsets[o]).max().orElse(0);
+            minY[o] = Arrays.stream(yOffsets[o]).min().orElse(0);
+            maxY[o] = Arrays.stream(yOffsets[o]).max().orElse(0);
+
+            masks[o] = new long[maxY[o] - minY[o] + 1];
+            for(int i = 0 ; i < blocks ; ++i)
+                masks[o][yOffsets[o][i] - minY[o]] |= 1L << (xOffsets[o][i] - minX[o]);
+
+            bottoms[o] = new int[maxX[o] - minX[o] + 1];
+            Arrays.fill(bottoms[o], Integer.MAX_VALUE);
+            for(int i = 0 ; i < blocks ; ++i)
+                bottoms[o][xOffsets[o][i] - minX[o]] = Math.min(bottoms[o][xOffsets[o][i] - minX[o]], yOffsets[o][i]);
+
+            left[o] = indexOf(orientations, rotate(tetromino, offsets, tetromino.left));
+            right[o] = indexOf(orientations, rotate(tetromino, offsets, tetromino.right));
+        }
+    }
+    /**
+     * @return the number of different orientations.
+     */
+    public int size(){
+        return xOffsets.length;
+    }
+    /**
+     * @param orientation the orientation.
+     * @return the number of blocks in the orientation.
+     */
+    public int getBlocks(int orientation){
+        return xOffsets[orientation].length;
+    }
+    /**
+     * @param orientation the orientation.
+     * @param block the index of the block.
+     * @return the x offset of the block from the center piece.
+     */
+    public int getX(int orientation, int block){
+        return xOffsets[orientation][block];
+    }
+    /**
+     * @param orientation the orientation.
+     * @param block the index of the block.
+     * @return the y offset of the block from the center piece.
+     */
+    public int getY(int orientation, int block){
+        return yOffsets[orientation][block];
+    }
+    /**
+     * @param orientation the current orientation.
+     * @return the orientation after rotating counter clockwise.
+     */
+    public int left(int orientation){
+        return left[orientation];
+    }
+    /**
+     * @param orientation the current orientation.
+     * @return the orientation after rotating clockwise.
+     */
+    public int right(int orientation){
+        return right[orientation];
+    }
+    /**
+     * @param orientation the orientation.
+     * @return the smallest x offset of all blocks.
+     */
+    public int getMinX(int orientation){
+        return minX[orientation];
+    }
+    /**
+     * @param orientation the orientation.
+     * @return the largest x offset of all blocks.
+     */
+    public int getMaxX(int orientation){
+        return maxX[orientation];
+    }
+    /**
+     * @param orientation the orientation.
+     * @return the smallest y offset of all blocks.
+     */
+    public int getMinY(int orientation){
+        return minY[orientation];
+    }
+    /**
+     * @param orientation the orientation.
+     * @return the largest y offset of all blocks.
+     */
+    public int getMaxY(int orientation){
+        return maxY[orientation];
+    }
+    /**
+     * Bit 0 of the mask corresponds to the smallest x offset, meaning the
+     * mask has to be shifted by the x coordinate of the center piece plus
+     * the smallest x offset before it can be compared with the field.
+     * @param orientation the orientation.
+     * @param yOff the y offset from the center piece.
+     * @return the blocks in the row with the given offset.
+     */
+    public long getMask(int orientation, int yOff){
+        if(yOff < minY[orientation] || yOff > maxY[orientation])
+            return 0L;
+        return masks[orientation][yOff - minY[orientation]];
+    }
+    /**
+     * @param orientation the orientation.
+     * @param xOff the x offset from the center piece.
+     * @return the y offset of the lowest block in the column with the given
+     * offset or {@link Integer#MAX_VALUE}, if the column is empty.
+     */
+    public int getBottom(int orientation, int xOff){
+        if(xOff < minX[orientation] || xOff > maxX[orientation])
+            return Integer.MAX_VALUE;
+        return bottoms[orientation][xOff - minX[orientation]];
+    }
+    /**
+     * @param tetromino the tetromino that is used to create the blocks.
+     * @param offsets the offsets of all blocks.
+     * @param rotation the rotation that is applied.
+     * @return the sorted offsets of all blocks after the rotation.
+     */
+    private static int[] rotate(Tetromino tetromino, int[] offsets, Rotation rotation){
+        int[] result = new int[offsets.length];
+        for(int i = 0 ; i < offsets.length ; i += 2){
+            Block block = tetromino.new Block(offsets[i], offsets[i + 1]);
+            result[i] = rotation.rotateX(block);
+            result[i + 1] = rotation.rotateY(block);
+        }
+        return sort(result);
+    }
+    /**
+     * Sorts the offsets first by their y and then by their x coordinate.
+     * @param offsets the offsets of all blocks.
+     * @return the sorted offsets.
+     */
+    private static int[] sort(int[] offsets){
+        List<int[]> blocks = new ArrayList<>();
+        for(int i = 0 ; i < offsets.length ; i += 2)
+            blocks.add(new int[]{offsets[i], offsets[i + 1]});
+
+        blocks.sort(Comparator.<int[]>comparingInt(b -> b[1]).thenComparingInt(b -> b[0]));
+        return blocks.stream().flatMapToInt(Arrays::stream).toArray();
+    }
+    /**
+     * @param orientations all orientations.
+     * @param offsets the offsets of a single orientation.
+     * @return the index of the orientation with the given offsets.
+     */
+    private static int indexOf(List<int[]> orientations, int[] offsets){
+        for(int i = 0 ; i < orientations.size() ; ++i)
+            if(Arrays.equals(orientations.get(i), offsets))
+                return i;
+        throw new IllegalStateException("The rotation doesn't lead to a known orientation.");
+    }
+}
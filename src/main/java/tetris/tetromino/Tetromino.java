@@ -1,9 +1,7 @@
 package tetris.tetromino;
 
 import tetris.Field;
-import tetris.Game;
 
-import java.awt.*;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -32,9 +30,9 @@ import java.util.function.Function;
  */
 public abstract class Tetromino {
     /**
-     * The color for a single block of the tetromino.
+     * The color for a single block of the tetromino as RGB value.
      */
-    protected final Color color;
+    protected final int color;
     /**
      * The function for rotating counter clockwise.
      */
@@ -56,18 +54,22 @@ public abstract class Tetromino {
      */
     protected final Field field;
     /**
-     * The four blocks that define this piece.
+     * The four blocks that define this piece in its initial orientation.
      */
     protected final Set<Block> blocks;
+    /**
+     * The index of the current orientation in the shape of this piece.
+     */
+    protected int orientation;
     /**
      * @param field the playing field.
      * @param xC the x coordinate of the center piece
      * @param yC the y coordinate of the center piece
      * @param left the function for rotating counter clockwise.
      * @param right the function for rotating clockwise.
-     * @param color the color for a single block.
+     * @param color the RGB value of the color for a single block.
      */
-    protected Tetromino(Field field, int xC, int yC, Rotation left, Rotation right, Color color){
+    protected Tetromino(Field field, int xC, int yC, Rotation left, Rotation right, int color){
         this.field = field;
         this.blocks = new HashSet<>(4);
         this.xC = xC;
@@ -89,13 +91,17 @@ public abstract class Tetromino {
      * Removes this tetromino from the field.
      */
     public void remove(){
-        blocks.forEach(b -> field.remove(b.getX(), b.getY()));
+        Shape shape = getShape();
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i)
+            field.remove(xC + shape.getX(orientation, i), yC + shape.getY(orientation, i));
     }
     /**
      * Puts this tetromino on the field.
      */
     public void put(){
-        blocks.forEach(b -> field.put(b.getX(), b.getY(), this));
+        Shape shape = getShape();
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i)
+            field.put(xC + shape.getX(orientation, i), yC + shape.getY(orientation, i), this);
     }
     /**
      * Pushes the tetromino down until it hits an obstacle.
@@ -105,12 +111,28 @@ public abstract class Tetromino {
         if(!canMoveDown())
             return false;
         
+        int distance = getDropDistance();
         remove();
-        while(canMoveDown())
-            yC -= 1;
+        yC -= distance;
         put();
         return true;
     }
+    /**
+     * The distance is computed from the height of the columns below the
+     * lowest block of this tetromino in each of its columns. The field
+     * finds each height in its column masks, without scanning the rows.
+     * @return the number of rows the tetromino can fall before it hits an
+     * obstacle.
+     */
+    public int getDropDistance(){
+        Shape shape = getShape();
+        int distance = Integer.MAX_VALUE;
+        for(int xOff = shape.getMinX(orientation) ; xOff <= shape.getMaxX(orientation) ; ++xOff){
+            int bottom = yC + shape.getBottom(orientation, xOff);
+            distance = Math.min(distance, bottom - field.getHeight(xC + xOff, bottom));
+        }
+        return Math.max(distance, 0);
+    }
     /**
      * Rotates the block counter clockwise.
      * @return true if the tetromino was moved as part of this function. 
@@ -120,7 +142,7 @@ public abstract class Tetromino {
             return false;
         
         remove();
-        blocks.forEach(Block::rotateLeft);
+        orientation = getShape().left(orientation);
         put();
         return true;
     }
@@ -133,7 +155,7 @@ public abstract class Tetromino {
             return false;
         
         remove();
-        blocks.forEach(Block::rotateRight);
+        orientation = getShape().right(orientation);
         put();
         return true;
     }
@@ -141,15 +163,13 @@ public abstract class Tetromino {
      * @return true if the tetromino can be rotated counter clockwise. 
      */
     public boolean canRotateLeft(){
-        return blocks.stream()
-                .allMatch(b -> field.isValid(b.getLeftRotateX(), b.getLeftRotateY()));
+        return inBounds(0, 0, getShape().left(orientation));
     }
     /**
      * @return true if the tetromino can be rotated clockwise. 
      */
     public boolean canRotateRight(){
-        return blocks.stream()
-                .allMatch(b -> field.isValid(b.getRightRotateX(), b.getRightRotateY()));
+        return inBounds(0, 0, getShape().right(orientation));
     }
     /**
      * Moves the tetromino one step left.
@@ -195,75 +215,136 @@ public abstract class Tetromino {
      * @return true if the tetromino can be moved to the left. 
      */
     public boolean canMoveLeft(){
-        return canMove(x -> x - 1, y -> y);
+        return canPlace(-1, 0, orientation);
     }
     /**
      * @return true if the tetromino can be moved to the right. 
      */
     public boolean canMoveRight(){
-        return canMove(x -> x + 1, y -> y);
+        return canPlace(1, 0, orientation);
     }
     /**
      * @return true if the tetromino can fall. 
      */
     public boolean canMoveDown(){
-        return canMove(x -> x, y -> y - 1);
-        
+        return canPlace(0, -1, orientation);
     }
     /**
      * @return true if this tetromino overlaps with another tetromino. 
      */
     public boolean hasCollision(){
-        return hasCollision(x -> x, y -> y);
+        return hasCollision(0, 0, orientation);
     }
     /**
      * @return true if this tetromino is within the game field.
      */
     public boolean inBounds(){
-        return inBounds(x -> x, y -> y);
+        return inBounds(0, 0, orientation);
     }
     /**
-     * @param moveX the horizontal change.
-     * @param moveY the vertical change.
+     * Checks whether the tetromino can be moved to the given position
+     * without leaving the game field or overlapping with another tetromino.
+     * <br>
+     * Blocks that belong to this tetromino are ignored, so the check can
+     * be done while the tetromino is still on the field.
+     * @param dx the horizontal change.
+     * @param dy the vertical change.
+     * @param orientation the orientation of the tetromino.
+     * @return true if the tetromino can be moved and rotated accordingly.
+     */
+    public boolean canPlace(int dx, int dy, int orientation){
+        Shape shape = getShape();
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i){
+            int x = xC + dx + shape.getX(orientation, i);
+            int y = yC + dy + shape.getY(orientation, i);
+            if(!field.isValid(x, y))
+                return false;
+            
+            Tetromino tetromino = field.get(x, y);
+            if(tetromino != null && tetromino != this)
+                return false;
+        }
+        return true;
+    }
+    /**
+     * @param dx the horizontal change.
+     * @param dy the vertical change.
+     * @param orientation the orientation of the tetromino.
      * @return true if the moved tetromino is still within the game field.
      */
-    private boolean inBounds(Function<Integer,Integer> moveX, Function<Integer,Integer> moveY){
-        return blocks.stream()
-                .allMatch(b -> field.isValid(moveX.apply(b.getX()), moveY.apply(b.getY())));
+    private boolean inBounds(int dx, int dy, int orientation){
+        Shape shape = getShape();
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i)
+            if(!field.isValid(xC + dx + shape.getX(orientation, i), yC + dy + shape.getY(orientation, i)))
+                return false;
+        return true;
     }
     /**
-     * @param moveX the horizontal change.
-     * @param moveY the vertical change.
+     * @param dx the horizontal change.
+     * @param dy the vertical change.
+     * @param orientation the orientation of the tetromino.
      * @return true this tetromino collides with other tetrominos after moving it.
      */
-    private boolean hasCollision(Function<Integer,Integer> moveX, Function<Integer,Integer> moveY){
-        return blocks.stream()
-                .map(b -> field.get(moveX.apply(b.getX()), moveY.apply(b.getY())))
-                .anyMatch(t -> t != null && t != this);
+    private boolean hasCollision(int dx, int dy, int orientation){
+        Shape shape = getShape();
+        for(int i = 0 ; i < shape.getBlocks(orientation) ; ++i){
+            Tetromino tetromino = field.get(xC + dx + shape.getX(orientation, i), yC + dy + shape.getY(orientation, i));
+            if(tetromino != null && tetromino != this)
+                return true;
+        }
+        return false;
     }
     /**
      * @return true if the tetromino was successfully put on the field. 
      */
     public boolean toField(){
-        if(!canMove(x -> x, y -> y))
+        if(!canPlace(0, 0, orientation))
             return false;
         
-        blocks.forEach(b -> field.put(b.getX(), b.getY(), this));
+        put();
         return true;
     }
     /**
-     * @param moveX the horizontal change.
-     * @param moveY the vertical change.
-     * @return true if the tetromino can be moved in the given direction. 
+     * @return the RGB value of the color of the individual blocks.
      */
-    private boolean canMove(Function<Integer,Integer> moveX, Function<Integer,Integer> moveY){
-        return inBounds(moveX, moveY) && !hasCollision(moveX, moveY);
+    public int getColor(){
+        return color;
     }
     /**
-     * @return the color of the individual blocks. 
+     * @return the type of this tetromino.
      */
-    public Color getColor(){
-        return color;
+    public abstract Type getType();
+    /**
+     * @return all orientations of this tetromino.
+     */
+    public Shape getShape(){
+        return getType().getShape();
+    }
+    /**
+     * @return the index of the current orientation in the shape.
+     */
+    public int getOrientation(){
+        return orientation;
+    }
+    /**
+     * Changes the orientation without checking the field. The tetromino
+     * should not be on the field while its orientation is changed.
+     * @param orientation the index of the new orientation in the shape.
+     */
+    public void setOrientation(int orientation){
+        this.orientation = orientation;
+    }
+    /**
+     * @return the x coordinate of the center piece.
+     */
+    public int getX(){
+        return xC;
+    }
+    /**
+     * @return the y coordinate of the center piece.
+     */
+    public int getY(){
+        return yC;
     }
     /**
      * The class for a single block in the tetrominoes.
@@ -426,26 +507,50 @@ public abstract class Tetromino {
         ZBLOCK(ZBlock::create);
         
         /**
-         * @param game the game the tetromino is in.
+         * @param field the field the tetromino is in.
          * @param x the x coordinate of the center.
          * @param y the y coordinate of the center.
          * @return a fresh tetromino. 
          */
-        public Tetromino create(Game game, int x, int y){
-            return generator.apply(game, x, y);
+        public Tetromino create(Field field, int x, int y){
+            return generator.apply(field, x, y);
+        }
+        /**
+         * @return all orientations of this type.
+         */
+        public Shape getShape(){
+            return shape;
+        }
+        /**
+         * @return the RGB value of every tetromino of this type.
+         */
+        public int getColor(){
+            return color;
         }
         
         /**
          * The generator for the games.<br>
-         * Takes the x and y coordinate of the center piece and a game and
-         * creates a tetromino in the given game.
+         * Takes the x and y coordinate of the center piece and a field and
+         * creates a tetromino in the given field.
+         */
+        private final TriFunction<Field,Integer,Integer,Tetromino> generator;
+        /**
+         * The orientations of this type, computed from a tetromino in its
+         * initial orientation.
+         */
+        private final Shape shape;
+        /**
+         * The color of every tetromino of this type.
          */
-        private final TriFunction<Game,Integer,Integer,Tetromino> generator;
+        private final int color;
         /**
          * @param generator the generator for the blocks. 
          */
-        Type(TriFunction<Game, Integer, Integer, Tetromino> generator){
+        Type(TriFunction<Field, Integer, Integer, Tetromino> generator){
+            Tetromino prototype = generator.apply(null, 0, 0);
             this.generator = generator;
+            this.shape = new Shape(prototype);
+            this.color = prototype.getColor();
         }
     }
     /**
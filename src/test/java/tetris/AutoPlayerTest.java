@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import tetris.tetromino.Tetromino.Type;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class AutoPlayerTest {
+    @Test
+    public void planTest(){
+        Game game = new Game(10, 20, (i,j) -> {});
+        AutoPlayer player = new AutoPlayer(game, 1, ForkJoinPool.commonPool());
+        long[] board = new long[20];
+        //A well in the rightmost column
+        for(int y = 0 ; y < 4 ; ++y)
+            board[y] = 0x1FF;
+        
+        int[] plan = player.plan(board, 10, Type.IBLOCK.getShape(), 5, 18, 0, new Type[0], 0, Long.MAX_VALUE);
+        assertArrayEquals(new int[]{0, 9}, plan);
+    }
+    @Test
+    public void previewTest(){
+        Game game = new Game(10, 20, (i,j) -> {});
+        AutoPlayer player = new AutoPlayer(game, 2, ForkJoinPool.commonPool());
+        long[] board = new long[20];
+        for(int y = 0 ; y < 4 ; ++y)
+            board[y] = 0x1FF;
+        
+        //The well in the rightmost column is kept open for the I block
+        int[] plan = player.plan(board, 10, Type.OBLOCK.getShape(), 5, 18, 0, new Type[]{Type.IBLOCK}, 1, Long.MAX_VALUE);
+        assertNotNull(plan);
+        assertEquals(0, plan[0]);
+        assertNotEquals(8, plan[1]);
+    }
+    @Test
+    public void playTest(){
+        //The wheel only advances by hand, so the search is never cut short
+        Scheduler scheduler = new Scheduler(Runnable::run, 1, TimeUnit.HOURS, 16);
+        Game game = new Game(10, 20, (column, row, width, height) -> {}, 1, TimeUnit.HOURS, scheduler, Randomizer.bag(5));
+        AutoPlayer player = new AutoPlayer(game);
+        game.start();
+        
+        int ticks = 0;
+        while(game.getLines() < 10 && game.isRunning() && ticks < 1000){
+            player.move();
+            scheduler.advance();
+            ++ticks;
+        }
+        
+        game.dispose();
+        scheduler.shutdown();
+        assertTrue("Only "+game.getLines()+" lines after "+ticks+" ticks", game.getLines() >= 10);
+    }
+}
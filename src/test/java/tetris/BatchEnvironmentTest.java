@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import tetris.tetromino.Tetromino;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class BatchEnvironmentTest {
+    @Test
+    public void resetTest(){
+        BatchEnvironment environment = new BatchEnvironment(100, 10, 20, Randomizer.Kind.UNIFORM, 1);
+        long[] observations = environment.getObservations();
+        for(int board = 0 ; board < environment.size() ; ++board){
+            int blocks = 0;
+            for(int row = 0 ; row < 20 ; ++row)
+                blocks += Long.bitCount(observations[board * 20 + row]);
+            //Only the falling tetromino at the top
+            assertEquals(4, blocks);
+            assertEquals(0, Long.bitCount(observations[board * 20 + 15]));
+            assertFalse(environment.getDone()[board]);
+        }
+    }
+    @Test
+    public void invalidTest(){
+        int[][] arguments = {{0, 10, 20}, {-1, 10, 20}, {1, 2, 20}, {1, 10, 2}, {1, 0, 0}, {1, 4, 3}, {1, 65, 20}};
+        for(int[] argument : arguments){
+            try{
+                new BatchEnvironment(argument[0], argument[1], argument[2], Randomizer.Kind.BAG, 1);
+                fail();
+            }catch(IllegalArgumentException e){
+                //The boards are rejected before a tetromino is placed
+            }
+        }
+        //A small board every tetromino fits into
+        new BatchEnvironment(1, 4, 4, Randomizer.Kind.BAG, 1);
+    }
+    @Test
+    public void fallDownTest(){
+        BatchEnvironment environment = new BatchEnvironment(10, 10, 40, Randomizer.Kind.BAG, 2);
+        int[] actions = new int[10];
+        Arrays.fill(actions, BatchEnvironment.FALL_DOWN);
+        
+        Set<Integer> types = new HashSet<>();
+        for(int i = 0 ; i < 7 ; ++i){
+            types.add(environment.getTypes()[3]);
+            environment.step(actions);
+            assertFalse(environment.getDone()[3]);
+        }
+        //Every type once per bag
+        assertEquals(7, types.size());
+        
+        long[] observations = environment.getObservations();
+        int blocks = 0;
+        for(int row = 0 ; row < 40 ; ++row)
+            blocks += Long.bitCount(observations[3 * 40 + row]);
+        assertEquals(8 * 4, blocks);
+    }
+    @Test
+    public void deterministicTest(){
+        BatchEnvironment first = new BatchEnvironment(300, 6, 10, Randomizer.Kind.UNIFORM, 3);
+        BatchEnvironment second = new BatchEnvironment(300, 6, 10, Randomizer.Kind.UNIFORM, 3, new ForkJoinPool(1));
+        Random random = new Random(4);
+        int[] actions = new int[300];
+        long lines = 0;
+        long games = 0;
+        for(int step = 0 ; step < 2000 ; ++step){
+            for(int i = 0 ; i < actions.length ; ++i)
+                actions[i] = random.nextInt(6);
+            first.step(actions);
+            second.step(actions);
+            assertArrayEquals(first.getObservations(), second.getObservations());
+            for(int i = 0 ; i < actions.length ; ++i){
+                assertEquals(first.getRewards()[i], second.getRewards()[i], 0);
+                assertEquals(first.getDone()[i], second.getDone()[i]);
+                lines += first.getRewards()[i];
+                games += first.getDone()[i] ? 1 : 0;
+            }
+        }
+        assertTrue(lines > 0);
+        assertTrue(games > 0);
+    }
+    @Test
+    public void simulationTest(){
+        BatchEnvironment environment = new BatchEnvironment(1, 10, 20, Randomizer.Kind.BAG, 5);
+        //The simulation takes the same types as the board
+        Simulation simulation = new Simulation(10, 20, Randomizer.bag(5)){
+            @Override
+            protected Tetromino newTetromino(){
+                return Tetromino.Type.values()[environment.getTypes()[0]].create(this, xStart, yStart);
+            }
+        };
+        simulation.start();
+        
+        Random random = new Random(6);
+        int[] actions = new int[1];
+        int[] inputs = {BatchEnvironment.MOVE_LEFT, BatchEnvironment.MOVE_RIGHT, BatchEnvironment.FALL_DOWN, BatchEnvironment.NONE};
+        int placed = 0;
+        long lines = 0;
+        for(int step = 0 ; step < 1000 ; ++step){
+            //Rotations are only compared while the tetromino is high above the stack
+            boolean rotate = step % 20 < 2;
+            actions[0] = rotate ? (step % 2 == 0 ? BatchEnvironment.ROTATE_LEFT : BatchEnvironment.ROTATE_RIGHT) : inputs[random.nextInt(inputs.length)];
+            Tetromino current = simulation.getCurrentBlock();
+            environment.step(actions);
+            switch(actions[0]){
+                case BatchEnvironment.MOVE_LEFT:
+                    simulation.moveLeft();
+                    break;
+                case BatchEnvironment.MOVE_RIGHT:
+                    simulation.moveRight();
+                    break;
+                case BatchEnvironment.ROTATE_LEFT:
+                    simulation.rotateLeft();
+                    break;
+                case BatchEnvironment.ROTATE_RIGHT:
+                    simulation.rotateRight();
+                    break;
+                case BatchEnvironment.FALL_DOWN:
+                    simulation.fallDown();
+                    break;
+            }
+            //Every step ends with a tick, so a tetromino that has fallen down is placed right away
+            simulation.step();
+            if(simulation.getCurrentBlock() != current)
+                ++placed;
+            
+            lines += environment.getRewards()[0];
+            if(environment.getDone()[0]){
+                //The board has already started a new game
+                assertFalse(simulation.isRunning());
+                break;
+            }
+            for(int row = 0 ; row < 20 ; ++row)
+                assertEquals(environment.getObservations()[row], simulation.getMask(row));
+            assertEquals(lines, simulation.getLines());
+        }
+        assertTrue(placed > 10);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+import tetris.tetromino.OBlock;
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class BitFieldTest {
+    BitField field;
+    Tetromino tetromino;
+    @Before
+    public void setUp(){
+        field = new BitField(5,7);
+        tetromino = OBlock.create(field, 2, 2);
+
+        field.put(2, 2, tetromino);
+        field.put(2, 4, tetromino);
+
+        for(int x = 0 ; x < 5 ; ++x)
+            field.put(x, 3, tetromino);
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyColumnsTest(){
+        new BitField(65, 1);
+    }
+    @Test
+    public void putTest(){
+        assertEquals(field.put(0, 0, tetromino),tetromino);
+
+        assertEquals(field.field[0][0], tetromino);
+        assertEquals(field.getMask(0), 0b00001);
+        assertEquals(field.getType(0, 0), Type.OBLOCK);
+    }
+    @Test
+    public void putNullTest(){
+        assertNull(field.put(2, 2, null));
+
+        assertEquals(field.getMask(2), 0L);
+        assertNull(field.getType(2, 2));
+    }
+    @Test
+    public void putInvalidTest(){
+        assertNull(field.put(-1, 0, tetromino));
+        assertEquals(field.getMask(0), 0L);
+    }
+    @Test
+    public void removeTest(){
+        assertEquals(field.remove(2, 3), tetromino);
+
+        assertNull(field.field[3][2]);
+        assertEquals(field.getMask(3), 0b11011);
+        assertNull(field.getType(2, 3));
+    }
+    @Test
+    public void removeRowTest(){
+        assertTrue(field.remove(3));
+
+        assertEquals(field.getMask(2), 0b00100);
+        assertEquals(field.getMask(3), 0b00100);
+        assertEquals(field.getMask(4), 0L);
+        assertEquals(field.getMask(6), 0L);
+        assertEquals(field.getType(2, 3), Type.OBLOCK);
+        assertNull(field.getType(2, 4));
+
+        assertEquals(field.field[3][2], tetromino);
+        assertNull(field.field[4][2]);
+    }
+    @Test
+    public void removeTopRowTest(){
+        field.put(1, 6, tetromino);
+        assertTrue(field.remove(6));
+
+        assertEquals(field.getMask(6), 0L);
+        assertNull(field.get(1, 6));
+    }
+    @Test
+    public void removeInvalidRowTest(){
+        assertFalse(field.remove(-1));
+    }
+    @Test
+    public void removeRowsTest(){
+        for(int x = 0 ; x < 5 ; ++x)
+            field.put(x, 5, tetromino);
+        field.put(0, 6, tetromino);
+
+        assertEquals(field.removeRows(), 2);
+
+        assertEquals(field.toString(),".....\n.....\nX....\n..X..\n..X..\n.....\n.....\n");
+        assertEquals(field.getMask(2), 0b00100);
+        assertEquals(field.getMask(3), 0b00100);
+        assertEquals(field.getMask(4), 0b00001);
+        assertEquals(field.getMask(5), 0L);
+        assertEquals(field.getType(0, 4), Type.OBLOCK);
+        assertNull(field.getType(0, 6));
+    }
+    @Test
+    public void clearTest(){
+        field.clear();
+
+        for(int y = 0 ; y < 7 ; ++y){
+            assertEquals(field.getMask(y), 0L);
+            for(int x = 0 ; x < 5 ; ++x){
+                assertNull(field.get(x, y));
+                assertNull(field.getType(x, y));
+            }
+        }
+    }
+    @Test
+    public void clearRowTest(){
+        field.clear(3);
+
+        assertEquals(field.getMask(3), 0L);
+        assertNull(field.get(2, 3));
+        assertEquals(field.get(2, 2), tetromino);
+        assertEquals(field.get(2, 4), tetromino);
+    }
+    @Test
+    public void isFullTest(){
+        assertFalse(field.isFull(2));
+        assertTrue(field.isFull(3));
+        assertFalse(field.isFull(4));
+        assertFalse(field.isFull(-1));
+    }
+    @Test
+    public void isFullWideTest(){
+        field = new BitField(64, 1);
+        for(int x = 0 ; x < 64 ; ++x)
+            field.put(x, 0, tetromino);
+
+        assertTrue(field.isFull(0));
+    }
+    @Test
+    public void getCountTest(){
+        assertEquals(field.getCount(2), 1);
+        assertEquals(field.getCount(3), 5);
+        assertEquals(field.getCount(5), 0);
+        assertEquals(field.getCount(-1), 0);
+    }
+    @Test
+    public void getHeightTest(){
+        assertEquals(field.getHeight(0), 4);
+        assertEquals(field.getHeight(2), 5);
+        assertEquals(field.getHeight(5), 0);
+        assertEquals(field.getHeight(-1), 0);
+    }
+    @Test
+    public void getHeightRemoveTest(){
+        field.remove(2, 4);
+        assertEquals(field.getHeight(2), 4);
+
+        field.remove(2, 3);
+        assertEquals(field.getHeight(2), 3);
+
+        field.remove(2, 2);
+        assertEquals(field.getHeight(2), 0);
+    }
+    @Test
+    public void getHeightRemoveRowTest(){
+        field.remove(3);
+
+        assertEquals(field.getHeight(0), 0);
+        assertEquals(field.getHeight(2), 4);
+    }
+    @Test
+    public void getHeightRemoveRowsTest(){
+        field.removeRows();
+
+        assertEquals(field.getHeight(0), 0);
+        assertEquals(field.getHeight(2), 4);
+    }
+    @Test
+    public void getHeightClearTest(){
+        field.clear(4);
+        assertEquals(field.getHeight(2), 4);
+
+        field.clear();
+        assertEquals(field.getHeight(2), 0);
+    }
+    @Test
+    public void getHeightBelowTest(){
+        assertEquals(field.getHeight(2, 7), 5);
+        assertEquals(field.getHeight(2, 10), 5);
+        assertEquals(field.getHeight(2, 4), 4);
+        assertEquals(field.getHeight(2, 3), 3);
+        assertEquals(field.getHeight(2, 2), 0);
+        assertEquals(field.getHeight(2, 0), 0);
+        assertEquals(field.getHeight(-1, 3), 0);
+    }
+    @Test
+    public void getHeightTallTest(){
+        field = new BitField(3, 150);
+        field.put(1, 10, tetromino);
+        field.put(1, 70, tetromino);
+        field.put(1, 140, tetromino);
+
+        assertEquals(field.getHeight(1), 141);
+        assertEquals(field.getHeight(1, 140), 71);
+        assertEquals(field.getHeight(1, 64), 11);
+        assertEquals(field.getHeight(1, 11), 11);
+        assertEquals(field.getHeight(1, 10), 0);
+
+        field.remove(1, 70);
+        assertEquals(field.getHeight(1, 140), 11);
+
+        field.remove(0);
+        assertEquals(field.getHeight(1), 140);
+        assertEquals(field.getHeight(1, 139), 10);
+    }
+    @Test
+    public void getHeightRandomTest(){
+        Random random = new Random(0);
+        Field expected = new Field(10, 70);
+        field = new BitField(10, 70);
+
+        for(int i = 0 ; i < 5000 ; ++i){
+            int x = random.nextInt(10);
+            int y = random.nextInt(70);
+            switch(random.nextInt(8)){
+                case 0:
+                    expected.remove(y);
+                    field.remove(y);
+                    break;
+                case 1:
+                    expected.removeRows();
+                    field.removeRows();
+                    break;
+                case 2:
+                case 3:
+                    expected.remove(x, y);
+                    field.remove(x, y);
+                    break;
+                default:
+                    expected.put(x, y, tetromino);
+                    field.put(x, y, tetromino);
+            }
+            for(int column = 0 ; column < 10 ; ++column)
+                assertEquals(field.getHeight(column, y), expected.getHeight(column, y));
+        }
+        assertEquals(field.toString(), expected.toString());
+    }
+    @Test
+    public void getMaskInvalidTest(){
+        assertEquals(field.getMask(-1), 0L);
+        assertEquals(field.getMask(7), 0L);
+    }
+    @Test
+    public void getTypeInvalidTest(){
+        assertNull(field.getType(-1, 3));
+    }
+    @Test
+    public void intersectsTest(){
+        assertFalse(field.intersects(2, 0b00011));
+        assertTrue(field.intersects(2, 0b00110));
+        assertTrue(field.intersects(2, 0b11 << 4));
+        assertTrue(field.intersects(-1, 0b1));
+        assertFalse(field.intersects(-1, 0L));
+    }
+    @Test
+    public void toStringTest(){
+        assertEquals(field.toString(),".....\n.....\n..X..\nXXXXX\n..X..\n.....\n.....\n");
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class ChangeListenerTest {
+    @Test
+    public void ofTest(){
+        List<String> list = new ArrayList<>();
+        ChangeListener listener = ChangeListener.of((x,y) -> list.add(x+","+y));
+        
+        listener.changed(1, 2, 2, 2);
+        
+        assertEquals(list, Arrays.asList("1,3", "2,3", "1,2", "2,2"));
+    }
+    @Test
+    public void ofEmptyTest(){
+        List<String> list = new ArrayList<>();
+        ChangeListener listener = ChangeListener.of((x,y) -> list.add(x+","+y));
+        
+        listener.changed(1, 2, 0, 0);
+        
+        assertTrue(list.isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class CommandQueueTest {
+    CommandQueue queue;
+    @Before
+    public void setUp(){
+        queue = new CommandQueue(4);
+    }
+    @Test
+    public void offerTest(){
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertEquals(queue.size(), 2);
+        assertFalse(queue.isEmpty());
+    }
+    @Test
+    public void pollTest(){
+        queue.offer(1);
+        queue.offer(2);
+
+        assertEquals(queue.poll(), 1);
+        assertEquals(queue.poll(), 2);
+        assertEquals(queue.poll(), CommandQueue.EMPTY);
+        assertTrue(queue.isEmpty());
+    }
+    @Test
+    public void pollEmptyTest(){
+        assertEquals(queue.poll(), CommandQueue.EMPTY);
+    }
+    @Test
+    public void capacityTest(){
+        assertEquals(queue.capacity(), 4);
+        assertEquals(new CommandQueue(5).capacity(), 8);
+        assertEquals(new CommandQueue(1).capacity(), 2);
+    }
+    @Test
+    public void dropTest(){
+        for(int i = 0 ; i < 4 ; ++i)
+            assertTrue(queue.offer(i));
+        assertFalse(queue.offer(4));
+        assertEquals(queue.getDrops(), 1);
+        assertEquals(queue.size(), 4);
+
+        assertEquals(queue.poll(), 0);
+        assertTrue(queue.offer(4));
+        assertEquals(queue.getDrops(), 1);
+    }
+    @Test
+    public void wrapTest(){
+        for(int i = 0 ; i < 100 ; ++i){
+            assertTrue(queue.offer(i));
+            assertEquals(queue.poll(), i);
+        }
+        assertTrue(queue.isEmpty());
+    }
+    @Test
+    public void concurrentTest() throws InterruptedException{
+        CommandQueue queue = new CommandQueue(1024);
+        int producers = 4;
+        int count = 10000;
+        CountDownLatch latch = new CountDownLatch(producers);
+        for(int p = 0 ; p < producers ; ++p){
+            int producer = p;
+            new Thread(() -> {
+                for(int i = 0 ; i < count ; ++i)
+                    while(!queue.offer(producer * count + i))
+                        Thread.yield();
+                latch.countDown();
+            }).start();
+        }
+
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        int received = 0;
+        while(received < producers * count){
+            int command = queue.poll();
+            if(command == CommandQueue.EMPTY){
+                Thread.yield();
+                continue;
+            }
+            //Commands of the same producer stay in order
+            assertTrue(command % count > last[command / count]);
+            last[command / count] = command % count;
+            ++received;
+        }
+        latch.await();
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -20,6 +20,7 @@ import org.junit.Before;
 import org.junit.Test;
 import tetris.tetromino.OBlock;
 import tetris.tetromino.Tetromino;
+import tetris.tetromino.ZBlock;
 
 import static org.junit.Assert.*;
 
@@ -35,14 +36,14 @@ public class FieldTest {
         field = new Game(5,7,(i,j) -> {});
         tetromino = OBlock.create(field, 2, 2);
         
-        field.field[2][2] = tetromino;
-        field.field[4][2] = tetromino;
+        field.put(2, 2, tetromino);
+        field.put(2, 4, tetromino);
         
-        field.field[3][0] = tetromino;
-        field.field[3][1] = tetromino;
-        field.field[3][2] = tetromino;
-        field.field[3][3] = tetromino;
-        field.field[3][4] = tetromino;
+        field.put(0, 3, tetromino);
+        field.put(1, 3, tetromino);
+        field.put(2, 3, tetromino);
+        field.put(3, 3, tetromino);
+        field.put(4, 3, tetromino);
     }
     @Test
     public void putTest(){
@@ -83,6 +84,24 @@ public class FieldTest {
         assertFalse(field.remove(-1));
     }
     @Test
+    public void removeRowsTest(){
+        for(int x = 0 ; x < 5 ; ++x)
+            field.put(x, 5, tetromino);
+        
+        assertEquals(field.removeRows(), 2);
+        
+        assertEquals(field.toString(),".....\n.....\n.....\n..X..\n..X..\n.....\n.....\n");
+        assertFalse(field.isFull(3));
+        assertFalse(field.isFull(4));
+    }
+    @Test
+    public void removeRowsEmptyTest(){
+        field.clear(3);
+        
+        assertEquals(field.removeRows(), 0);
+        assertEquals(field.toString(),".....\n.....\n..X..\n.....\n..X..\n.....\n.....\n");
+    }
+    @Test
     public void clearTest(){
         field.clear();
         
@@ -124,6 +143,47 @@ public class FieldTest {
         assertFalse(field.isFull(-1));
     }
     @Test
+    public void getCountTest(){
+        assertEquals(field.getCount(2), 1);
+        assertEquals(field.getCount(3), 5);
+        assertEquals(field.getCount(5), 0);
+        assertEquals(field.getCount(-1), 0);
+    }
+    @Test
+    public void getMaskTest(){
+        assertEquals(field.getMask(3), 0b11111L);
+        assertEquals(field.getMask(2), 0b00100L);
+        assertEquals(field.removeRows(), 1);
+        assertEquals(field.getMask(3), 0b00100L);
+        assertEquals(field.getMask(-1), 0L);
+    }
+    @Test
+    public void fixtureHashTest(){
+        Field other = new Field(5, 7);
+        for(int y = 0 ; y < 7 ; ++y)
+            for(int x = 0 ; x < 5 ; ++x)
+                other.put(x, y, field.get(x, y));
+        assertEquals(field.getHash(), other.getHash());
+        assertTrue(field.contentEquals(other));
+    }
+    @Test
+    public void getHeightTest(){
+        assertEquals(field.getHeight(0), 4);
+        assertEquals(field.getHeight(2), 5);
+        assertEquals(field.getHeight(-1), 0);
+        
+        field.clear(3);
+        assertEquals(field.getHeight(0), 0);
+    }
+    @Test
+    public void getHeightBelowTest(){
+        assertEquals(field.getHeight(2, 7), 5);
+        assertEquals(field.getHeight(2, 4), 4);
+        assertEquals(field.getHeight(2, 3), 3);
+        assertEquals(field.getHeight(2, 2), 0);
+        assertEquals(field.getHeight(2, 0), 0);
+    }
+    @Test
     public void getTest(){
         assertEquals(field.get(2, 3), tetromino);
         assertNull(field.get(-1, 3));
@@ -147,4 +207,50 @@ public class FieldTest {
     public void toStringTest(){
         assertEquals(field.toString(),".....\n.....\n..X..\nXXXXX\n..X..\n.....\n.....\n");
     }
+    @Test
+    public void hashTest(){
+        Field first = new Field(5, 7);
+        Field second = new BitField(5, 7);
+        long empty = first.getHash();
+        
+        first.put(1, 2, tetromino);
+        first.put(3, 4, ZBlock.create(first, 3, 4));
+        second.put(3, 4, ZBlock.create(second, 3, 4));
+        second.put(1, 2, OBlock.create(second, 1, 2));
+        assertEquals(first.getHash(), second.getHash());
+        assertTrue(first.contentEquals(second));
+        
+        //The type is part of the hash
+        second.put(1, 2, ZBlock.create(second, 1, 2));
+        assertNotEquals(first.getHash(), second.getHash());
+        assertFalse(first.contentEquals(second));
+        
+        first.remove(1, 2);
+        first.remove(3, 4);
+        assertEquals(first.getHash(), empty);
+    }
+    @Test
+    public void hashRemoveRowsTest(){
+        Field first = new Field(2, 5);
+        Field second = new Field(2, 5);
+        for(int x = 0 ; x < 2 ; ++x){
+            first.put(x, 0, tetromino);
+            first.put(x, 2, tetromino);
+        }
+        first.put(1, 1, tetromino);
+        first.put(0, 3, tetromino);
+        second.put(1, 0, tetromino);
+        second.put(0, 1, tetromino);
+        
+        assertEquals(first.removeRows(), 2);
+        assertEquals(first.getHash(), second.getHash());
+        
+        first.put(0, 2, tetromino);
+        second.put(0, 1, null);
+        second.put(0, 2, tetromino);
+        assertTrue(first.remove(1));
+        second.remove(1);
+        assertEquals(first.getHash(), second.getHash());
+        assertTrue(first.contentEquals(second));
+    }
 }
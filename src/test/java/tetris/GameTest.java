@@ -25,6 +25,7 @@ import tetris.tetromino.ZBlock;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -46,7 +47,50 @@ public class GameTest {
     @After
     public void tearDown(){
         if(game.session != null)
-            game.session.cancel(true);
+            game.session.cancel();
+    }
+    @Test
+    public void startTest(){
+        Scheduler scheduler = new Scheduler(Runnable::run, 1, TimeUnit.MILLISECONDS, 16);
+        game = new Game(4, 20, (i,j) -> {}, 1, TimeUnit.MILLISECONDS, scheduler);
+        game.start();
+        
+        assertEquals(scheduler.size(), 1);
+        assertEquals(game.getTicks(), 0);
+        
+        //The session enters the wheel in the first step and is due in the next
+        scheduler.advance();
+        scheduler.advance();
+        
+        assertEquals(game.getTicks(), 1);
+        
+        game.dispose();
+        assertEquals(scheduler.size(), 0);
+        assertFalse(game.isRunning());
+        
+        scheduler.advance();
+        assertEquals(game.getTicks(), 1);
+        scheduler.shutdown();
+    }
+    @Test
+    public void pauseTest(){
+        Scheduler scheduler = new Scheduler(Runnable::run, 1, TimeUnit.MILLISECONDS, 16);
+        game = new Game(4, 20, (i,j) -> {}, 1, TimeUnit.MILLISECONDS, scheduler);
+        game.start();
+        game.pause();
+        assertTrue(game.isPaused());
+        
+        for(int i = 0 ; i < 20 ; ++i)
+            scheduler.advance();
+        assertEquals(game.getTicks(), 0);
+        
+        game.resume();
+        assertFalse(game.isPaused());
+        scheduler.advance();
+        assertEquals(game.getTicks(), 1);
+        
+        game.dispose();
+        scheduler.shutdown();
     }
     @Test
     public void putTest(){
@@ -54,6 +98,16 @@ public class GameTest {
         assertEquals(list.size(),1);
     }
     @Test
+    public void snapshotTest(){
+        Snapshot snapshot = game.getSnapshot();
+        game.put(0,2,tetromino);
+        
+        assertNull(snapshot.getType(0, 2));
+        assertEquals(game.getSnapshot().getType(0, 2), Tetromino.Type.OBLOCK);
+        assertEquals(game.getSnapshot().getType(1, 0), Tetromino.Type.OBLOCK);
+        assertEquals(game.getSnapshot().getVersion(), snapshot.getVersion() + 1);
+    }
+    @Test
     public void removeTest(){
         assertEquals(game.remove(1,0),tetromino);
         assertEquals(list.size(),1);
@@ -61,7 +115,106 @@ public class GameTest {
     @Test
     public void removeRowTest(){
         assertTrue(game.remove(1));
+        assertEquals(list.size(),4*2);
+    }
+    @Test
+    public void removeRowsTest(){
+        game.put(0, 0, tetromino);
+        game.put(3, 0, tetromino);
+        game.put(0, 1, tetromino);
+        game.put(3, 1, tetromino);
+        list.clear();
+        
+        assertEquals(game.removeRows(), 2);
         assertEquals(list.size(),4*3);
+        assertNull(game.get(1, 0));
+        assertNull(game.get(1, 1));
+    }
+    @Test
+    public void listenerTest(){
+        List<int[]> changes = new ArrayList<>();
+        game = new Game(4, 3, (x,y,w,h) -> changes.add(new int[]{x,y,w,h}));
+        game.currentBlock = OBlock.create(game, 1, 0);
+        game.currentBlock.put();
+        changes.clear();
+        
+        game.moveRight();
+        
+        assertEquals(changes.size(), 1);
+        assertArrayEquals(changes.get(0), new int[]{1,0,3,2});
+    }
+    @Test
+    public void addListenerTest(){
+        List<int[]> changes = new ArrayList<>();
+        ChangeListener listener = (x,y,w,h) -> changes.add(new int[]{x,y,w,h});
+        game.currentBlock = tetromino;
+        game.addListener(listener);
+        game.moveRight();
+        
+        assertEquals(changes.size(), 1);
+        assertArrayEquals(changes.get(0), new int[]{1,0,3,2});
+        assertFalse(list.isEmpty());
+        
+        game.removeListener(listener);
+        game.moveLeft();
+        
+        assertEquals(changes.size(), 1);
+    }
+    @Test
+    public void listenerFailureTest(){
+        List<int[]> changes = new ArrayList<>();
+        game = new Game(4, 3, (x,y,w,h) -> changes.add(new int[]{x,y,w,h})){
+            @Override
+            public boolean step(){
+                put(0, 0, tetromino);
+                throw new IllegalStateException();
+            }
+        };
+        try{
+            game.execute(Game.TICK);
+            fail();
+        }catch(IllegalStateException e){
+            //The modification is committed nonetheless
+            assertEquals(changes.size(), 1);
+        }
+        
+        game.put(3, 2, tetromino);
+        
+        assertEquals(changes.size(), 2);
+        assertArrayEquals(changes.get(1), new int[]{3,2,1,1});
+        assertEquals(game.getSnapshot().getType(3, 2), tetromino.getType());
+    }
+    @Test
+    public void listenerRemoveRowsTest(){
+        List<int[]> changes = new ArrayList<>();
+        game = new Game(4, 3, (x,y,w,h) -> changes.add(new int[]{x,y,w,h}));
+        for(int x = 0 ; x < 4 ; ++x)
+            game.put(x, 1, tetromino);
+        changes.clear();
+        
+        assertEquals(game.removeRows(), 1);
+        assertEquals(changes.size(), 1);
+        assertArrayEquals(changes.get(0), new int[]{0,1,4,2});
+    }
+    @Test
+    public void listenerOutsideTest(){
+        game.put(-1, 0, tetromino);
+        game.put(0, 5, tetromino);
+        
+        assertTrue(list.isEmpty());
+    }
+    @Test
+    public void moveRightUpdateTest(){
+        game.currentBlock = tetromino;
+        game.moveRight();
+        
+        //Each cell is reported once, even though it was removed and put
+        assertEquals(list.size(), 3*2);
+    }
+    @Test
+    public void removeRowsEmptyTest(){
+        assertEquals(game.removeRows(), 0);
+        assertTrue(list.isEmpty());
     }
     @Test
     public void removeInvalidRowTest(){
@@ -115,6 +268,108 @@ public class GameTest {
         assertNull(game.get(3, 1));
     }
     @Test
+    public void moveRightOwnedTest(){
+        game.currentBlock = tetromino;
+        game.owner.lock();
+        game.moveRight();
+        
+        assertEquals(game.getCommands().size(), 1);
+        assertEquals(game.get(1, 0), tetromino);
+        
+        game.owner.unlock();
+        game.drain();
+        
+        assertEquals(game.getCommands().size(), 0);
+        assertNull(game.get(1, 0));
+        assertEquals(game.get(3, 0), tetromino);
+    }
+    @Test
+    public void submitFullTest(){
+        game.currentBlock = tetromino;
+        game.owner.lock();
+        for(int i = 0 ; i <= game.getCommands().capacity() ; ++i)
+            game.moveLeft();
+        
+        assertEquals(game.getCommands().getDrops(), 1);
+        
+        game.owner.unlock();
+        game.drain();
+        
+        assertEquals(game.get(0, 0), tetromino);
+        assertTrue(game.getCommands().isEmpty());
+    }
+    @Test(timeout = 5000)
+    public void submitFullTickTest() throws InterruptedException{
+        game.currentBlock = tetromino;
+        game.owner.lock();
+        for(int i = 0 ; i < game.getCommands().capacity() ; ++i)
+            assertTrue(game.submit(Game.MOVE_LEFT));
+        assertFalse(game.submit(Game.MOVE_LEFT));
+        
+        Thread ticker = new Thread(() -> game.submit(Game.TICK));
+        ticker.start();
+        while(!game.owner.hasQueuedThread(ticker))
+            Thread.yield();
+        
+        assertEquals(game.getTicks(), 0);
+        
+        game.owner.unlock();
+        ticker.join();
+        
+        //The tick is rejected by the queue, but executed nonetheless
+        assertEquals(game.getTicks(), 1);
+        assertEquals(game.getCommands().getDrops(), 2);
+        assertTrue(game.getCommands().isEmpty());
+    }
+    @Test
+    public void executorTest(){
+        List<Runnable> tasks = new ArrayList<>();
+        game.currentBlock = tetromino;
+        game.setExecutor(tasks::add);
+        game.moveRight();
+        
+        assertEquals(tasks.size(), 1);
+        assertEquals(game.getCommands().size(), 1);
+        assertEquals(game.get(1, 0), tetromino);
+        
+        tasks.get(0).run();
+        
+        assertTrue(game.getCommands().isEmpty());
+        assertNull(game.get(1, 0));
+        assertEquals(game.get(3, 0), tetromino);
+    }
+    @Test
+    public void lockFailureTest(){
+        try{
+            //The states don't fit into a single buffer
+            game.setHistory(Integer.MAX_VALUE);
+            fail();
+        }catch(IllegalArgumentException e){
+            assertFalse(game.owner.isLocked());
+        }
+    }
+    @Test(timeout = 5000)
+    public void lockReentrantTest(){
+        List<int[]> changes = new ArrayList<>();
+        game = new Game(4, 3, (x,y,w,h) -> {
+            changes.add(new int[]{x,y,w,h});
+            if(changes.size() == 1 && game.currentBlock.getX() == 2){
+                game.setHistory(1);
+                game.moveLeft();
+            }
+        });
+        game.currentBlock = OBlock.create(game, 1, 0);
+        game.currentBlock.put();
+        changes.clear();
+        
+        game.moveRight();
+        
+        assertEquals(changes.size(), 2);
+        assertFalse(game.owner.isLocked());
+        assertEquals(game.get(1, 0), game.currentBlock);
+        assertNull(game.get(3, 0));
+    }
+    @Test
     public void moveLeftTest(){
         game.currentBlock = tetromino;
         game.moveLeft();
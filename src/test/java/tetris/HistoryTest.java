@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class HistoryTest {
+    Simulation simulation;
+    List<String> states;
+    List<Long> positions;
+    @Before
+    public void setUp(){
+        simulation = new Simulation(10, 20, Randomizer.bag(3));
+        simulation.setHistory(8);
+        simulation.start();
+        states = new ArrayList<>();
+        positions = new ArrayList<>();
+        states.add(simulation.toString());
+        positions.add(simulation.getRandomizer().getPosition());
+        
+        //Every iteration places one tetromino
+        while(states.size() < 12){
+            for(int i = 0 ; i < 4 ; ++i){
+                if(states.size() % 3 == 0)
+                    simulation.moveLeft();
+                else if(states.size() % 3 == 1)
+                    simulation.moveRight();
+            }
+            simulation.fallDown();
+            simulation.step();
+            assertTrue(simulation.isRunning());
+            states.add(simulation.toString());
+            positions.add(simulation.getRandomizer().getPosition());
+        }
+    }
+    @Test
+    public void rewindTest(){
+        assertEquals(simulation.getHistory().getRewindable(), 7);
+        assertTrue(simulation.rewind(3));
+        assertEquals(simulation.toString(), states.get(8));
+        assertTrue(simulation.rewind(4));
+        assertEquals(simulation.toString(), states.get(4));
+        //The oldest placements have been overwritten
+        assertFalse(simulation.rewind(1));
+    }
+    @Test
+    public void forwardTest(){
+        assertFalse(simulation.forward(1));
+        assertTrue(simulation.rewind(5));
+        assertEquals(simulation.getHistory().getForwardable(), 5);
+        assertTrue(simulation.forward(2));
+        assertEquals(simulation.toString(), states.get(8));
+        assertTrue(simulation.forward(3));
+        assertEquals(simulation.toString(), states.get(11));
+    }
+    @Test
+    public void dropTest(){
+        assertTrue(simulation.rewind(2));
+        simulation.fallDown();
+        simulation.step();
+        assertEquals(simulation.getHistory().getForwardable(), 0);
+        assertFalse(simulation.forward(1));
+    }
+    @Test
+    public void randomizerTest(){
+        assertTrue(simulation.rewind(6));
+        assertEquals(simulation.getRandomizer().getPosition(), (long)positions.get(5));
+        
+        //The same tetrominoes follow again
+        simulation.fallDown();
+        simulation.step();
+        assertEquals(simulation.getRandomizer().getPosition(), (long)positions.get(6));
+    }
+    @Test
+    public void disabledTest(){
+        simulation.setHistory(0);
+        assertFalse(simulation.rewind(1));
+        assertFalse(simulation.forward(1));
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void overflowTest(){
+        simulation.setHistory(Integer.MAX_VALUE);
+    }
+}
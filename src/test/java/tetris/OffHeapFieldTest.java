@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.Random;
+import org.junit.Test;
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class OffHeapFieldTest {
+    @Test
+    public void putTest(){
+        try(Slab slab = new Slab(10, 20, 4)){
+            OffHeapField field = slab.allocate();
+            Tetromino tetromino = Type.SBLOCK.create(field, 0, 0);
+            
+            assertEquals(field.put(3, 4, tetromino), tetromino);
+            assertNull(field.put(10, 4, tetromino));
+            assertEquals(field.get(3, 4).getType(), Type.SBLOCK);
+            assertEquals(field.getType(3, 4), Type.SBLOCK);
+            assertNull(field.get(4, 4));
+            assertEquals(field.getHeight(3), 5);
+            assertEquals(field.getCount(4), 1);
+            
+            assertEquals(field.remove(3, 4).getType(), Type.SBLOCK);
+            assertNull(field.get(3, 4));
+        }
+    }
+    @Test
+    public void compareTest(){
+        Random random = new Random(5);
+        try(Slab slab = new Slab(7, 12, 3)){
+            //Neighbouring slots must not interfere with each other
+            OffHeapField before = slab.allocate();
+            OffHeapField field = slab.allocate();
+            OffHeapField after = slab.allocate();
+            Field expected = new Field(7, 12);
+            for(int i = 0 ; i < 500 ; ++i){
+                int x = random.nextInt(7);
+                int y = random.nextInt(12);
+                Tetromino tetromino = Type.values()[random.nextInt(7)].create(expected, 0, 0);
+                switch(random.nextInt(4)){
+                    case 0:
+                    case 1:
+                        expected.put(x, y, tetromino);
+                        field.put(x, y, tetromino);
+                        break;
+                    case 2:
+                        expected.remove(x, y);
+                        field.remove(x, y);
+                        break;
+                    default:
+                        //Fills a row, so that there is something to remove
+                        for(int column = 0 ; column < 7 ; ++column){
+                            expected.put(column, y, tetromino);
+                            field.put(column, y, tetromino);
+                        }
+                        assertEquals(expected.removeRows(), field.removeRows());
+                        break;
+                }
+                assertEquals(expected.toString(), field.toString());
+                assertEquals(expected.getHash(), field.getHash());
+                assertTrue(field.contentEquals(expected));
+                assertTrue(expected.contentEquals(field));
+                for(int row = 0 ; row < 12 ; ++row)
+                    assertEquals(expected.getMask(row), field.getMask(row));
+                for(int column = 0 ; column < 7 ; ++column)
+                    assertEquals(expected.getHeight(column), field.getHeight(column));
+            }
+            assertEquals(new Field(7, 12).toString(), before.toString());
+            assertEquals(new Field(7, 12).toString(), after.toString());
+        }
+    }
+    @Test
+    public void removeRowTest(){
+        try(Slab slab = new Slab(5, 6, 1)){
+            OffHeapField field = slab.allocate();
+            Tetromino tetromino = Type.IBLOCK.create(field, 0, 0);
+            field.put(1, 2, tetromino);
+            field.put(2, 5, tetromino);
+            
+            assertTrue(field.remove(0));
+            assertEquals(field.getType(1, 1), Type.IBLOCK);
+            assertEquals(field.getType(2, 4), Type.IBLOCK);
+            assertNull(field.get(2, 5));
+            assertFalse(field.remove(6));
+        }
+    }
+    @Test
+    public void hashTest(){
+        try(Slab slab = new Slab(5, 6, 1)){
+            OffHeapField field = slab.allocate();
+            Field expected = new Field(5, 6);
+            assertEquals(expected.getHash(), field.getHash());
+            
+            Tetromino tetromino = Type.TBLOCK.create(expected, 0, 0);
+            for(int y = 0 ; y < 6 ; ++y){
+                expected.put(y % 5, y, tetromino);
+                field.put(y % 5, y, tetromino);
+            }
+            assertEquals(expected.getHash(), field.getHash());
+            
+            expected.remove(2);
+            field.remove(2);
+            assertEquals(expected.getHash(), field.getHash());
+            
+            expected.clear(0);
+            field.clear(0);
+            assertEquals(expected.getHash(), field.getHash());
+            
+            expected.clear();
+            field.clear();
+            assertEquals(expected.getHash(), field.getHash());
+        }
+    }
+    @Test
+    public void lifecycleTest(){
+        Slab slab = new Slab(10, 20, 2);
+        //Every cell takes four bits and every row a mask and a hash
+        assertEquals(424, slab.getStride());
+        
+        OffHeapField first = slab.allocate();
+        OffHeapField second = slab.allocate();
+        assertEquals(2, slab.size());
+        try{
+            slab.allocate();
+            fail();
+        }catch(IllegalStateException e){}
+        
+        first.put(0, 0, Type.OBLOCK.create(first, 0, 0));
+        first.close();
+        assertTrue(first.isClosed());
+        assertEquals(1, slab.size());
+        try{
+            first.get(0, 0);
+            fail();
+        }catch(IllegalStateException e){}
+        
+        //The slot is handed out again, without the old content
+        OffHeapField third = slab.allocate();
+        assertNull(third.get(0, 0));
+        
+        slab.close();
+        assertTrue(slab.isClosed());
+        try{
+            second.get(0, 0);
+            fail();
+        }catch(IllegalStateException e){}
+        try{
+            slab.allocate();
+            fail();
+        }catch(IllegalStateException e){}
+    }
+    @Test
+    public void placementsTest(){
+        try(Slab slab = new Slab(10, 20, 1)){
+            OffHeapField field = slab.allocate();
+            Field expected = new Field(10, 20);
+            for(int x = 0 ; x < 9 ; ++x){
+                field.put(x, 0, Type.OBLOCK.create(field, 0, 0));
+                expected.put(x, 0, Type.OBLOCK.create(expected, 0, 0));
+            }
+            
+            Placements placements = new Placements();
+            assertEquals(placements.generate(expected, Type.TBLOCK.create(expected, 5, 18)), placements.generate(field, Type.TBLOCK.create(field, 5, 18)));
+        }
+    }
+}
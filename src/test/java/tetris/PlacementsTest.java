@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import tetris.tetromino.Tetromino;
+import tetris.tetromino.Tetromino.Type;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class PlacementsTest {
+    @Test
+    public void emptyTest(){
+        Field field = new Field(10, 20);
+        Placements placements = new Placements();
+        //Every column for the single orientation
+        assertEquals(9, placements.generate(field, Type.OBLOCK.create(field, 5, 18)));
+        for(int i = 0 ; i < placements.size() ; ++i){
+            assertEquals(0, placements.getY(i));
+            assertEquals(0, placements.getOrientation(i));
+        }
+        //Both orientations, the vertical one needs two rows below its center
+        assertEquals(7 + 10, placements.generate(field, Type.IBLOCK.create(field, 5, 18)));
+    }
+    @Test
+    public void overhangTest(){
+        Field field = new Field(10, 20);
+        Tetromino filler = Type.OBLOCK.create(field, 0, 0);
+        //A roof over the left half with a gap at column 5
+        for(int x = 0 ; x < 5 ; ++x)
+            field.put(x, 3, filler);
+        
+        Placements placements = new Placements();
+        placements.generate(field, Type.OBLOCK.create(field, 7, 18));
+        Set<String> found = collect(placements);
+        //Reached by sliding under the roof
+        assertTrue(found.contains("0,0,0"));
+        assertTrue(found.contains("0,4,0"));
+    }
+    @Test
+    public void currentBlockTest(){
+        Simulation simulation = new Simulation(10, 20, Randomizer.bag(11));
+        simulation.start();
+        Placements placements = new Placements();
+        //The tetromino doesn't block itself
+        assertTrue(placements.generate(simulation) > 0);
+        BitField field = new BitField(10, 20);
+        Tetromino tetromino = simulation.getCurrentBlock().getType().create(field, 5, 18);
+        assertEquals(placements.size(), new Placements().generate(field, tetromino));
+    }
+    @Test
+    public void randomTest(){
+        Random random = new Random(7);
+        Placements placements = new Placements();
+        for(int i = 0 ; i < 200 ; ++i){
+            Field field = i % 2 == 0 ? new Field(10, 20) : new BitField(10, 20);
+            Tetromino filler = Type.OBLOCK.create(field, 0, 0);
+            int height = random.nextInt(14);
+            for(int y = 0 ; y < height ; ++y)
+                for(int x = 0 ; x < field.columns ; ++x)
+                    if(random.nextInt(3) > 0)
+                        field.put(x, y, filler);
+
+            for(Type type : Type.values()){
+                Tetromino tetromino = type.create(field, field.columns / 2, field.rows - 2);
+                placements.generate(field, tetromino);
+                Set<String> expected = search(tetromino);
+                Set<String> actual = collect(placements);
+                assertEquals(expected.size(), placements.size());
+                assertEquals(expected, actual);
+            }
+        }
+    }
+    private static Set<String> collect(Placements placements){
+        Set<String> result = new HashSet<>();
+        for(int i = 0 ; i < placements.size() ; ++i)
+            result.add(placements.getX(i)+","+placements.getY(i)+","+placements.getOrientation(i));
+        return result;
+    }
+    /**
+     * Visits every position one after another.
+     */
+    private static Set<String> search(Tetromino tetromino){
+        Set<String> result = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<int[]> queue = new ArrayDeque<>();
+        int x = tetromino.getX();
+        int y = tetromino.getY();
+        int o = tetromino.getOrientation();
+        if(!tetromino.canPlace(0, 0, o))
+            return result;
+        queue.add(new int[]{0, 0, o});
+        visited.add("0,0,"+o);
+        while(!queue.isEmpty()){
+            int[] state = queue.poll();
+            int left = tetromino.getShape().left(state[2]);
+            int right = tetromino.getShape().right(state[2]);
+            int[][] next = {
+                {state[0] - 1, state[1], state[2]},
+                {state[0] + 1, state[1], state[2]},
+                {state[0], state[1] - 1, state[2]},
+                {state[0], state[1], left},
+                {state[0], state[1], right}
+            };
+            for(int[] n : next)
+                if(tetromino.canPlace(n[0], n[1], n[2]) && visited.add(n[0]+","+n[1]+","+n[2]))
+                    queue.add(n);
+            if(!tetromino.canPlace(state[0], state[1] - 1, state[2]))
+                result.add((x + state[0])+","+(y + state[1])+","+state[2]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+import tetris.tetromino.Tetromino.Type;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class RandomizerTest {
+    @Test
+    public void seedTest(){
+        Randomizer first = Randomizer.uniform(42);
+        Randomizer second = Randomizer.uniform(42);
+        
+        for(int i = 0 ; i < 100 ; ++i)
+            assertEquals(first.next(), second.next());
+        assertEquals(first.getPosition(), 100);
+    }
+    @Test
+    public void resetTest(){
+        Randomizer randomizer = Randomizer.bag(42);
+        Type[] types = new Type[20];
+        for(int i = 0 ; i < types.length ; ++i)
+            types[i] = randomizer.next();
+        
+        randomizer.reset();
+        assertEquals(randomizer.getPosition(), 0);
+        for(Type type : types)
+            assertEquals(randomizer.next(), type);
+    }
+    @Test
+    public void peekTest(){
+        Randomizer randomizer = Randomizer.uniform(7);
+        Type[] preview = new Type[Randomizer.PREVIEW];
+        assertEquals(randomizer.getPreview(preview), Randomizer.PREVIEW);
+        
+        for(int i = 0 ; i < preview.length ; ++i)
+            assertEquals(randomizer.peek(i), preview[i]);
+        for(Type type : preview)
+            assertEquals(randomizer.next(), type);
+    }
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void peekInvalidTest(){
+        Randomizer.uniform(7).peek(Randomizer.PREVIEW);
+    }
+    @Test
+    public void bagTest(){
+        Randomizer randomizer = Randomizer.bag(1234);
+        for(int bag = 0 ; bag < 10 ; ++bag){
+            Set<Type> types = EnumSet.noneOf(Type.class);
+            for(int i = 0 ; i < Type.values().length ; ++i)
+                types.add(randomizer.next());
+            assertEquals(types.size(), Type.values().length);
+        }
+    }
+    @Test
+    public void simulationTest(){
+        Simulation first = new Simulation(10, 20, Randomizer.bag(5));
+        Simulation second = new Simulation(10, 20, Randomizer.bag(5));
+        first.start();
+        second.start();
+        
+        for(int i = 0 ; i < 500 ; ++i){
+            assertEquals(first.step(), second.step());
+            assertEquals(first.toString(), second.toString());
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class ReplayTest {
+    @Test
+    public void replayTest() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Game game = new Game(10, 20, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(99));
+        game.setRecorder(new ReplayRecorder(out));
+        game.start();
+        
+        int[] commands = {Game.MOVE_LEFT, Game.ROTATE_LEFT, Game.TICK, Game.MOVE_RIGHT, Game.MOVE_RIGHT, Game.ROTATE_RIGHT, Game.FALL_DOWN, Game.TICK};
+        for(int i = 0 ; i < 400 && game.isRunning() ; ++i)
+            game.submit(commands[i % commands.length]);
+        game.dispose();
+        game.recorder.close();
+        
+        ReplayPlayer player = new ReplayPlayer(new ByteArrayInputStream(out.toByteArray()));
+        player.run();
+        
+        assertEquals(player.getSimulation().toString(), game.toString());
+        assertEquals(player.getSimulation().getTicks(), game.getTicks());
+        assertEquals(player.getSimulation().getRandomizer().getPosition(), game.getRandomizer().getPosition());
+        //Every command fits into a single byte
+        assertTrue(out.size() < 30 + player.getCommands() * 2);
+    }
+    @Test
+    public void executorTest() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Runnable> writes = new ArrayList<>();
+        ReplayRecorder recorder = new ReplayRecorder(out);
+        recorder.setExecutor(writes::add);
+        recorder.buffer = new byte[64];
+        Game game = new Game(10, 20, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(99));
+        game.setRecorder(recorder);
+        game.start();
+        
+        int[] commands = {Game.MOVE_LEFT, Game.ROTATE_LEFT, Game.TICK, Game.MOVE_RIGHT, Game.FALL_DOWN, Game.TICK};
+        for(int i = 0 ; i < 400 && game.isRunning() ; ++i)
+            game.submit(commands[i % commands.length]);
+        game.dispose();
+        
+        //Full buffers are only written by the executor
+        assertFalse(writes.isEmpty());
+        assertEquals(out.size(), 0);
+        writes.forEach(Runnable::run);
+        assertTrue(out.size() > 0);
+        recorder.close();
+        
+        ReplayPlayer player = new ReplayPlayer(new ByteArrayInputStream(out.toByteArray()));
+        player.run();
+        assertEquals(player.getSimulation().toString(), game.toString());
+        assertEquals(player.getSimulation().getTicks(), game.getTicks());
+    }
+    @Test
+    public void endTest() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Game game = new Game(4, 8, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(3));
+        game.setRecorder(new ReplayRecorder(out));
+        game.start();
+        for(int i = 0 ; i < 100 && game.isRunning() ; ++i){
+            game.submit(Game.FALL_DOWN);
+            game.submit(Game.TICK);
+        }
+        assertFalse(game.isRunning());
+        //The end of the game doesn't write to the stream
+        assertEquals(out.size(), 0);
+        
+        game.recorder.close();
+        ReplayPlayer player = new ReplayPlayer(new ByteArrayInputStream(out.toByteArray()));
+        player.run();
+        assertEquals(player.getSimulation().toString(), game.toString());
+    }
+    @Test
+    public void rewindTest() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Game game = new Game(10, 20, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(8));
+        game.setHistory(4);
+        game.setRecorder(new ReplayRecorder(out));
+        game.start();
+        
+        for(int i = 0 ; i < 6 ; ++i){
+            game.submit(i % 2 == 0 ? Game.MOVE_LEFT : Game.MOVE_RIGHT);
+            game.submit(Game.FALL_DOWN);
+            game.submit(Game.TICK);
+        }
+        assertTrue(game.rewind(3));
+        game.submit(Game.ROTATE_LEFT);
+        game.submit(Game.FALL_DOWN);
+        game.submit(Game.TICK);
+        game.dispose();
+        game.recorder.close();
+        
+        ReplayPlayer player = new ReplayPlayer(new ByteArrayInputStream(out.toByteArray()));
+        player.run();
+        assertEquals(player.getSimulation().toString(), game.toString());
+        assertEquals(player.getSimulation().getRandomizer().getPosition(), game.getRandomizer().getPosition());
+    }
+    @Test
+    public void rewindSeekTest() throws IOException{
+        File file = File.createTempFile("replay", ".bin");
+        file.deleteOnExit();
+        
+        Game game = new Game(10, 20, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(23));
+        game.setHistory(8);
+        game.setRecorder(new ReplayRecorder(new FileOutputStream(file), 8));
+        game.start();
+        int[] commands = {Game.MOVE_LEFT, Game.FALL_DOWN, Game.TICK, Game.MOVE_RIGHT, Game.ROTATE_LEFT, Game.FALL_DOWN, Game.TICK};
+        for(int i = 0 ; i < 400 ; ++i){
+            if(!game.isRunning())
+                game.start();
+            game.submit(commands[i % commands.length]);
+            //Go back further than the last keyframe
+            if(i % 30 == 29)
+                game.rewind(3);
+            if(i % 60 == 59)
+                game.forward(1);
+        }
+        game.dispose();
+        game.recorder.close();
+        
+        try(ReplayPlayer player = new ReplayPlayer(FileChannel.open(file.toPath(), StandardOpenOption.READ))){
+            for(long tick : new long[]{90, 20, 110, 109, 0, 60}){
+                assertTrue(player.seek(tick));
+                
+                ReplayPlayer expected = new ReplayPlayer(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+                while(expected.getTicks() < tick)
+                    assertTrue(expected.step());
+                assertEquals(player.getCommands(), expected.getCommands());
+                assertEquals(player.getSimulation().toString(), expected.getSimulation().toString());
+                
+                while(expected.step()){
+                    assertTrue(player.step());
+                    assertEquals(player.getSimulation().toString(), expected.getSimulation().toString());
+                }
+                assertFalse(player.step());
+                expected.close();
+            }
+            assertEquals(player.getSimulation().toString(), game.toString());
+        }
+    }
+    @Test
+    public void positionTest() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Randomizer randomizer = Randomizer.uniform(3);
+        randomizer.next();
+        randomizer.next();
+        Simulation simulation = new Simulation(10, 20, randomizer);
+        
+        ReplayRecorder recorder = new ReplayRecorder(out);
+        recorder.start(simulation);
+        simulation.start();
+        recorder.close();
+        
+        ReplayPlayer player = new ReplayPlayer(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(player.step());
+        assertFalse(player.step());
+        assertEquals(player.getSimulation().getCurrentBlock().getType(), simulation.getCurrentBlock().getType());
+        assertEquals(player.getSimulation().getRandomizer().getPosition(), 3);
+    }
+    @Test
+    public void invalidHeaderTest() throws IOException{
+        long[][] headers = {{3, 20, 1}, {65, 20, 1}, {1L << 32 | 10, 20, 1}, {10, 1 << 30, 1}, {10, 20, 0}, {10, 20, 1 << 20}};
+        for(long[] header : headers){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ReplayRecorder recorder = new ReplayRecorder(out);
+            recorder.writeInt(ReplayRecorder.MAGIC);
+            recorder.writeVarint(ReplayRecorder.VERSION);
+            recorder.writeVarint(header[0]);
+            recorder.writeVarint(header[1]);
+            recorder.writeVarint(Randomizer.Kind.BAG.ordinal());
+            recorder.writeVarint(header[2]);
+            recorder.writeLong(1L);
+            recorder.writeVarint(0L);
+            recorder.flush();
+            try{
+                new ReplayPlayer(new ByteArrayInputStream(out.toByteArray()));
+                fail();
+            }catch(IOException e){
+                //The header is rejected before the game is created
+            }
+        }
+    }
+    @Test(expected = IOException.class)
+    public void invalidTest() throws IOException{
+        new ReplayPlayer(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+    }
+    @Test
+    public void seekTest() throws IOException{
+        File file = File.createTempFile("replay", ".bin");
+        file.deleteOnExit();
+        
+        Game game = new Game(6, 10, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(17));
+        game.setRecorder(new ReplayRecorder(new FileOutputStream(file), 16));
+        game.start();
+        int[] commands = {Game.MOVE_LEFT, Game.TICK, Game.ROTATE_RIGHT, Game.TICK, Game.MOVE_RIGHT, Game.MOVE_RIGHT, Game.TICK, Game.TICK};
+        for(int i = 0 ; i < 3000 ; ++i){
+            if(!game.isRunning())
+                game.start();
+            game.submit(commands[i % commands.length]);
+        }
+        game.dispose();
+        game.recorder.close();
+        
+        try(ReplayPlayer player = new ReplayPlayer(FileChannel.open(file.toPath(), StandardOpenOption.READ))){
+            for(long tick : new long[]{700, 5, 1200, 1199, 0, 1201, 300, 301}){
+                assertTrue(player.seek(tick));
+                
+                ReplayPlayer expected = new ReplayPlayer(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+                while(expected.getTicks() < tick)
+                    assertTrue(expected.step());
+                
+                assertEquals(player.getTicks(), tick);
+                assertEquals(player.getCommands(), expected.getCommands());
+                assertEquals(player.getTime(), expected.getTime());
+                assertEquals(player.getSimulation().toString(), expected.getSimulation().toString());
+                assertEquals(player.getSimulation().getTicks(), expected.getSimulation().getTicks());
+                assertEquals(player.getSimulation().getRandomizer().getPosition(), expected.getSimulation().getRandomizer().getPosition());
+                
+                //Both players continue the same way
+                for(int i = 0 ; i < 50 ; ++i){
+                    assertEquals(player.step(), expected.step());
+                    assertEquals(player.getSimulation().toString(), expected.getSimulation().toString());
+                }
+                expected.close();
+            }
+            assertFalse(player.seek(1000000));
+        }
+    }
+    @Test
+    public void invalidIndexTest() throws IOException{
+        File file = File.createTempFile("replay", ".bin");
+        file.deleteOnExit();
+        
+        Game game = new Game(6, 10, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(17));
+        game.setRecorder(new ReplayRecorder(new FileOutputStream(file), 16));
+        game.start();
+        for(int i = 0 ; i < 500 && game.isRunning() ; ++i)
+            game.submit(i % 2 == 0 ? Game.MOVE_LEFT : Game.TICK);
+        game.dispose();
+        game.recorder.close();
+        long ticks = game.getTicks();
+        
+        //Claims far more keyframes than the index could hold
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            channel.read(buffer, channel.size() - Long.BYTES);
+            buffer.flip();
+            channel.write(ByteBuffer.wrap(new byte[]{(byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F}), buffer.getLong() + 2);
+        }
+        
+        try(ReplayPlayer player = new ReplayPlayer(FileChannel.open(file.toPath(), StandardOpenOption.READ))){
+            assertTrue(player.seek(ticks / 2));
+            assertEquals(player.getTicks(), ticks / 2);
+            assertTrue(player.seek(1));
+            assertEquals(player.getTicks(), 1L);
+        }
+    }
+}
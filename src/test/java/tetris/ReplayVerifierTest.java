@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class ReplayVerifierTest {
+    /**
+     * Records a game and returns the number of removed rows.
+     */
+    private long record(Path file, long seed) throws IOException{
+        try(OutputStream out = Files.newOutputStream(file)){
+            Game game = new Game(4, 12, (x, y, w, h) -> {}, 1, TimeUnit.HOURS, Scheduler.getDefault(), Randomizer.bag(seed));
+            game.setRecorder(new ReplayRecorder(out));
+            game.start();
+            int[] commands = {Game.MOVE_LEFT, Game.MOVE_LEFT, Game.FALL_DOWN, Game.TICK, Game.MOVE_RIGHT, Game.FALL_DOWN, Game.TICK};
+            for(int i = 0 ; i < 500 && game.isRunning() ; ++i)
+                game.submit(commands[i % commands.length]);
+            game.dispose();
+            game.recorder.close();
+            return game.getLines();
+        }
+    }
+    @Test
+    public void verifyTest() throws IOException, InterruptedException{
+        Path directory = Files.createTempDirectory("replays");
+        Map<Path, Long> claims = new HashMap<>();
+        for(int i = 0 ; i < 8 ; ++i){
+            Path file = directory.resolve(i + ".replay");
+            claims.put(file, record(file, i) + (i == 3 ? 1 : 0));
+        }
+        Path broken = directory.resolve("broken.replay");
+        Files.write(broken, new byte[]{1, 2, 3});
+        claims.put(broken, 0L);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<ReplayVerifier.Verdict> verdicts = new CopyOnWriteArrayList<>();
+        ReplayVerifier.Summary summary = new ReplayVerifier(executor, 2).verify(directory, claims::get, verdicts::add);
+        executor.shutdown();
+        
+        assertEquals(verdicts.size(), 9);
+        assertEquals(summary.getReplays(), 9);
+        assertEquals(summary.getValid(), 7);
+        assertEquals(summary.getInvalid(), 1);
+        assertEquals(summary.getFailed(), 1);
+        assertTrue(summary.getTicks() > 0);
+        for(ReplayVerifier.Verdict verdict : verdicts){
+            if(verdict.getFile().equals(broken))
+                assertNotNull(verdict.getError());
+            else
+                assertEquals(verdict.isValid(), !verdict.getFile().endsWith("3.replay"));
+        }
+    }
+    @Test
+    public void callbackTest() throws IOException, InterruptedException{
+        Path directory = Files.createTempDirectory("replays");
+        for(int i = 0 ; i < 4 ; ++i)
+            record(directory.resolve(i + ".replay"), i);
+        Path unclaimed = directory.resolve("0.replay");
+        Path unreported = directory.resolve("1.replay");
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ReplayVerifier.Summary summary = new ReplayVerifier(executor, 2).verify(directory, file -> {
+            if(file.equals(unclaimed))
+                throw new IllegalStateException("No claim");
+            return 0L;
+        }, verdict -> {
+            if(verdict.getFile().equals(unreported))
+                throw new IllegalStateException("Not reported");
+        });
+        executor.shutdown();
+        
+        //The replay without a claim isn't simulated
+        assertEquals(summary.getReplays(), 3);
+        assertEquals(summary.getFailed(), 0);
+        assertEquals(summary.getErrors().size(), 2);
+    }
+    @Test
+    public void unknownEntryTest() throws IOException{
+        Path file = Files.createTempFile("forged", ".replay");
+        file.toFile().deleteOnExit();
+        Simulation simulation = new Simulation(4, 12, Randomizer.bag(5));
+        //There is no entry that replaces the state of the game
+        class Forger extends ReplayRecorder{
+            Forger(OutputStream out){
+                super(out);
+            }
+            void forge(Simulation forged){
+                start(forged);
+                writeVarint(EXTENSION);
+                writeVarint(TRAVEL + 1);
+                writeState();
+            }
+        }
+        try(OutputStream out = Files.newOutputStream(file)){
+            Forger forger = new Forger(out);
+            forger.forge(simulation);
+            forger.flush();
+        }
+        
+        ReplayVerifier.Verdict verdict = new ReplayVerifier(Executors.newSingleThreadExecutor(), 1).verify(file, 0L);
+        assertFalse(verdict.isValid());
+        assertNotNull(verdict.getError());
+    }
+    @Test
+    public void historyTest() throws IOException{
+        Path file = Files.createTempFile("huge", ".replay");
+        file.toFile().deleteOnExit();
+        try(OutputStream out = Files.newOutputStream(file)){
+            ReplayRecorder recorder = new ReplayRecorder(out);
+            recorder.start(new Simulation(4, 12, Randomizer.bag(5)));
+            recorder.history(Integer.MAX_VALUE);
+            recorder.flush();
+        }
+        
+        ReplayVerifier.Verdict verdict = new ReplayVerifier(Executors.newSingleThreadExecutor(), 1).verify(file, 0L);
+        assertFalse(verdict.isValid());
+        assertTrue(verdict.getError() instanceof IOException);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class SchedulerTest {
+    Scheduler scheduler;
+    @Before
+    public void setUp(){
+        scheduler = new Scheduler(2, 1, TimeUnit.MILLISECONDS, 64);
+    }
+    @After
+    public void tearDown(){
+        scheduler.shutdown();
+    }
+    @Test
+    public void scheduleTest() throws InterruptedException{
+        CountDownLatch latch = new CountDownLatch(3);
+        scheduler.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(scheduler.size(), 1);
+    }
+    @Test
+    public void scheduleLongPeriodTest() throws InterruptedException{
+        CountDownLatch latch = new CountDownLatch(2);
+        scheduler.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+    @Test
+    public void scheduleManyTest() throws InterruptedException{
+        int threads = Thread.activeCount();
+        CountDownLatch latch = new CountDownLatch(10000);
+        for(int i = 0 ; i < 10000 ; ++i){
+            AtomicBoolean executed = new AtomicBoolean();
+            scheduler.schedule(() -> {
+                if(executed.compareAndSet(false, true))
+                    latch.countDown();
+            }, 1 + i % 50, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(scheduler.size(), 10000);
+        assertTrue(Thread.activeCount() <= threads + 2);
+    }
+    @Test
+    public void advanceTest(){
+        AtomicInteger count = new AtomicInteger();
+        Scheduler manual = new Scheduler(Runnable::run, 1, TimeUnit.MILLISECONDS, 4);
+        manual.schedule(count::incrementAndGet, 5, TimeUnit.MILLISECONDS);
+        
+        //The task enters the wheel in the first step
+        for(int i = 0 ; i < 5 ; ++i)
+            manual.advance();
+        assertEquals(count.get(), 0);
+        
+        manual.advance();
+        assertEquals(count.get(), 1);
+        
+        for(int i = 0 ; i < 10 ; ++i)
+            manual.advance();
+        assertEquals(count.get(), 3);
+        manual.shutdown();
+    }
+    @Test
+    public void cancelTest(){
+        AtomicInteger count = new AtomicInteger();
+        Scheduler manual = new Scheduler(Runnable::run, 1, TimeUnit.MILLISECONDS, 64);
+        Scheduler.Timeout timeout = manual.schedule(count::incrementAndGet, 1, TimeUnit.MILLISECONDS);
+
+        manual.advance();
+        manual.advance();
+        assertEquals(count.get(), 1);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(manual.size(), 0);
+
+        for(int i = 0 ; i < 50 ; ++i)
+            manual.advance();
+        assertEquals(count.get(), 1);
+        manual.shutdown();
+    }
+    @Test
+    public void pauseTest(){
+        AtomicInteger count = new AtomicInteger();
+        Scheduler manual = new Scheduler(Runnable::run, 1, TimeUnit.MILLISECONDS, 64);
+        Scheduler.Timeout timeout = manual.schedule(count::incrementAndGet, 1, TimeUnit.MILLISECONDS);
+        timeout.pause();
+        assertTrue(timeout.isPaused());
+
+        for(int i = 0 ; i < 50 ; ++i)
+            manual.advance();
+        assertEquals(count.get(), 0);
+
+        timeout.resume();
+        assertFalse(timeout.isPaused());
+
+        manual.advance();
+        assertEquals(count.get(), 1);
+        manual.shutdown();
+    }
+    @Test
+    public void advanceFailureTest(){
+        AtomicInteger count = new AtomicInteger();
+        Scheduler manual = new Scheduler(Runnable::run, 1, TimeUnit.MILLISECONDS, 4);
+        manual.schedule(() -> {
+            if(count.incrementAndGet() == 1)
+                throw new IllegalStateException();
+        }, 2, TimeUnit.MILLISECONDS);
+        
+        for(int i = 0 ; i < 3 ; ++i)
+            manual.advance();
+        assertEquals(count.get(), 1);
+        
+        //The task stays scheduled
+        manual.advance();
+        manual.advance();
+        assertEquals(count.get(), 2);
+        manual.shutdown();
+    }
+    @Test(expected = IllegalStateException.class)
+    public void advanceTickerTest(){
+        scheduler.advance();
+    }
+    @Test
+    public void overlapTest() throws InterruptedException{
+        AtomicBoolean running = new AtomicBoolean();
+        AtomicBoolean overlap = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(3);
+        scheduler.schedule(() -> {
+            if(!running.compareAndSet(false, true))
+                overlap.set(true);
+            try{
+                Thread.sleep(10);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            running.set(false);
+            latch.countDown();
+        }, 1, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertFalse(overlap.get());
+    }
+    @Test
+    public void shutdownTest(){
+        scheduler.shutdown();
+        assertTrue(scheduler.isShutdown());
+    }
+    @Test(expected = IllegalStateException.class)
+    public void scheduleShutdownTest(){
+        scheduler.shutdown();
+        scheduler.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+    }
+    @Test
+    public void getDefaultTest(){
+        assertSame(Scheduler.getDefault(), Scheduler.getDefault());
+    }
+}
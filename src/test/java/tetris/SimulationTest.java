@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+import tetris.tetromino.OBlock;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class SimulationTest {
+    Simulation simulation;
+    @Before
+    public void setUp(){
+        simulation = new Simulation(6, 8);
+    }
+    @Test
+    public void startTest(){
+        simulation.start();
+
+        assertTrue(simulation.isRunning());
+        assertNotNull(simulation.getCurrentBlock());
+        assertEquals(simulation.getCurrentBlock().getX(), 3);
+        assertEquals(simulation.getCurrentBlock().getY(), 6);
+        assertEquals(simulation.get(3, 6), simulation.getCurrentBlock());
+        assertEquals(simulation.getTicks(), 0);
+    }
+    @Test
+    public void stepTest(){
+        simulation.start();
+        simulation.currentBlock.remove();
+        simulation.currentBlock = OBlock.create(simulation, 2, 1);
+        simulation.currentBlock.put();
+
+        assertTrue(simulation.step());
+        assertEquals(simulation.get(2, 0), simulation.currentBlock);
+        assertEquals(simulation.getTicks(), 1);
+
+        OBlock landed = (OBlock)simulation.currentBlock;
+        assertTrue(simulation.step());
+        assertEquals(simulation.get(2, 0), landed);
+        assertNotEquals(simulation.currentBlock, landed);
+    }
+    @Test
+    public void stepRemoveRowsTest(){
+        simulation.start();
+        simulation.currentBlock.remove();
+        for(int x = 0 ; x < 6 ; ++x)
+            if(x != 2 && x != 3)
+                simulation.put(x, 0, OBlock.create(simulation, x, 0));
+        simulation.currentBlock = OBlock.create(simulation, 2, 0);
+        simulation.currentBlock.put();
+
+        assertTrue(simulation.step());
+        assertEquals(simulation.getCount(0), 2);
+        assertNull(simulation.get(0, 0));
+    }
+    @Test
+    public void stepNotRunningTest(){
+        assertFalse(simulation.step());
+        assertEquals(simulation.getTicks(), 0);
+    }
+    @Test
+    public void tickTest(){
+        simulation.start();
+
+        int ticks = simulation.tick(10000);
+
+        assertTrue(ticks < 10000);
+        assertEquals(simulation.getTicks(), ticks + 1);
+        assertFalse(simulation.isRunning());
+        assertNull(simulation.getCurrentBlock());
+    }
+    @Test
+    public void restartTest(){
+        simulation.start();
+        simulation.tick(10000);
+        simulation.start();
+
+        assertTrue(simulation.isRunning());
+        assertEquals(simulation.getTicks(), 0);
+        assertEquals(simulation.getHeight(0), 0);
+    }
+    @Test
+    public void moveTest(){
+        simulation.start();
+        simulation.currentBlock.remove();
+        simulation.currentBlock = OBlock.create(simulation, 2, 3);
+        simulation.currentBlock.put();
+
+        simulation.moveLeft();
+        assertEquals(simulation.currentBlock.getX(), 1);
+        simulation.moveRight();
+        assertEquals(simulation.currentBlock.getX(), 2);
+        simulation.rotateLeft();
+        simulation.rotateRight();
+        assertEquals(simulation.currentBlock.getOrientation(), 0);
+        simulation.fallDown();
+        assertEquals(simulation.currentBlock.getY(), 0);
+    }
+    @Test
+    public void moveNotRunningTest(){
+        simulation.moveLeft();
+        simulation.moveRight();
+        simulation.rotateLeft();
+        simulation.rotateRight();
+        simulation.fallDown();
+
+        for(int x = 0 ; x < 6 ; ++x)
+            assertEquals(simulation.getHeight(x), 0);
+    }
+}
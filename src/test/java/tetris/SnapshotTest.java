@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+import tetris.tetromino.OBlock;
+import tetris.tetromino.Tetromino;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class SnapshotTest {
+    @Test
+    public void getTypeTest(){
+        Field field = new Field(5, 7);
+        field.put(1, 2, OBlock.create(field, 1, 2));
+        
+        Snapshot snapshot = new Snapshot(field, 3);
+        
+        assertEquals(snapshot.getType(1, 2), Tetromino.Type.OBLOCK);
+        assertNull(snapshot.getType(2, 2));
+        assertNull(snapshot.getType(-1, 2));
+        assertNull(snapshot.getType(5, 2));
+        assertEquals(snapshot.getColumns(), 5);
+        assertEquals(snapshot.getRows(), 7);
+        assertEquals(snapshot.getVersion(), 3);
+    }
+    @Test
+    public void immutableTest(){
+        Field field = new Field(5, 7);
+        Snapshot snapshot = new Snapshot(field, 0);
+        
+        field.put(1, 2, OBlock.create(field, 1, 2));
+        
+        assertNull(snapshot.getType(1, 2));
+    }
+    @Test
+    public void previousTest(){
+        Field field = new Field(5, 7);
+        field.put(0, 0, OBlock.create(field, 0, 0));
+        Snapshot previous = new Snapshot(field, 0);
+        
+        field.put(3, 4, OBlock.create(field, 3, 4));
+        field.remove(0, 0);
+        Snapshot snapshot = new Snapshot(previous, field, 3, 4, 1, 1);
+        
+        //Only the rectangle is read from the field
+        assertEquals(snapshot.getType(0, 0), Tetromino.Type.OBLOCK);
+        assertEquals(snapshot.getType(3, 4), Tetromino.Type.OBLOCK);
+        assertNull(previous.getType(3, 4));
+        assertEquals(snapshot.getVersion(), 1);
+    }
+    @Test
+    public void currentTest(){
+        Simulation simulation = new Simulation(5, 7, Randomizer.bag(1));
+        assertNull(new Snapshot(simulation, 0).getCurrentType());
+        
+        simulation.start();
+        Snapshot snapshot = new Snapshot(simulation, 1);
+        assertEquals(snapshot.getCurrentType(), simulation.getCurrentBlock().getType());
+        assertEquals(snapshot.getCurrentX(), simulation.getCurrentBlock().getX());
+        assertEquals(snapshot.getCurrentY(), simulation.getCurrentBlock().getY());
+        assertEquals(snapshot.getCurrentOrientation(), simulation.getCurrentBlock().getOrientation());
+        assertEquals(snapshot.getPosition(), 1);
+        assertEquals(new Snapshot(new Field(5, 7), 0).getPosition(), -1);
+    }
+}
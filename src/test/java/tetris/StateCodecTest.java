@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+import tetris.tetromino.OBlock;
+import tetris.tetromino.Tetromino;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class StateCodecTest {
+    @Test
+    public void fieldTest(){
+        Field field = new Field(5, 7);
+        field.put(0, 0, OBlock.create(field, 0, 0));
+        field.put(4, 6, Tetromino.Type.IBLOCK.create(field, 4, 6));
+        
+        ByteBuffer buffer = ByteBuffer.allocate(StateCodec.getSize(field));
+        StateCodec.write(field, buffer);
+        assertFalse(buffer.hasRemaining());
+        //Two cells per byte
+        assertEquals(buffer.capacity(), 4 + 18);
+        
+        BitField copy = new BitField(5, 7);
+        buffer.flip();
+        StateCodec.read(buffer, copy);
+        assertEquals(copy.toString(), field.toString());
+        assertEquals(copy.getType(0, 0), Tetromino.Type.OBLOCK);
+        assertEquals(copy.getType(4, 6), Tetromino.Type.IBLOCK);
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void fieldSizeTest(){
+        Field field = new Field(5, 7);
+        ByteBuffer buffer = ByteBuffer.allocate(StateCodec.getSize(field));
+        StateCodec.write(field, buffer);
+        buffer.flip();
+        StateCodec.read(buffer, new Field(7, 5));
+    }
+    @Test
+    public void simulationTest(){
+        Simulation simulation = new Simulation(10, 20, Randomizer.bag(11));
+        simulation.start();
+        for(int i = 0 ; i < 60 ; ++i){
+            if(i % 3 == 0)
+                simulation.moveLeft();
+            if(i % 5 == 0)
+                simulation.rotateRight();
+            simulation.step();
+        }
+        assertTrue(simulation.isRunning());
+        
+        //Direct little-endian buffers are written in the same way
+        ByteBuffer buffer = ByteBuffer.allocateDirect(StateCodec.getSize(simulation) + 3).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(3);
+        StateCodec.write(simulation, buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(buffer.order(), ByteOrder.LITTLE_ENDIAN);
+        
+        buffer.position(3);
+        Simulation copy = StateCodec.read(buffer);
+        assertEquals(copy.toString(), simulation.toString());
+        assertEquals(copy.getTicks(), simulation.getTicks());
+        assertEquals(copy.getLines(), simulation.getLines());
+        assertEquals(copy.getCurrentBlock().getType(), simulation.getCurrentBlock().getType());
+        assertEquals(copy.getCurrentBlock().getOrientation(), simulation.getCurrentBlock().getOrientation());
+        assertEquals(copy.getRandomizer().getPosition(), simulation.getRandomizer().getPosition());
+        
+        //Both games continue the same way
+        for(int i = 0 ; i < 200 ; ++i){
+            if(i % 4 == 0){
+                simulation.moveRight();
+                copy.moveRight();
+            }
+            assertEquals(copy.step(), simulation.step());
+            assertEquals(copy.toString(), simulation.toString());
+        }
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void simulationRandomizerTest(){
+        Simulation simulation = new Simulation(10, 20, Randomizer.bag(11));
+        ByteBuffer buffer = ByteBuffer.allocate(StateCodec.getSize(simulation));
+        StateCodec.write(simulation, buffer);
+        buffer.flip();
+        StateCodec.read(buffer, new Simulation(10, 20, Randomizer.bag(12)));
+    }
+    @Test
+    public void simulationInvalidTest(){
+        Simulation simulation = new Simulation(10, 20, Randomizer.bag(11));
+        simulation.start();
+        simulation.step();
+        ByteBuffer buffer = ByteBuffer.allocate(StateCodec.getSize(simulation));
+        StateCodec.write(simulation, buffer);
+        
+        Simulation other = new Simulation(10, 20, Randomizer.bag(11));
+        other.start();
+        for(int i = 0 ; i < 30 ; ++i)
+            other.step();
+        String expected = other.toString();
+        
+        //The orientation comes right after the type of the current tetromino
+        int orientation = 1 + 2 * Long.BYTES + StateCodec.getSize((Field)simulation) + 1;
+        for(byte value : new byte[]{-1, 4, 100}){
+            buffer.put(orientation, value);
+            buffer.position(0);
+            try{
+                StateCodec.read(buffer, other);
+                fail();
+            }catch(IllegalArgumentException e){
+                assertEquals(other.toString(), expected);
+                assertEquals(other.getTicks(), 30);
+            }
+        }
+        
+        //The current tetromino is moved outside of the field
+        buffer.put(orientation, (byte)0);
+        buffer.putShort(orientation + 1, (short)-5);
+        buffer.position(0);
+        try{
+            StateCodec.read(buffer, other);
+            fail();
+        }catch(IllegalArgumentException e){
+            assertEquals(other.toString(), expected);
+        }
+    }
+    @Test
+    public void randomizerInvalidTest(){
+        Simulation simulation = new Simulation(10, 20, Randomizer.bag(11));
+        simulation.start();
+        ByteBuffer buffer = ByteBuffer.allocate(StateCodec.getSize(simulation));
+        StateCodec.write(simulation, buffer);
+        
+        Simulation other = new Simulation(10, 20, Randomizer.bag(11));
+        other.start();
+        for(int i = 0 ; i < 30 ; ++i)
+            other.step();
+        String expected = other.toString();
+        long position = other.getRandomizer().getPosition();
+        
+        //The state of the randomizer is stored last
+        int queue = StateCodec.getSize(simulation) - simulation.getRandomizer().getStateSize() + 2 * Long.BYTES;
+        int bag = queue + Randomizer.PREVIEW;
+        int index = bag + 7;
+        int[][] corruptions = {{queue, 7}, {queue + 1, -1}, {bag, 7}, {bag + 1, buffer.get(bag)}, {index, 8}, {index, -1}};
+        for(int[] corruption : corruptions){
+            ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+            copy.put(buffer.array());
+            copy.put(corruption[0], (byte)corruption[1]);
+            copy.position(0);
+            try{
+                StateCodec.read(copy, other);
+                fail();
+            }catch(IllegalArgumentException e){
+                assertEquals(other.toString(), expected);
+                assertEquals(other.getRandomizer().getPosition(), position);
+            }
+        }
+    }
+    @Test
+    public void fillerTest(){
+        Field field = new Field(4, 4);
+        field.put(1, 1, OBlock.create(field, 1, 1));
+        ByteBuffer buffer = ByteBuffer.allocate(StateCodec.getSize(field));
+        StateCodec.write(field, buffer);
+        
+        Field first = new Field(4, 4);
+        Field second = new Field(4, 4);
+        buffer.flip();
+        StateCodec.read(buffer, first);
+        buffer.flip();
+        StateCodec.read(buffer, second);
+        //The restored cells share a single tetromino
+        assertNotNull(first.get(1, 1));
+        assertSame(first.get(1, 1), second.get(1, 1));
+    }
+}
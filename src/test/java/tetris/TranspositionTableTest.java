@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris;
+
+import org.junit.Test;
+import tetris.tetromino.OBlock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class TranspositionTableTest {
+    @Test
+    public void putTest(){
+        TranspositionTable<String> table = new TranspositionTable<>(100);
+        assertEquals(table.capacity(), 128);
+        
+        assertNull(table.put(5L, "a"));
+        assertEquals(table.get(5L), "a");
+        assertEquals(table.put(5L, "b"), "a");
+        assertNull(table.get(6L));
+    }
+    @Test
+    public void replaceTest(){
+        TranspositionTable<String> table = new TranspositionTable<>(4, 2);
+        table.put(1L, "a");
+        //Same slot as 1
+        table.put(5L, "b");
+        
+        assertNull(table.get(1L));
+        assertEquals(table.get(5L), "b");
+    }
+    @Test
+    public void putIfAbsentTest(){
+        TranspositionTable<String> table = new TranspositionTable<>(16);
+        assertEquals(table.putIfAbsent(3L, "a"), "a");
+        assertEquals(table.putIfAbsent(3L, "b"), "a");
+        
+        table.clear();
+        assertNull(table.get(3L));
+    }
+    @Test
+    public void fieldTest(){
+        TranspositionTable<Integer> table = new TranspositionTable<>(16);
+        Field field = new Field(4, 4);
+        field.put(1, 1, OBlock.create(field, 1, 1));
+        table.put(field, 42);
+        
+        Field other = new Field(4, 4);
+        assertNull(table.get(other));
+        other.put(1, 1, OBlock.create(other, 1, 1));
+        assertEquals(table.get(other), (Integer)42);
+    }
+    @Test
+    public void concurrentTest() throws InterruptedException{
+        TranspositionTable<Long> table = new TranspositionTable<>(1 << 12, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for(int t = 0 ; t < 4 ; ++t)
+            executor.execute(() -> {
+                for(long i = 0 ; i < 100000 ; ++i)
+                    table.put(i, i);
+            });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        
+        //Every slot contains a consistent entry
+        for(long i = 100000 - table.capacity() ; i < 100000 ; ++i){
+            Long value = table.get(i);
+            assertTrue(value == null || value == i);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 Zavarov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tetris.tetromino;
+
+import org.junit.Before;
+import org.junit.Test;
+import tetris.tetromino.Tetromino.Type;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Zavarov
+ */
+public class ShapeTest {
+    Shape shape;
+    @Before
+    public void setUp(){
+        shape = Type.TBLOCK.getShape();
+    }
+    @Test
+    public void sizeTest(){
+        assertEquals(Type.IBLOCK.getShape().size(), 2);
+        assertEquals(Type.JBLOCK.getShape().size(), 4);
+        assertEquals(Type.LBLOCK.getShape().size(), 4);
+        assertEquals(Type.OBLOCK.getShape().size(), 1);
+        assertEquals(Type.SBLOCK.getShape().size(), 4);
+        assertEquals(Type.TBLOCK.getShape().size(), 4);
+        assertEquals(Type.ZBLOCK.getShape().size(), 4);
+    }
+    @Test
+    public void getBlocksTest(){
+        for(Type type : Type.values())
+            for(int o = 0 ; o < type.getShape().size() ; ++o)
+                assertEquals(type.getShape().getBlocks(o), 4);
+    }
+    @Test
+    public void offsetTest(){
+        assertEquals(shape.getX(0, 0),-1);
+        assertEquals(shape.getY(0, 0), 0);
+        assertEquals(shape.getX(0, 3), 0);
+        assertEquals(shape.getY(0, 3), 1);
+    }
+    @Test
+    public void leftTest(){
+        int o = shape.left(0);
+
+        assertEquals(shape.getX(o, 0), 0);
+        assertEquals(shape.getY(o, 0),-1);
+        assertEquals(shape.getX(o, 1),-1);
+        assertEquals(shape.getY(o, 1), 0);
+        assertEquals(shape.getX(o, 2), 0);
+        assertEquals(shape.getY(o, 2), 0);
+        assertEquals(shape.getX(o, 3), 0);
+        assertEquals(shape.getY(o, 3), 1);
+    }
+    @Test
+    public void rightTest(){
+        for(Type type : Type.values())
+            for(int o = 0 ; o < type.getShape().size() ; ++o)
+                assertEquals(type.getShape().right(type.getShape().left(o)), o);
+    }
+    @Test
+    public void swapTest(){
+        Shape shape = Type.IBLOCK.getShape();
+
+        assertEquals(shape.left(0), 1);
+        assertEquals(shape.right(0), 1);
+        assertEquals(shape.left(1), 0);
+    }
+    @Test
+    public void boundsTest(){
+        int o = shape.left(0);
+
+        assertEquals(shape.getMinX(0),-1);
+        assertEquals(shape.getMaxX(0), 1);
+        assertEquals(shape.getMinY(0), 0);
+        assertEquals(shape.getMaxY(0), 1);
+
+        assertEquals(shape.getMinX(o),-1);
+        assertEquals(shape.getMaxX(o), 0);
+        assertEquals(shape.getMinY(o),-1);
+        assertEquals(shape.getMaxY(o), 1);
+    }
+    @Test
+    public void getBottomTest(){
+        int o = shape.left(0);
+
+        assertEquals(shape.getBottom(0,-1), 0);
+        assertEquals(shape.getBottom(0, 0), 0);
+        assertEquals(shape.getBottom(0, 1), 0);
+        assertEquals(shape.getBottom(0, 2), Integer.MAX_VALUE);
+
+        assertEquals(shape.getBottom(o,-1), 0);
+        assertEquals(shape.getBottom(o, 0),-1);
+    }
+    @Test
+    public void getMaskTest(){
+        assertEquals(shape.getMask(0, 0), 0b111);
+        assertEquals(shape.getMask(0, 1), 0b010);
+        assertEquals(shape.getMask(0, 2), 0L);
+        assertEquals(shape.getMask(0,-1), 0L);
+    }
+}
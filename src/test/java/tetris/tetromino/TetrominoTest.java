@@ -16,10 +16,14 @@
  */
 package tetris.tetromino;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import tetris.Game;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 import static org.junit.Assert.*;
 
 /**
@@ -55,6 +59,52 @@ public class TetrominoTest {
         assertFalse(tetromino.fallDown());
     }
     @Test
+    public void fallDownObstacleTest(){
+        field.clear();
+        field.put(2, 0, OBlock.create(field, 2, 0));
+        tetromino = OBlock.create(field, 1, 2);
+        tetromino.toField();
+        
+        assertTrue(tetromino.fallDown());
+        
+        assertEquals(field.get(1, 1), tetromino);
+        assertEquals(field.get(2, 2), tetromino);
+        assertNull(field.get(1, 0));
+    }
+    @Test
+    public void getDropDistanceTest(){
+        field.clear();
+        tetromino = TBlock.create(field, 2, 2);
+        tetromino.toField();
+        
+        assertEquals(tetromino.getDropDistance(), 2);
+        
+        field.put(1, 0, OBlock.create(field, 1, 0));
+        assertEquals(tetromino.getDropDistance(), 1);
+        
+        tetromino.rotateLeft();
+        assertEquals(tetromino.getDropDistance(), 1);
+        
+        tetromino.fallDown();
+        assertEquals(tetromino.getDropDistance(), 0);
+    }
+    @Test
+    public void getDropDistanceTallTest(){
+        //The columns span more than one word of the column masks
+        field = new Game(4, 150, (i,j) -> {});
+        tetromino = OBlock.create(field, 1, 100);
+        tetromino.toField();
+        
+        assertEquals(tetromino.getDropDistance(), 100);
+        
+        field.put(2, 3, OBlock.create(field, 2, 3));
+        field.put(1, 140, OBlock.create(field, 1, 140));
+        assertEquals(tetromino.getDropDistance(), 96);
+        
+        field.put(1, 70, OBlock.create(field, 1, 70));
+        assertEquals(tetromino.getDropDistance(), 29);
+    }
+    @Test
     public void addTest(){
         assertTrue(tetromino.add(5, 5));
         assertTrue(tetromino.blocks.contains(tetromino.new  Block(5,5)));
@@ -221,6 +271,48 @@ public class TetrominoTest {
         assertTrue(tetromino.hasCollision());
     }
     @Test
+    public void canPlaceTest(){
+        tetromino.toField();
+        
+        assertTrue(tetromino.canPlace(0, 0, 0));
+        assertTrue(tetromino.canPlace(1, 2, 0));
+        assertFalse(tetromino.canPlace(0,-1, 0));
+        assertFalse(tetromino.canPlace(2, 0, 0));
+        
+        field.put(3, 2, OBlock.create(field, 3, 2));
+        assertFalse(tetromino.canPlace(1, 1, 0));
+    }
+    @Test
+    public void canPlaceAllocationTest(){
+        //Only some virtual machines count the allocated bytes
+        ThreadMXBean standard = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(standard instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)standard;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+        tetromino.toField();
+        
+        int moves = check(100000);
+        long allocated = bean.getThreadAllocatedBytes(thread);
+        moves += check(1000000);
+        allocated = bean.getThreadAllocatedBytes(thread) - allocated;
+        
+        //The checks themselves don't allocate, but the measurement might
+        assertEquals(moves, 1100000 * 3);
+        assertTrue(allocated + " bytes have been allocated.", allocated < 1000000);
+    }
+    private int check(int iterations){
+        int moves = 0;
+        for(int i = 0 ; i < iterations ; ++i){
+            moves += tetromino.canMoveLeft() ? 1 : 0;
+            moves += tetromino.canMoveRight() ? 1 : 0;
+            moves += tetromino.canMoveDown() ? 1 : 0;
+            moves += tetromino.hasCollision() ? 1 : 0;
+            moves += tetromino.inBounds() ? 1 : 0;
+        }
+        return moves;
+    }
+    @Test
     public void inBoundsTest(){
         assertTrue(tetromino.inBounds());
         